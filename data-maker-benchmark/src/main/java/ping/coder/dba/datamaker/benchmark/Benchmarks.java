@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @Description Runs the benchmarks with the JMH command line options and the gc profiler, so every
+ * result comes with its allocation rate.
+ * @Author Ping
+ * @Date 2026/10/18 14:30
+ **/
+public class Benchmarks {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder().parent(commandLineOptions);
+        if(commandLineOptions.getProfilers().stream().noneMatch(profiler -> GCProfiler.class.getName().equals(profiler.getKlass())))
+            builder.addProfiler(GCProfiler.class);
+        new Runner(builder.build()).run();
+    }
+}
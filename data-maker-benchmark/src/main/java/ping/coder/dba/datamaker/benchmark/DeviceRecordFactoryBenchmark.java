@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 14:34
+ **/
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DeviceRecordFactoryBenchmark {
+
+    /**
+     * Every thread gets its own forked factory, like the generating threads of the data maker.
+     */
+    @State(Scope.Thread)
+    public static class FactoryState {
+        @Param({"10", "1000"})
+        public int modelNumber;
+        public DeviceRecordFactory factory;
+
+        @Setup
+        public void setup() {
+            factory = DeviceRecordFactory.builder().models(modelNumber).deviceNumber(100_000).build();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public DeviceRecord newRecord(FactoryState state) {
+        return state.factory.newRecord();
+    }
+
+    @State(Scope.Benchmark)
+    public static class ModelsState {
+        @Param({"10000", "100000"})
+        public int modelNumber;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public DeviceRecordFactory buildModels(ModelsState state) {
+        return DeviceRecordFactory.builder().models(state.modelNumber).build();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.benchmark;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.pubsub.v1.PubsubMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+import ping.coder.dba.datamaker.pubsub.MessagePublisher;
+import ping.coder.dba.datamaker.pubsub.PublisherWriter;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description Writes records through {@link PublisherWriter} into an in-process fake publisher that
+ * acknowledges every message at once, so the writer path is measured without any network.
+ * @Author Ping
+ * @Date 2026/10/18 14:48
+ **/
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class PublisherWriterBenchmark {
+
+    private static final int RECORD_NUMBER = 1024;
+
+    @Param({RecordSerializers.JSON, RecordSerializers.PROTOBUF})
+    public String format;
+
+    private PublisherWriter writer;
+    private DeviceRecord[] records;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) throws IOException {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(100).build();
+        records = new DeviceRecord[RECORD_NUMBER];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = factory.newRecord();
+        }
+        writer = new PublisherWriter("benchmark", "benchmark", (projectId, topicId) -> new FakePublisher(blackhole),
+                RecordSerializers.of(format));
+        writer.open();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        writer.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int index;
+    }
+
+    @Benchmark
+    public void write(Cursor cursor) {
+        writer.write(records[cursor.index++ & (RECORD_NUMBER - 1)]);
+    }
+
+    private static class FakePublisher implements MessagePublisher {
+        private static final ApiFuture<String> ACKNOWLEDGED = ApiFutures.immediateFuture("0");
+        private final Blackhole blackhole;
+
+        private FakePublisher(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public ApiFuture<String> publish(PubsubMessage message) {
+            blackhole.consume(message);
+            return ACKNOWLEDGED;
+        }
+
+        @Override
+        public void publishAllOutstanding() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public boolean awaitTermination(long duration, TimeUnit unit) {
+            return true;
+        }
+    }
+}
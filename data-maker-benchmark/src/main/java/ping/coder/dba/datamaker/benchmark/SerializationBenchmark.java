@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ping.coder.dba.datamaker.codec.RecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description Serializes a fixed set of pre-generated records, so only the serialization is measured.
+ * @Author Ping
+ * @Date 2026/10/18 14:40
+ **/
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+    private static final int RECORD_NUMBER = 1024;
+
+    @State(Scope.Thread)
+    public static class SerializerState {
+        @Param({RecordSerializers.JSON, RecordSerializers.CBOR, RecordSerializers.AVRO, RecordSerializers.PROTOBUF})
+        public String format;
+        public RecordSerializer serializer;
+
+        @Setup
+        public void setup() {
+            serializer = RecordSerializers.of(format);
+        }
+    }
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private DeviceRecord[] records;
+    private int index;
+
+    @Setup
+    public void setup() {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(100).build();
+        records = new DeviceRecord[RECORD_NUMBER];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = factory.newRecord();
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize(SerializerState state) throws IOException {
+        return state.serializer.serialize(nextRecord());
+    }
+
+    /**
+     * What the writer did before the serializers: a reflective object mapper and a String in between.
+     */
+    @Benchmark
+    public String objectMapper() throws JsonProcessingException {
+        return mapper.writeValueAsString(nextRecord());
+    }
+
+    private DeviceRecord nextRecord() {
+        return records[index++ & (RECORD_NUMBER - 1)];
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker;
+
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.codec.MeteredRecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description A sink that serializes every record and then drops it, to measure the ceiling of generation
+ * and serialization without any publishing. Every payload is folded into a checksum that is printed on
+ * close, so the JIT can't prove the serialization is unused and remove it.
+ * @Author Ping
+ * @Date 2026/10/18 16:20
+ **/
+public class BlackholeWriter implements Writer {
+
+    private final MeteredRecordSerializer serializer;
+    private final LongAdder checksum = new LongAdder();
+    private volatile long start;
+
+    public BlackholeWriter() {
+        this(new JsonRecordSerializer());
+    }
+
+    public BlackholeWriter(RecordSerializer serializer) {
+        this.serializer = RecordSerializers.metered(serializer);
+    }
+
+    @Override
+    public void open() {
+        start = System.nanoTime();
+    }
+
+    @Override
+    public void write(Object record) {
+        try {
+            byte[] data = serializer.serialize(record);
+            checksum.add(data.length == 0 ? 0 : data[data.length - 1] * 31L + data[data.length >> 1]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("Blackhole consumed %d records in %.3f s, %.1f rec/s, checksum %d",
+                serializer.getRecords(), seconds, serializer.getRecords() / seconds, checksum.sum()));
+        System.out.println(serializer);
+    }
+
+    public MeteredRecordSerializer getSerializer() {
+        return serializer;
+    }
+
+    public long getChecksum() {
+        return checksum.sum();
+    }
+}
@@ -1,4 +1,3 @@
-
 /*
  * Copyright (C) 2024 Ping He
  *
@@ -14,22 +13,305 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package ping.coder.dba.datamaker;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import ping.coder.dba.datamaker.record.RecordFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
- * @Description @TODO
+ * @Description Data maker served over HTTP for Cloud Run, which scales the instances with the requests.
+ * Every request to {@code /burst?count=&rate=&duration=&threads=} makes a burst of records on its own
+ * threads and writes them into the writer shared by all the bursts, then answers with the throughput of
+ * the burst in JSON. The burst stops after the count of records or the duration in seconds, whichever
+ * comes first, and is paced to the rate if there is one. Cloud Run sends concurrent requests to an
+ * instance, so the bursts take their threads from {@link #getMaxThreadNumber()} shared permits, and a
+ * burst which finds too few of them left is answered 429 at once. {@code /metrics} serves the metrics of the
+ * instance in the Prometheus format, Cloud Run only routes one port. The record factory and the writer
+ * are ready before the port is opened, so the first request doesn't pay for them.
  * @Author Ping
  * @Date 2024/5/21 21:06
  **/
 public class CloudRunMaker extends DataMaker {
 
+    public static final String BURST_PATH = "/burst";
+    public static final String METRICS_PATH = "/metrics";
+    public static final int DEFAULT_PORT = 8080;
+
+    private final Writer writer;
+    private final HttpServer server;
+    private final ExecutorService threads;
+    /**
+     * Generating threads left to the bursts of the instance.
+     */
+    private final Semaphore threadPermits;
 
-    protected CloudRunMaker(String recordFactoryClassName, Options options) {
+    /**
+     * @param port 0 picks a free port.
+     */
+    protected CloudRunMaker(String recordFactoryClassName, Writer writer, Options options, int port) throws IOException {
         super(recordFactoryClassName, options);
+        this.writer = writer;
+        this.server = HttpServer.create(new InetSocketAddress(port), 0);
+        AtomicInteger index = new AtomicInteger();
+        this.threads = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "data-maker-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.threadPermits = new Semaphore(getMaxThreadNumber());
+        this.server.setExecutor(threads);
+        this.server.createContext(BURST_PATH, this::handleBurst);
+        this.server.createContext(METRICS_PATH, exchange ->
+                respond(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", metrics.toPrometheus()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = JvmDataMaker.readOptions();
+        String port = System.getenv().get("PORT");
+        if(port==null || port.isEmpty())
+            port = String.valueOf(DEFAULT_PORT);
+        String recordFactoryClass = System.getenv().get("DATA_MAKER.RECORD_FACTORY");
+        Writer writer = JvmDataMaker.buildPipeline(JvmDataMaker.buildWriter(options), options);
+        CloudRunMaker maker = new CloudRunMaker(recordFactoryClass, writer, options, Integer.parseInt(port));
+        maker.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(maker::stop, "data-maker-shutdown"));
+        System.out.printf("Bursts are served on port %d, ready %d ms after the JVM started%n", maker.getPort(),
+                System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime());
+    }
+
+    /**
+     * Opens the writer, makes a first record to load the classes of the factory, then opens the port.
+     */
+    public void start() throws IOException {
+        open();
+        recordFactory.newRecord();
+        server.start();
+    }
+
+    /**
+     * Cloud Run sends SIGTERM before it stops an instance, the records written so far are flushed.
+     */
+    public void stop() {
+        server.stop(0);
+        threads.shutdownNow();
+        try {
+            flush();
+        } finally {
+            close();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Max generating threads of all the bursts together, the cores of the instance or the configured
+     * thread number if it's more, so requests can't start more threads than the instance can run.
+     */
+    public int getMaxThreadNumber() {
+        return Math.max(Runtime.getRuntime().availableProcessors(), options.getThreadNumber());
+    }
+
+    /**
+     * Generating threads not taken by the running bursts.
+     */
+    public int getAvailableThreadNumber() {
+        return threadPermits.availablePermits();
+    }
+
+    /**
+     * Makes a burst of records and waits for it.
+     * @param count records of the burst, if it's zero the duration ends it.
+     * @param rate records per second of all the threads, if it's zero the records are made as fast as they can.
+     * @param durationMillis max time of the burst, if it's zero the count ends it.
+     * @param threadNumber generating threads of the burst, at most {@link #getMaxThreadNumber()}.
+     * @throws RejectedExecutionException if the running bursts left fewer threads than the thread number.
+     */
+    public Burst burst(long count, double rate, long durationMillis, int threadNumber) throws Exception {
+        if(count < 0 || durationMillis < 0 || (count == 0 && durationMillis == 0))
+            throw new IllegalArgumentException(String.format("A burst needs a count or a duration, count was %d, duration was %d ms", count, durationMillis));
+        if(!(rate >= 0) || Double.isInfinite(rate))
+            throw new IllegalArgumentException("rate was "+rate);
+        if(threadNumber <= 0 || threadNumber > getMaxThreadNumber())
+            throw new IllegalArgumentException(String.format("thread number was %d, should be from 1 to %d", threadNumber, getMaxThreadNumber()));
+        if(!threadPermits.tryAcquire(threadNumber))
+            throw new RejectedExecutionException(String.format("%d threads were asked for, %d of %d are left by the running bursts",
+                    threadNumber, threadPermits.availablePermits(), getMaxThreadNumber()));
+        try {
+            return runBurst(count, rate, durationMillis, threadNumber);
+        } finally {
+            threadPermits.release(threadNumber);
+        }
+    }
+
+    /**
+     * The threads are done when it returns, or cancelled by a failure and stopping before their next record.
+     */
+    private Burst runBurst(long count, double rate, long durationMillis, int threadNumber) throws Exception {
+        RatePacer pacer = rate > 0 ? new RatePacer(rate, (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.ceil(rate / 10)))) : null;
+        AtomicLong remaining = new AtomicLong(count > 0 ? count : Long.MAX_VALUE);
+        LongAdder made = new LongAdder();
+        long start = System.nanoTime();
+        long durationNanos = durationMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(durationMillis) : Long.MAX_VALUE;
+        List<Future<?>> futures = new ArrayList<>(threadNumber);
+        for (int i = 0; i < threadNumber; i++) {
+            RecordFactory<?> factory = recordFactory.fork();
+            futures.add(threads.submit(() -> {
+                while (!Thread.currentThread().isInterrupted() && remaining.getAndDecrement() > 0
+                        && System.nanoTime() - start < durationNanos){
+                    if(pacer!=null)
+                        pacer.acquire();
+                    long begin = System.nanoTime();
+                    Object record = factory.newRecord();
+                    metrics.recordGenerated(System.nanoTime() - begin);
+                    makeRecord(record);
+                    made.increment();
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        flush();
+        return new Burst(made.sum(), System.nanoTime() - start, threadNumber);
+    }
+
+    private void handleBurst(HttpExchange exchange) throws IOException {
+        Burst burst;
+        try {
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            burst = burst(Long.parseLong(query.getOrDefault("count", "0")),
+                    Double.parseDouble(query.getOrDefault("rate", "0")),
+                    (long) (Double.parseDouble(query.getOrDefault("duration", "0")) * 1000),
+                    Integer.parseInt(query.getOrDefault("threads", String.valueOf(Math.max(1, options.getThreadNumber())))));
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "text/plain; charset=utf-8", e.getMessage());
+            return;
+        } catch (RejectedExecutionException e) {
+            respond(exchange, 429, "text/plain; charset=utf-8", e.getMessage());
+            return;
+        } catch (Exception e) {
+            respond(exchange, 500, "text/plain; charset=utf-8", String.valueOf(e));
+            return;
+        }
+        respond(exchange, 200, "application/json", burst.toJson(metrics.getPublished(), metrics.getFailed()));
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        if(query == null || query.isEmpty())
+            return parameters;
+        for (String parameter : query.split("&")) {
+            int equal = parameter.indexOf('=');
+            if(equal > 0)
+                parameters.put(URLDecoder.decode(parameter.substring(0, equal), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(equal + 1), "UTF-8"));
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    @Override
+    protected void open() throws IOException {
+        writer.open();
     }
 
     @Override
     protected void makeRecord(Object record) {
+        writer.write(record);
+    }
+
+    @Override
+    protected void flush() {
+        writer.flush();
+    }
+
+    @Override
+    protected void close() {
+        writer.close();
+    }
+
+    /**
+     * Throughput of a burst.
+     */
+    public static class Burst {
+        private final long records;
+        private final long nanos;
+        private final int threads;
+
+        public Burst(long records, long nanos, int threads) {
+            this.records = records;
+            this.nanos = nanos;
+            this.threads = threads;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public int getThreads() {
+            return threads;
+        }
+
+        public double getRate() {
+            return nanos > 0 ? records / (nanos / 1e9) : 0;
+        }
 
+        /**
+         * The published and failed counts are the totals of the instance, the bursts share the writer.
+         */
+        public String toJson(long published, long failed) {
+            return String.format(Locale.ROOT, "{\"records\": %d, \"millis\": %.3f, \"threads\": %d, \"rate\": %.3f, \"published\": %d, \"failed\": %d}",
+                    records, nanos / 1e6, threads, getRate(), published, failed);
+        }
     }
 }
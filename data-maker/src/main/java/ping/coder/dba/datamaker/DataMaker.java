@@ -16,8 +16,31 @@
 
 package ping.coder.dba.datamaker;
 
+import ping.coder.dba.datamaker.codec.RecordEnvelope;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.metrics.MetricsReporter;
+import ping.coder.dba.datamaker.metrics.MetricsServer;
+import ping.coder.dba.datamaker.pipeline.WaitStrategy;
 import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+import ping.coder.dba.datamaker.record.Distribution;
+import ping.coder.dba.datamaker.record.Keyspace;
+import ping.coder.dba.datamaker.record.RecordFactories;
 import ping.coder.dba.datamaker.record.RecordFactory;
+import ping.coder.dba.datamaker.record.RecordSchema;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @Description @TODO
@@ -28,6 +51,36 @@ public abstract class DataMaker {
 
     public static class Options{
 
+        /**
+         * Library defaults of the Pub/Sub publisher: small batches sent after 1 ms and no flow control.
+         */
+        public static final String PRESET_DEFAULT = "default";
+
+        /**
+         * Full batches of 1000 messages waiting up to 10 ms, with bounded outstanding messages. It's the
+         * preset of new options.
+         */
+        public static final String PRESET_THROUGHPUT = "throughput";
+
+        /**
+         * Batches of 100 messages sent after 1 ms, with bounded outstanding messages.
+         */
+        public static final String PRESET_LATENCY = "latency";
+
+        public static final String LIMIT_BLOCK = "block";
+        public static final String LIMIT_THROW = "throw";
+        public static final String LIMIT_IGNORE = "ignore";
+
+        /**
+         * Max number of messages in one publish request of Pub/Sub.
+         */
+        public static final long MAX_BATCH_ELEMENT_COUNT = 1000L;
+
+        /**
+         * Max size of one publish request of Pub/Sub.
+         */
+        public static final long MAX_BATCH_REQUEST_BYTES = 10L * 1000L * 1000L;
+
         /**
          * worker index, should be less than worker number.
          */
@@ -39,19 +92,287 @@ public abstract class DataMaker {
         private int workerNumber;
 
         /**
-         * interval of making data, time unit is millisecond.
+         * interval of making data, time unit is millisecond. It's ignored when a rate is set.
          */
         private int interval;
 
+        /**
+         * Target rate of all the threads together, time unit is records per second. If it's zero,
+         * the interval is used.
+         */
+        private double rate;
+
+        /**
+         * Max number of records made back to back when the run falls behind the rate. If it's zero,
+         * one second of records may be caught up, at the rate of the moment.
+         */
+        private int burst;
+
         private int modelNumber;
 
         private int deviceNumber;
 
+        /**
+         * How often each model is picked, a {@link Distribution} spec like zipf:1.1.
+         */
+        private String modelDistribution = Distribution.UNIFORM;
+
+        /**
+         * How often each device of a model is picked, a {@link Distribution} spec like hotspot:0.2:0.8.
+         */
+        private String deviceDistribution = Distribution.UNIFORM;
+
         /**
          * If it's zero, should be always looping .
          */
         private int loopNumber;
 
+        /**
+         * Number of records between two explicit flushes of the sink. If it's zero, the sink is only
+         * flushed when the run ends.
+         */
+        private int flushNumber;
+
+        /**
+         * Number of generating threads, every thread has its own record factory and they all share the sink.
+         */
+        private int threadNumber = 1;
+
+        /**
+         * Number of records made by every thread. If it's zero, the loop number is used.
+         */
+        private int recordsPerThread;
+
+        /**
+         * Wire format of the records, one of {@link RecordSerializers#FORMATS}.
+         */
+        private String format = RecordSerializers.JSON;
+
+        /**
+         * Number of messages which triggers sending a batch.
+         */
+        private long batchElementCount;
+
+        /**
+         * Number of bytes which triggers sending a batch.
+         */
+        private long batchRequestBytes;
+
+        /**
+         * Time a batch waits for more messages before it's sent, time unit is millisecond.
+         */
+        private long batchDelayMillis;
+
+        /**
+         * Max number of published messages not acknowledged yet. If both this and the outstanding bytes
+         * are zero, there is no flow control.
+         */
+        private long maxOutstandingElements;
+
+        /**
+         * Max number of bytes of published messages not acknowledged yet.
+         */
+        private long maxOutstandingBytes;
+
+        /**
+         * What a publish does when the outstanding limits are reached: block, throw or ignore.
+         */
+        private String limitExceededBehavior;
+
+        /**
+         * Number of threads of the publisher executor. If it's zero, the library default is used.
+         */
+        private int publisherThreadNumber;
+
+        /**
+         * Whether publish requests are compressed with gzip by gRPC.
+         */
+        private boolean compression;
+
+        /**
+         * Requests smaller than this are sent uncompressed even if the compression is on.
+         */
+        private long compressionBytesThreshold = 240L;
+
+        /**
+         * Number of publishers the devices are sharded over when every record is published with its
+         * device id as ordering key. If it's zero, records are published without ordering.
+         */
+        private int orderingShards;
+
+        /**
+         * Endpoint of the publishers, like us-east1-pubsub.googleapis.com:443. Ordered records keep their
+         * order only if they are published in one region. If it's empty, the global endpoint is used.
+         */
+        private String publishEndpoint = "";
+
+        /**
+         * Max number of records packed into one message. If it's zero, every record is its own message.
+         */
+        private int envelopeRecords;
+
+        /**
+         * Max bytes of the records packed into one message, before compression.
+         */
+        private int envelopeBytes = 64 * 1024;
+
+        /**
+         * Compression of the packed records, one of {@link RecordEnvelope#CODECS}.
+         */
+        private String envelopeCodec = RecordEnvelope.CODEC_NONE;
+
+        private String publishPreset;
+
+        /**
+         * Number of threads serializing records between the generating threads and the sink. If it's zero,
+         * every generating thread serializes and writes its records itself, without any pipeline.
+         */
+        private int serializeThreadNumber;
+
+        /**
+         * Number of threads of the pipeline writing serialized records to the sink.
+         */
+        private int writeThreadNumber = 1;
+
+        /**
+         * Capacity of every queue of the pipeline.
+         */
+        private int queueCapacity = 65536;
+
+        /**
+         * How the serialize threads wait for records and the generating threads for room in the serialize
+         * queue, one of {@link WaitStrategy#NAMES}.
+         */
+        private String serializeWaitStrategy = "park";
+
+        /**
+         * How the write threads wait for records and the serialize threads for room in the write queue,
+         * one of {@link WaitStrategy#NAMES}.
+         */
+        private String writeWaitStrategy = "park";
+
+        /**
+         * Whether records are dropped instead of blocking generation when the pipeline is full.
+         */
+        private boolean shedLoad;
+
+        /**
+         * Port of the Prometheus endpoint. If it's zero, the metrics aren't served.
+         */
+        private int metricsPort;
+
+        /**
+         * Interval of the metrics summary line, time unit is second. If it's zero, only the last line is printed.
+         */
+        private int metricsInterval = 10;
+
+        /**
+         * Max number of publishes of a record after its first one failed with a retryable error. If
+         * it's zero, failed records are not published again.
+         */
+        private int retryMaxAttempts = 5;
+
+        /**
+         * Backoff before the first retry, it's doubled for every retry after that. Time unit is millisecond.
+         */
+        private long retryInitialBackoff = 100;
+
+        /**
+         * Max backoff between two retries, time unit is millisecond.
+         */
+        private long retryMaxBackoff = 10_000;
+
+        /**
+         * Max number of records waiting for a retry, the failed records beyond it are lost.
+         */
+        private int retryQueueCapacity = 10_000;
+
+        /**
+         * Seed of the records, the same seed, worker index and thread number make the same records. If
+         * it's zero, a random seed is taken and printed, so the run can be made again.
+         */
+        private long seed;
+
+        /**
+         * Whether every device keeps its sensor state between readings, instead of independent values for every record.
+         */
+        private boolean statefulTelemetry;
+
+        /**
+         * Part of the records stamped out of order, at most the max skew behind the event time.
+         */
+        private double outOfOrderRate;
+
+        /**
+         * Max time an out of order record is behind the event time, time unit is millisecond.
+         */
+        private long maxSkew = 5_000;
+
+        /**
+         * Part of the records stamped late, between once and twice the lateness behind the event time.
+         */
+        private double lateRate;
+
+        /**
+         * Time a late record is at least behind the event time, time unit is millisecond.
+         */
+        private long lateness = 60_000;
+
+        /**
+         * Part of the records which repeat the record before them, with the retry count one higher.
+         */
+        private double duplicateRate;
+
+        /**
+         * Version of the model catalog, the same version makes the same models. If it's zero, the models
+         * are made from the seed.
+         */
+        private long catalogVersion;
+
+        /**
+         * Directory of the model catalog files shared by the workers, if it's empty the models are made in memory.
+         */
+        private String catalogDirectory = "";
+
+        /**
+         * JSON schema of the records of the schema record factory, see {@link RecordSchema}.
+         */
+        private String schemaFile = "";
+
+        /**
+         * Whether the device number is the global population of every model, split between the workers
+         * by worker index and worker number, instead of the devices of every worker.
+         */
+        private boolean partitioned;
+
+        /**
+         * Target rate of all the workers together, time unit is records per second. If it's more than zero,
+         * every worker takes the part of it its partition of the devices owns, and the rate is ignored.
+         */
+        private double globalRate;
+
+        /**
+         * Directory of the lease files the workers share to get their worker index and number, which may
+         * then change while they run. If it's empty, they are taken from the options. It implies partitioned.
+         */
+        private String coordinatorDirectory = "";
+
+        /**
+         * Time after which a worker which stopped renewing its lease is dropped, time unit is millisecond.
+         */
+        private long coordinatorLease = FileCoordinator.DEFAULT_LEASE_MILLIS;
+
+        /**
+         * Lease member id of this worker when a coordinator assigns the worker indexes, unique between the
+         * workers, e.g. the pod name of a stateful set. It's also the worker id of the random streams, so a
+         * seeded coordinated run makes the same records again only with the same member ids. If it's empty,
+         * a random one is taken.
+         */
+        private String memberId = "";
+
+        public Options() {
+            setPublishPreset(PRESET_THROUGHPUT);
+        }
 
         public int getWorkerIndex() {
             return workerIndex;
@@ -83,6 +404,26 @@ public abstract class DataMaker {
             this.interval = interval;
         }
 
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            if(!(rate >= 0) || Double.isInfinite(rate))
+                throw new IllegalArgumentException("rate was "+rate);
+            this.rate = rate;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            if(burst < 0)
+                throw new IllegalArgumentException("burst was "+burst);
+            this.burst = burst;
+        }
+
         public int getModelNumber() {
             return modelNumber;
         }
@@ -99,6 +440,24 @@ public abstract class DataMaker {
             this.deviceNumber = deviceNumber;
         }
 
+        public String getModelDistribution() {
+            return modelDistribution;
+        }
+
+        public void setModelDistribution(String modelDistribution) {
+            Distribution.parse(modelDistribution, 1);
+            this.modelDistribution = modelDistribution;
+        }
+
+        public String getDeviceDistribution() {
+            return deviceDistribution;
+        }
+
+        public void setDeviceDistribution(String deviceDistribution) {
+            Distribution.parse(deviceDistribution, 1);
+            this.deviceDistribution = deviceDistribution;
+        }
+
         public int getLoopNumber() {
             return loopNumber;
         }
@@ -106,46 +465,694 @@ public abstract class DataMaker {
         public void setLoopNumber(int loopNumber) {
             this.loopNumber = loopNumber;
         }
+
+        public int getFlushNumber() {
+            return flushNumber;
+        }
+
+        public void setFlushNumber(int flushNumber) {
+            if(flushNumber < 0)
+                throw new IllegalArgumentException("flush number was "+flushNumber);
+            this.flushNumber = flushNumber;
+        }
+
+        public int getThreadNumber() {
+            return threadNumber;
+        }
+
+        public void setThreadNumber(int threadNumber) {
+            if(threadNumber <= 0)
+                throw new IllegalArgumentException("thread number was "+threadNumber);
+            this.threadNumber = threadNumber;
+        }
+
+        public int getRecordsPerThread() {
+            return recordsPerThread;
+        }
+
+        public void setRecordsPerThread(int recordsPerThread) {
+            if(recordsPerThread < 0)
+                throw new IllegalArgumentException("records per thread was "+recordsPerThread);
+            this.recordsPerThread = recordsPerThread;
+        }
+
+        public String getFormat() {
+            return format;
+        }
+
+        public void setFormat(String format) {
+            if(!RecordSerializers.FORMATS.contains(format))
+                throw new IllegalArgumentException("format was "+format);
+            this.format = format;
+        }
+
+        public String getPublishPreset() {
+            return publishPreset;
+        }
+
+        /**
+         * Resets the batching, flow control and executor settings to the preset, the setters of the single
+         * settings may override them after that. The compression isn't part of any preset.
+         */
+        public void setPublishPreset(String publishPreset) {
+            if(PRESET_DEFAULT.equals(publishPreset)){
+                this.batchElementCount = 100L;
+                this.batchRequestBytes = 1000L;
+                this.batchDelayMillis = 1L;
+                this.maxOutstandingElements = 0L;
+                this.maxOutstandingBytes = 0L;
+                this.limitExceededBehavior = LIMIT_IGNORE;
+                this.publisherThreadNumber = 0;
+            }else if(PRESET_THROUGHPUT.equals(publishPreset)){
+                this.batchElementCount = MAX_BATCH_ELEMENT_COUNT;
+                this.batchRequestBytes = 1024L * 1024L;
+                this.batchDelayMillis = 10L;
+                this.maxOutstandingElements = 100_000L;
+                this.maxOutstandingBytes = 128L * 1024L * 1024L;
+                this.limitExceededBehavior = LIMIT_BLOCK;
+                this.publisherThreadNumber = Runtime.getRuntime().availableProcessors();
+            }else if(PRESET_LATENCY.equals(publishPreset)){
+                this.batchElementCount = 100L;
+                this.batchRequestBytes = 64L * 1024L;
+                this.batchDelayMillis = 1L;
+                this.maxOutstandingElements = 10_000L;
+                this.maxOutstandingBytes = 16L * 1024L * 1024L;
+                this.limitExceededBehavior = LIMIT_BLOCK;
+                this.publisherThreadNumber = Runtime.getRuntime().availableProcessors();
+            }else
+                throw new IllegalArgumentException("publish preset was "+publishPreset);
+            this.publishPreset = publishPreset;
+        }
+
+        public long getBatchElementCount() {
+            return batchElementCount;
+        }
+
+        public void setBatchElementCount(long batchElementCount) {
+            if(batchElementCount <= 0 || batchElementCount > MAX_BATCH_ELEMENT_COUNT)
+                throw new IllegalArgumentException("batch element count was "+batchElementCount);
+            this.batchElementCount = batchElementCount;
+        }
+
+        public long getBatchRequestBytes() {
+            return batchRequestBytes;
+        }
+
+        public void setBatchRequestBytes(long batchRequestBytes) {
+            if(batchRequestBytes <= 0 || batchRequestBytes > MAX_BATCH_REQUEST_BYTES)
+                throw new IllegalArgumentException("batch request bytes was "+batchRequestBytes);
+            this.batchRequestBytes = batchRequestBytes;
+        }
+
+        public long getBatchDelayMillis() {
+            return batchDelayMillis;
+        }
+
+        public void setBatchDelayMillis(long batchDelayMillis) {
+            if(batchDelayMillis <= 0)
+                throw new IllegalArgumentException("batch delay millis was "+batchDelayMillis);
+            this.batchDelayMillis = batchDelayMillis;
+        }
+
+        public long getMaxOutstandingElements() {
+            return maxOutstandingElements;
+        }
+
+        public void setMaxOutstandingElements(long maxOutstandingElements) {
+            if(maxOutstandingElements < 0)
+                throw new IllegalArgumentException("max outstanding elements was "+maxOutstandingElements);
+            this.maxOutstandingElements = maxOutstandingElements;
+        }
+
+        public long getMaxOutstandingBytes() {
+            return maxOutstandingBytes;
+        }
+
+        public void setMaxOutstandingBytes(long maxOutstandingBytes) {
+            if(maxOutstandingBytes < 0)
+                throw new IllegalArgumentException("max outstanding bytes was "+maxOutstandingBytes);
+            this.maxOutstandingBytes = maxOutstandingBytes;
+        }
+
+        public String getLimitExceededBehavior() {
+            return limitExceededBehavior;
+        }
+
+        public void setLimitExceededBehavior(String limitExceededBehavior) {
+            if(!LIMIT_BLOCK.equals(limitExceededBehavior) && !LIMIT_THROW.equals(limitExceededBehavior) && !LIMIT_IGNORE.equals(limitExceededBehavior))
+                throw new IllegalArgumentException("limit exceeded behavior was "+limitExceededBehavior);
+            this.limitExceededBehavior = limitExceededBehavior;
+        }
+
+        public int getPublisherThreadNumber() {
+            return publisherThreadNumber;
+        }
+
+        public void setPublisherThreadNumber(int publisherThreadNumber) {
+            if(publisherThreadNumber < 0)
+                throw new IllegalArgumentException("publisher thread number was "+publisherThreadNumber);
+            this.publisherThreadNumber = publisherThreadNumber;
+        }
+
+        public boolean isCompression() {
+            return compression;
+        }
+
+        public void setCompression(boolean compression) {
+            this.compression = compression;
+        }
+
+        public long getCompressionBytesThreshold() {
+            return compressionBytesThreshold;
+        }
+
+        public void setCompressionBytesThreshold(long compressionBytesThreshold) {
+            if(compressionBytesThreshold < 0)
+                throw new IllegalArgumentException("compression bytes threshold was "+compressionBytesThreshold);
+            this.compressionBytesThreshold = compressionBytesThreshold;
+        }
+
+        public int getOrderingShards() {
+            return orderingShards;
+        }
+
+        public void setOrderingShards(int orderingShards) {
+            if(orderingShards < 0)
+                throw new IllegalArgumentException("ordering shards was "+orderingShards);
+            this.orderingShards = orderingShards;
+        }
+
+        public String getPublishEndpoint() {
+            return publishEndpoint;
+        }
+
+        public void setPublishEndpoint(String publishEndpoint) {
+            if(publishEndpoint == null)
+                throw new IllegalArgumentException("publish endpoint is null");
+            this.publishEndpoint = publishEndpoint;
+        }
+
+        public int getEnvelopeRecords() {
+            return envelopeRecords;
+        }
+
+        public void setEnvelopeRecords(int envelopeRecords) {
+            if(envelopeRecords < 0)
+                throw new IllegalArgumentException("envelope records was "+envelopeRecords);
+            this.envelopeRecords = envelopeRecords;
+        }
+
+        public int getEnvelopeBytes() {
+            return envelopeBytes;
+        }
+
+        public void setEnvelopeBytes(int envelopeBytes) {
+            if(envelopeBytes <= 0 || envelopeBytes > MAX_BATCH_REQUEST_BYTES)
+                throw new IllegalArgumentException("envelope bytes was "+envelopeBytes);
+            this.envelopeBytes = envelopeBytes;
+        }
+
+        public String getEnvelopeCodec() {
+            return envelopeCodec;
+        }
+
+        public void setEnvelopeCodec(String envelopeCodec) {
+            if(!RecordEnvelope.CODECS.contains(envelopeCodec))
+                throw new IllegalArgumentException(String.format("Error envelope codec is: %s, should be one of %s", envelopeCodec, RecordEnvelope.CODECS));
+            this.envelopeCodec = envelopeCodec;
+        }
+
+        public int getSerializeThreadNumber() {
+            return serializeThreadNumber;
+        }
+
+        public void setSerializeThreadNumber(int serializeThreadNumber) {
+            if(serializeThreadNumber < 0)
+                throw new IllegalArgumentException("serialize thread number was "+serializeThreadNumber);
+            this.serializeThreadNumber = serializeThreadNumber;
+        }
+
+        public int getWriteThreadNumber() {
+            return writeThreadNumber;
+        }
+
+        public void setWriteThreadNumber(int writeThreadNumber) {
+            if(writeThreadNumber <= 0)
+                throw new IllegalArgumentException("write thread number was "+writeThreadNumber);
+            this.writeThreadNumber = writeThreadNumber;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            if(queueCapacity <= 0 || queueCapacity > 1 << 30)
+                throw new IllegalArgumentException("queue capacity was "+queueCapacity);
+            this.queueCapacity = queueCapacity;
+        }
+
+        public String getSerializeWaitStrategy() {
+            return serializeWaitStrategy;
+        }
+
+        public void setSerializeWaitStrategy(String serializeWaitStrategy) {
+            if(!WaitStrategy.NAMES.contains(serializeWaitStrategy))
+                throw new IllegalArgumentException("serialize wait strategy was "+serializeWaitStrategy);
+            this.serializeWaitStrategy = serializeWaitStrategy;
+        }
+
+        public String getWriteWaitStrategy() {
+            return writeWaitStrategy;
+        }
+
+        public void setWriteWaitStrategy(String writeWaitStrategy) {
+            if(!WaitStrategy.NAMES.contains(writeWaitStrategy))
+                throw new IllegalArgumentException("write wait strategy was "+writeWaitStrategy);
+            this.writeWaitStrategy = writeWaitStrategy;
+        }
+
+        public boolean isShedLoad() {
+            return shedLoad;
+        }
+
+        public void setShedLoad(boolean shedLoad) {
+            this.shedLoad = shedLoad;
+        }
+
+        public int getMetricsPort() {
+            return metricsPort;
+        }
+
+        public void setMetricsPort(int metricsPort) {
+            if(metricsPort < 0 || metricsPort > 65535)
+                throw new IllegalArgumentException("metrics port was "+metricsPort);
+            this.metricsPort = metricsPort;
+        }
+
+        public int getMetricsInterval() {
+            return metricsInterval;
+        }
+
+        public void setMetricsInterval(int metricsInterval) {
+            if(metricsInterval < 0)
+                throw new IllegalArgumentException("metrics interval was "+metricsInterval);
+            this.metricsInterval = metricsInterval;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public void setSeed(long seed) {
+            this.seed = seed;
+        }
+
+        public boolean isStatefulTelemetry() {
+            return statefulTelemetry;
+        }
+
+        public void setStatefulTelemetry(boolean statefulTelemetry) {
+            this.statefulTelemetry = statefulTelemetry;
+        }
+
+        public double getOutOfOrderRate() {
+            return outOfOrderRate;
+        }
+
+        public void setOutOfOrderRate(double outOfOrderRate) {
+            if(!(outOfOrderRate >= 0 && outOfOrderRate <= 1))
+                throw new IllegalArgumentException("out of order rate was "+outOfOrderRate);
+            this.outOfOrderRate = outOfOrderRate;
+        }
+
+        public long getMaxSkew() {
+            return maxSkew;
+        }
+
+        public void setMaxSkew(long maxSkew) {
+            if(maxSkew <= 0)
+                throw new IllegalArgumentException("max skew was "+maxSkew);
+            this.maxSkew = maxSkew;
+        }
+
+        public double getLateRate() {
+            return lateRate;
+        }
+
+        public void setLateRate(double lateRate) {
+            if(!(lateRate >= 0 && lateRate <= 1))
+                throw new IllegalArgumentException("late rate was "+lateRate);
+            this.lateRate = lateRate;
+        }
+
+        public long getLateness() {
+            return lateness;
+        }
+
+        public void setLateness(long lateness) {
+            if(lateness <= 0)
+                throw new IllegalArgumentException("lateness was "+lateness);
+            this.lateness = lateness;
+        }
+
+        public double getDuplicateRate() {
+            return duplicateRate;
+        }
+
+        public void setDuplicateRate(double duplicateRate) {
+            if(!(duplicateRate >= 0 && duplicateRate < 1))
+                throw new IllegalArgumentException("duplicate rate was "+duplicateRate);
+            this.duplicateRate = duplicateRate;
+        }
+
+        public long getCatalogVersion() {
+            return catalogVersion;
+        }
+
+        public void setCatalogVersion(long catalogVersion) {
+            this.catalogVersion = catalogVersion;
+        }
+
+        public String getCatalogDirectory() {
+            return catalogDirectory;
+        }
+
+        public void setCatalogDirectory(String catalogDirectory) {
+            if(catalogDirectory == null)
+                throw new IllegalArgumentException("catalog directory was null");
+            this.catalogDirectory = catalogDirectory;
+        }
+
+        public String getSchemaFile() {
+            return schemaFile;
+        }
+
+        public void setSchemaFile(String schemaFile) {
+            if(schemaFile == null)
+                throw new IllegalArgumentException("schema file was null");
+            this.schemaFile = schemaFile;
+        }
+
+        public boolean isPartitioned() {
+            return partitioned;
+        }
+
+        public void setPartitioned(boolean partitioned) {
+            this.partitioned = partitioned;
+        }
+
+        public double getGlobalRate() {
+            return globalRate;
+        }
+
+        public void setGlobalRate(double globalRate) {
+            if(!(globalRate >= 0) || Double.isInfinite(globalRate))
+                throw new IllegalArgumentException("global rate was "+globalRate);
+            this.globalRate = globalRate;
+        }
+
+        public String getCoordinatorDirectory() {
+            return coordinatorDirectory;
+        }
+
+        public void setCoordinatorDirectory(String coordinatorDirectory) {
+            if(coordinatorDirectory == null)
+                throw new IllegalArgumentException("coordinator directory was null");
+            this.coordinatorDirectory = coordinatorDirectory;
+        }
+
+        public long getCoordinatorLease() {
+            return coordinatorLease;
+        }
+
+        public void setCoordinatorLease(long coordinatorLease) {
+            if(coordinatorLease <= 0)
+                throw new IllegalArgumentException("coordinator lease was "+coordinatorLease);
+            this.coordinatorLease = coordinatorLease;
+        }
+
+        public String getMemberId() {
+            return memberId;
+        }
+
+        public void setMemberId(String memberId) {
+            if(memberId == null)
+                throw new IllegalArgumentException("member id was null");
+            this.memberId = memberId;
+        }
+
+        public int getRetryMaxAttempts() {
+            return retryMaxAttempts;
+        }
+
+        public void setRetryMaxAttempts(int retryMaxAttempts) {
+            if(retryMaxAttempts < 0)
+                throw new IllegalArgumentException("retry max attempts was "+retryMaxAttempts);
+            this.retryMaxAttempts = retryMaxAttempts;
+        }
+
+        public long getRetryInitialBackoff() {
+            return retryInitialBackoff;
+        }
+
+        public void setRetryInitialBackoff(long retryInitialBackoff) {
+            if(retryInitialBackoff <= 0)
+                throw new IllegalArgumentException("retry initial backoff was "+retryInitialBackoff);
+            this.retryInitialBackoff = retryInitialBackoff;
+        }
+
+        public long getRetryMaxBackoff() {
+            return retryMaxBackoff;
+        }
+
+        public void setRetryMaxBackoff(long retryMaxBackoff) {
+            if(retryMaxBackoff <= 0)
+                throw new IllegalArgumentException("retry max backoff was "+retryMaxBackoff);
+            this.retryMaxBackoff = retryMaxBackoff;
+        }
+
+        public int getRetryQueueCapacity() {
+            return retryQueueCapacity;
+        }
+
+        public void setRetryQueueCapacity(int retryQueueCapacity) {
+            if(retryQueueCapacity <= 0)
+                throw new IllegalArgumentException("retry queue capacity was "+retryQueueCapacity);
+            this.retryQueueCapacity = retryQueueCapacity;
+        }
     }
 
     protected final Options options;
+    protected final Metrics metrics = Metrics.global();
     protected RecordFactory<?> recordFactory;
+    /**
+     * Lease member id of this worker when a coordinator assigns the worker indexes.
+     */
+    private final String memberId;
 
     public void run() throws Exception{
+        RatePacer pacer = buildPacer();
+        MetricsServer server = null;
+        if(options.metricsPort > 0){
+            server = new MetricsServer(metrics, options.metricsPort);
+            server.start();
+        }
+        MetricsReporter reporter = new MetricsReporter(metrics, options.metricsInterval * 1000L);
+        reporter.start();
+        FileCoordinator coordinator = buildCoordinator(pacer);
+        try {
+            open();
+            try {
+                if(options.threadNumber <= 1)
+                    runThread(recordFactory, pacer);
+                else
+                    runParallel(pacer);
+                flush();
+            } finally {
+                close();
+            }
+        } finally {
+            if(coordinator!=null)
+                coordinator.close();
+            reporter.close();
+            if(server!=null)
+                server.close();
+        }
+        if(pacer!=null)
+            System.out.println(pacer);
+    }
+
+    protected RatePacer buildPacer(){
+        double rate = workerRate();
+        if(rate <= 0)
+            return null;
+        return options.burst > 0 ? new RatePacer(rate, options.burst) : new RatePacer(rate);
+    }
+
+    /**
+     * Rate of this worker, its quota of the global rate if there is one.
+     */
+    protected double workerRate(){
+        if(options.globalRate <= 0)
+            return options.rate;
+        Keyspace keyspace = keyspace();
+        return keyspace != null ? keyspace.getPartition().quota(options.globalRate) : options.globalRate / options.workerNumber;
+    }
+
+    /**
+     * Starts the coordinator of the worker indexes, every assignment moves the partition of the worker
+     * and its quota of the global rate.
+     */
+    protected FileCoordinator buildCoordinator(RatePacer pacer) throws IOException {
+        if(options.coordinatorDirectory.isEmpty())
+            return null;
+        Keyspace keyspace = keyspace();
+        if(keyspace == null)
+            throw new IllegalArgumentException("A coordinator needs a partitioned keyspace of devices.");
+        FileCoordinator coordinator = new FileCoordinator(Paths.get(options.coordinatorDirectory), memberId,
+                options.coordinatorLease, (index, count) -> {
+            keyspace.assign(index, count);
+            if(pacer != null && options.globalRate > 0)
+                pacer.setRate(keyspace.getPartition().quota(options.globalRate));
+            System.out.println(keyspace.getPartition());
+        });
+        coordinator.start();
+        return coordinator;
+    }
+
+    private Keyspace keyspace(){
+        return recordFactory instanceof DeviceRecordFactory ? ((DeviceRecordFactory) recordFactory).getKeyspace() : null;
+    }
+
+    private void runParallel(RatePacer pacer) throws Exception{
+        ExecutorService executor = Executors.newFixedThreadPool(options.threadNumber, new ThreadFactory() {
+            private final AtomicInteger index = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "data-maker-" + index.getAndIncrement());
+            }
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(options.threadNumber);
+            for (int i = 0; i < options.threadNumber; i++) {
+                RecordFactory<?> factory = i == 0 ? recordFactory : recordFactory.fork(i);
+                futures.add(executor.submit(() -> {
+                    runThread(factory, pacer);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runThread(RecordFactory<?> factory, RatePacer pacer) throws InterruptedException {
         int loopTimes = 0;
         while (true){
-            makeRecord(recordFactory.newRecord());
+            if(pacer!=null)
+                pacer.acquire();
+            long start = System.nanoTime();
+            Object record = factory.newRecord();
+            metrics.recordGenerated(System.nanoTime() - start);
+            makeRecord(record);
+            loopTimes++;
+            if(options.flushNumber>0 && loopTimes % options.flushNumber == 0)
+                flush();
             if(!needLoop(loopTimes))
                 break;
-            else if(options.interval>0)
+            else if(pacer==null && options.interval>0)
                 Thread.sleep(options.interval);
         }
     }
 
     private boolean needLoop(int loopTimes){
-        return options.loopNumber == 0 || loopTimes < options.loopNumber;
+        int loopNumber = options.recordsPerThread > 0 ? options.recordsPerThread : options.loopNumber;
+        return loopNumber == 0 || loopTimes < loopNumber;
     }
 
+    /**
+     * Sends one record to the sink. It's called from every generating thread at the same time when
+     * the thread number is more than 1.
+     */
     protected abstract void makeRecord(Object record);
 
+    /**
+     * Called once before the first record of a run, the sink session should be opened here.
+     */
+    protected void open() throws IOException {
+    }
+
+    /**
+     * Called every {@link Options#getFlushNumber()} records and once after the last record.
+     */
+    protected void flush() {
+    }
+
+    /**
+     * Called once when the run ends, even if it ends with an error.
+     */
+    protected void close() {
+    }
+
     protected DataMaker(String recordFactoryClassName, Options options){
         assert options != null;
         this.options = options;
+        this.memberId = options.memberId.isEmpty() ? UUID.randomUUID().toString() : options.memberId;
+        if(!options.coordinatorDirectory.isEmpty() && options.memberId.isEmpty() && options.seed != 0)
+            System.out.println("Worker has the random member id "+memberId+", its records can't be made again with the same seed.");
         this.initInternal(recordFactoryClassName);
     }
 
+    /**
+     * Device records by default, otherwise the factory named by a provider or a class, see
+     * {@link RecordFactories#load(String, Options)}.
+     */
     private void initInternal(String recordFactoryClassName){
         if(recordFactoryClassName==null || recordFactoryClassName.isEmpty() || DeviceRecordFactory.class.getName().equals(recordFactoryClassName))
             this.recordFactory = buildDeviceRecordFactory();
         else
-            throw new IllegalArgumentException(String.format("Error record factory class name is: %s", recordFactoryClassName));
+            this.recordFactory = RecordFactories.load(recordFactoryClassName, options);
     }
 
     protected DeviceRecordFactory buildDeviceRecordFactory(){
-        return DeviceRecordFactory.builder().workerId(buildWorkerId()).models(options.modelNumber).deviceNumber(options.deviceNumber).build();
+        DeviceRecordFactory.DeviceRecordFactoryBuilder builder = DeviceRecordFactory.builder().workerId(buildWorkerId())
+                .models(options.modelNumber).deviceNumber(options.deviceNumber).stateful(options.statefulTelemetry)
+                .outOfOrder(options.outOfOrderRate, options.maxSkew).late(options.lateRate, options.lateness)
+                .duplicates(options.duplicateRate).modelDistribution(options.modelDistribution)
+                .deviceDistribution(options.deviceDistribution);
+        if(options.seed != 0)
+            builder.seed(options.seed);
+        if(options.partitioned || !options.coordinatorDirectory.isEmpty())
+            builder.partition(options.workerIndex, options.workerNumber);
+        if(options.catalogVersion != 0)
+            builder.catalogVersion(options.catalogVersion);
+        if(!options.catalogDirectory.isEmpty())
+            builder.catalogDirectory(Paths.get(options.catalogDirectory));
+        long start = System.nanoTime();
+        DeviceRecordFactory factory = builder.build();
+        System.out.println("Records are made with seed " + factory.getSeed());
+        System.out.println("Models are picked by " + factory.getModelDistribution() + ", devices by " + factory.getDeviceDistribution());
+        System.out.printf("%d models are ready in %d ms%n", factory.getModelList().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return factory;
     }
 
+    /**
+     * Id of the worker in the random streams of its records, and in its device ids unless the keyspace is partitioned.
+     * A coordinated worker has its member id, as its worker index may change while it runs.
+     */
     protected String buildWorkerId(){
+        if(!options.coordinatorDirectory.isEmpty())
+            return memberId;
         int length = options.workerNumber < 10 ? 1 : (int)Math.log10(options.workerNumber) + 1;
         return String.format("%0"+length+"d", options.workerIndex);
     }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+/**
+ * @Description Assigns worker indexes through a directory shared by the workers, a local or a mounted one,
+ * so the worker number can change while they run. Every worker holds a lease file, {@code {member}.lease},
+ * renewed with its wall clock time three times per lease. The live workers are the ones whose lease is
+ * younger than the lease time; sorted by member id, the position of a worker is its index and their
+ * number is the worker number. When a worker joins, leaves or stops renewing, the others get a new
+ * assignment within a third of the lease, and the ones which left are dropped within a lease. The clocks
+ * of the workers should be closer than the lease time.
+ * @Author Ping
+ * @Date 2026/10/18 19:30
+ **/
+public class FileCoordinator implements Closeable {
+
+    public static final String SUFFIX = ".lease";
+    public static final long DEFAULT_LEASE_MILLIS = 10_000L;
+    private static final Pattern MEMBER_ID = Pattern.compile("[A-Za-z0-9_.-]+");
+
+    /**
+     * Gets the assignments of the worker, one at a time, from the coordinator thread.
+     */
+    public interface Listener {
+        void onAssignment(int index, int count);
+    }
+
+    private final Path directory;
+    private final String memberId;
+    private final long leaseMillis;
+    private final Listener listener;
+    private final Path lease;
+    private Thread thread;
+    private volatile boolean closed;
+    private volatile int index = -1;
+    private volatile int count;
+
+    public FileCoordinator(Path directory, String memberId, long leaseMillis, Listener listener) {
+        if(memberId == null || !MEMBER_ID.matcher(memberId).matches())
+            throw new IllegalArgumentException("member id was "+memberId);
+        if(leaseMillis <= 0)
+            throw new IllegalArgumentException("lease millis was "+leaseMillis);
+        this.directory = directory;
+        this.memberId = memberId;
+        this.leaseMillis = leaseMillis;
+        this.listener = listener;
+        this.lease = directory.resolve(memberId + SUFFIX);
+    }
+
+    /**
+     * Takes a lease and the first assignment before it returns, then renews the lease in the background.
+     * Workers starting together may see each other only at the next renewal.
+     */
+    public void start() throws IOException {
+        if(thread != null)
+            throw new IllegalStateException("Coordinator is already started.");
+        Files.createDirectories(directory);
+        renew();
+        rebalance();
+        thread = new Thread(this::run, "data-maker-coordinator");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        long period = TimeUnit.MILLISECONDS.toNanos(Math.max(1, leaseMillis / 3));
+        while (!closed){
+            LockSupport.parkNanos(period);
+            if(closed)
+                break;
+            try {
+                renew();
+                rebalance();
+            } catch (IOException e) {
+                System.out.println("Coordinator failed to renew the lease of "+memberId+": "+e);
+            }
+        }
+    }
+
+    /**
+     * The lease is written into a temporary file and renamed, so readers never see half a lease.
+     */
+    private void renew() throws IOException {
+        Path temporary = Files.createTempFile(directory, memberId, ".tmp");
+        Files.write(temporary, Long.toString(System.currentTimeMillis()).getBytes(StandardCharsets.US_ASCII));
+        try {
+            Files.move(temporary, lease, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, lease, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void rebalance() throws IOException {
+        List<String> members = members();
+        int index = members.indexOf(memberId);
+        int count = members.size();
+        if(index < 0 || (index == this.index && count == this.count))
+            return;
+        try {
+            listener.onAssignment(index, count);
+        } catch (RuntimeException e) {
+            System.out.println("Worker "+memberId+" rejected the assignment "+index+" of "+count+": "+e);
+            return;
+        }
+        this.index = index;
+        this.count = count;
+        System.out.println("Worker "+memberId+" is worker "+index+" of "+count);
+    }
+
+    /**
+     * Member ids of the live leases, sorted.
+     */
+    List<String> members() throws IOException {
+        long oldest = System.currentTimeMillis() - leaseMillis;
+        List<String> members = new ArrayList<>();
+        try (DirectoryStream<Path> leases = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path path : leases) {
+                long renewed;
+                try {
+                    renewed = Long.parseLong(new String(Files.readAllBytes(path), StandardCharsets.US_ASCII).trim());
+                } catch (NoSuchFileException | NumberFormatException e) {
+                    continue;
+                }
+                String name = path.getFileName().toString();
+                if(renewed >= oldest)
+                    members.add(name.substring(0, name.length() - SUFFIX.length()));
+            }
+        }
+        Collections.sort(members);
+        return members;
+    }
+
+    public String getMemberId() {
+        return memberId;
+    }
+
+    /**
+     * Index of the worker in its last assignment, -1 before the first one.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Stops renewing and gives the lease back, so the other workers take over its devices at their next renewal.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if(thread != null){
+            LockSupport.unpark(thread);
+            try {
+                thread.join(leaseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Files.deleteIfExists(lease);
+    }
+}
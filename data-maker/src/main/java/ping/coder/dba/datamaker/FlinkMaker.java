@@ -13,12 +13,514 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+
 package ping.coder.dba.datamaker;
 
+import org.apache.flink.api.connector.source.Boundedness;
+import org.apache.flink.api.connector.source.ReaderOutput;
+import org.apache.flink.api.connector.source.Source;
+import org.apache.flink.api.connector.source.SourceReader;
+import org.apache.flink.api.connector.source.SourceReaderContext;
+import org.apache.flink.api.connector.source.SourceSplit;
+import org.apache.flink.api.connector.source.SplitEnumerator;
+import org.apache.flink.api.connector.source.SplitEnumeratorContext;
+import org.apache.flink.core.io.InputStatus;
+import org.apache.flink.core.io.SimpleVersionedSerializer;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
 /**
- * @Description @TODO
+ * @Description Parallel Flink source of device records, to load a pipeline from inside its own cluster
+ * with no Pub/Sub hop. When the job starts, the devices are partitioned into one split per subtask, and
+ * every split is a worker: it makes the records of its device range from its own random stream, which
+ * only depends on the seed and the split index, paced to its quota of the rate. The state of a split is
+ * its partition, its sequence number and its random state, so a restored split goes on with the record
+ * after the last checkpointed one, without replaying or skipping any. After a change of parallelism the
+ * splits keep their partitions and are spread over the new subtasks by Flink, a subtask may then make
+ * the records of several splits or of none.
  * @Author Ping
  * @Date 2024/5/21 21:15
  **/
-public class FlinkMaker {
+public class FlinkMaker implements Source<DeviceRecord, FlinkMaker.Split, Collection<FlinkMaker.Split>> {
+
+    private static final long serialVersionUID = 2L;
+
+    private final long seed;
+    private final int modelNumber;
+    private final int deviceNumber;
+    private final double rate;
+    private final long recordsPerSplit;
+
+    private FlinkMaker(long seed, int modelNumber, int deviceNumber, double rate, long recordsPerSplit) {
+        this.seed = seed;
+        this.modelNumber = modelNumber;
+        this.deviceNumber = deviceNumber;
+        this.rate = rate;
+        this.recordsPerSplit = recordsPerSplit;
+    }
+
+    @Override
+    public Boundedness getBoundedness() {
+        return recordsPerSplit > 0 ? Boundedness.BOUNDED : Boundedness.CONTINUOUS_UNBOUNDED;
+    }
+
+    @Override
+    public SourceReader<DeviceRecord, Split> createReader(SourceReaderContext readerContext) {
+        return new Reader(this, Metrics.global());
+    }
+
+    /**
+     * One split per subtask of the first run, split i is assigned to subtask i.
+     */
+    @Override
+    public SplitEnumerator<Split, Collection<Split>> createEnumerator(SplitEnumeratorContext<Split> enumContext) {
+        int parallelism = enumContext.currentParallelism();
+        List<Split> splits = new ArrayList<>(parallelism);
+        for (int i = 0; i < parallelism; i++)
+            splits.add(new Split(i, parallelism, 0, 0));
+        return new Enumerator(enumContext, getBoundedness() == Boundedness.BOUNDED, splits);
+    }
+
+    @Override
+    public SplitEnumerator<Split, Collection<Split>> restoreEnumerator(SplitEnumeratorContext<Split> enumContext,
+                                                                      Collection<Split> checkpoint) {
+        return new Enumerator(enumContext, getBoundedness() == Boundedness.BOUNDED, checkpoint);
+    }
+
+    @Override
+    public SimpleVersionedSerializer<Split> getSplitSerializer() {
+        return SplitSerializer.INSTANCE;
+    }
+
+    @Override
+    public SimpleVersionedSerializer<Collection<Split>> getEnumeratorCheckpointSerializer() {
+        return SplitsSerializer.INSTANCE;
+    }
+
+    /**
+     * Factory of the records of a split, at the position of the split.
+     */
+    DeviceRecordFactory newFactory(Split split) {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(seed).workerId(Integer.toString(split.getIndex()))
+                .models(modelNumber).deviceNumber(deviceNumber).partition(split.getIndex(), split.getCount()).build();
+        if(split.getSequence() > 0)
+            factory.getRandom().setState(split.getRandomState());
+        return factory;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * A partition of the devices and where its stream is at, the number of records it made and the state
+     * of its random. It's immutable, a reader takes a new one when its state is checkpointed.
+     */
+    public static final class Split implements SourceSplit {
+        private final int index;
+        private final int count;
+        private final long sequence;
+        private final long randomState;
+
+        public Split(int index, int count, long sequence, long randomState) {
+            if(index < 0 || index >= count)
+                throw new IllegalArgumentException("split was "+index+" of "+count);
+            if(sequence < 0)
+                throw new IllegalArgumentException("sequence was "+sequence);
+            this.index = index;
+            this.count = count;
+            this.sequence = sequence;
+            this.randomState = randomState;
+        }
+
+        @Override
+        public String splitId() {
+            return index + "-of-" + count;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Only meaningful when the sequence is more than zero, otherwise the stream starts from the seed.
+         */
+        public long getRandomState() {
+            return randomState;
+        }
+
+        @Override
+        public String toString() {
+            return "Split " + splitId() + " at record " + sequence;
+        }
+    }
+
+    static final class SplitSerializer implements SimpleVersionedSerializer<Split> {
+        static final SplitSerializer INSTANCE = new SplitSerializer();
+
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public byte[] serialize(Split split) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(24);
+            try (DataOutputStream output = new DataOutputStream(bytes)) {
+                write(output, split);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Split deserialize(int version, byte[] serialized) throws IOException {
+            if(version != getVersion())
+                throw new IOException("Unknown split version "+version);
+            try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(serialized))) {
+                return read(input);
+            }
+        }
+
+        static void write(DataOutputStream output, Split split) throws IOException {
+            output.writeInt(split.index);
+            output.writeInt(split.count);
+            output.writeLong(split.sequence);
+            output.writeLong(split.randomState);
+        }
+
+        static Split read(DataInputStream input) throws IOException {
+            return new Split(input.readInt(), input.readInt(), input.readLong(), input.readLong());
+        }
+    }
+
+    /**
+     * The checkpoint of the enumerator is the splits it hasn't assigned yet.
+     */
+    static final class SplitsSerializer implements SimpleVersionedSerializer<Collection<Split>> {
+        static final SplitsSerializer INSTANCE = new SplitsSerializer();
+
+        @Override
+        public int getVersion() {
+            return 1;
+        }
+
+        @Override
+        public byte[] serialize(Collection<Split> splits) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + 24 * splits.size());
+            try (DataOutputStream output = new DataOutputStream(bytes)) {
+                output.writeInt(splits.size());
+                for (Split split : splits)
+                    SplitSerializer.write(output, split);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Collection<Split> deserialize(int version, byte[] serialized) throws IOException {
+            if(version != getVersion())
+                throw new IOException("Unknown splits version "+version);
+            try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(serialized))) {
+                int size = input.readInt();
+                List<Split> splits = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    splits.add(SplitSerializer.read(input));
+                return splits;
+            }
+        }
+    }
+
+    /**
+     * Assigns every split to the subtask of its index modulo the parallelism when the subtask registers,
+     * and the splits of a failed subtask again when it's back.
+     */
+    static final class Enumerator implements SplitEnumerator<Split, Collection<Split>> {
+        private final SplitEnumeratorContext<Split> context;
+        private final boolean bounded;
+        private final List<Split> pending;
+
+        Enumerator(SplitEnumeratorContext<Split> context, boolean bounded, Collection<Split> pending) {
+            this.context = context;
+            this.bounded = bounded;
+            this.pending = new ArrayList<>(pending);
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void handleSplitRequest(int subtaskId, String requesterHostname) {
+        }
+
+        @Override
+        public void addSplitsBack(List<Split> splits, int subtaskId) {
+            pending.addAll(splits);
+            if(context.registeredReaders().containsKey(subtaskId))
+                assign(subtaskId);
+        }
+
+        @Override
+        public void addReader(int subtaskId) {
+            assign(subtaskId);
+        }
+
+        private void assign(int subtaskId) {
+            int parallelism = context.currentParallelism();
+            for (Iterator<Split> iterator = pending.iterator(); iterator.hasNext(); ) {
+                Split split = iterator.next();
+                if(split.getIndex() % parallelism == subtaskId){
+                    context.assignSplit(split, subtaskId);
+                    iterator.remove();
+                }
+            }
+            if(bounded)
+                context.signalNoMoreSplits(subtaskId);
+        }
+
+        @Override
+        public Collection<Split> snapshotState(long checkpointId) {
+            return new ArrayList<>(pending);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Makes the records of its splits in turns on the task thread, it never blocks: while the pacer has
+     * no slot for the next record, a timer completes the availability future when the slot comes.
+     * Snapshots are taken between two records, so they always match the records emitted.
+     */
+    static final class Reader implements SourceReader<DeviceRecord, Split> {
+        private final FlinkMaker maker;
+        private final Metrics metrics;
+        private final List<SplitState> splits = new ArrayList<>();
+        private CompletableFuture<Void> available = CompletableFuture.completedFuture(null);
+        private ScheduledExecutorService timer;
+        private RatePacer pacer;
+        private long slot;
+        private boolean reserved;
+        private boolean noMoreSplits;
+        private int next;
+
+        Reader(FlinkMaker maker, Metrics metrics) {
+            this.maker = maker;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public InputStatus pollNext(ReaderOutput<DeviceRecord> output) {
+            if(splits.isEmpty())
+                return noMoreSplits ? InputStatus.END_OF_INPUT : unavailable(0);
+            if(pacer != null){
+                if(!reserved){
+                    slot = pacer.reserve();
+                    reserved = true;
+                }
+                long remaining = slot - System.nanoTime();
+                if(remaining > 0)
+                    return unavailable(remaining);
+                reserved = false;
+                pacer.markAcquired();
+            }
+            if(next >= splits.size())
+                next = 0;
+            SplitState split = splits.get(next);
+            long begin = System.nanoTime();
+            DeviceRecord record = split.factory.newRecord();
+            metrics.recordGenerated(System.nanoTime() - begin);
+            output.collect(record);
+            split.sequence++;
+            if(maker.recordsPerSplit > 0 && split.sequence >= maker.recordsPerSplit){
+                splits.remove(next);
+                pace();
+            } else {
+                next++;
+            }
+            if(splits.isEmpty())
+                return noMoreSplits ? InputStatus.END_OF_INPUT : unavailable(0);
+            return InputStatus.MORE_AVAILABLE;
+        }
+
+        /**
+         * @param nanos time after which the reader is polled again, if it's zero it waits for splits.
+         */
+        private InputStatus unavailable(long nanos) {
+            if(available.isDone())
+                available = new CompletableFuture<>();
+            if(nanos > 0){
+                if(timer == null)
+                    timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "data-maker-pacer");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                CompletableFuture<Void> future = available;
+                timer.schedule(() -> future.complete(null), nanos, TimeUnit.NANOSECONDS);
+            }
+            return InputStatus.NOTHING_AVAILABLE;
+        }
+
+        @Override
+        public List<Split> snapshotState(long checkpointId) {
+            List<Split> snapshot = new ArrayList<>(splits.size());
+            for (SplitState split : splits)
+                snapshot.add(split.toSplit());
+            return snapshot;
+        }
+
+        @Override
+        public CompletableFuture<Void> isAvailable() {
+            return available;
+        }
+
+        @Override
+        public void addSplits(List<Split> added) {
+            for (Split split : added) {
+                splits.add(new SplitState(split, maker.newFactory(split)));
+                if(split.getSequence() > 0)
+                    System.out.printf("Split %s goes on from record %d%n", split.splitId(), split.getSequence());
+            }
+            pace();
+            available.complete(null);
+        }
+
+        @Override
+        public void notifyNoMoreSplits() {
+            noMoreSplits = true;
+            available.complete(null);
+        }
+
+        /**
+         * The rate of the reader is the sum of the quotas of its splits.
+         */
+        private void pace() {
+            if(maker.rate <= 0)
+                return;
+            double quota = 0;
+            for (SplitState split : splits)
+                quota += split.factory.getKeyspace().getPartition().quota(maker.rate);
+            if(quota <= 0)
+                return;
+            if(pacer == null)
+                pacer = new RatePacer(quota);
+            else
+                pacer.setRate(quota);
+        }
+
+        int getSplitNumber() {
+            return splits.size();
+        }
+
+        @Override
+        public void close() {
+            if(timer != null)
+                timer.shutdownNow();
+        }
+    }
+
+    private static final class SplitState {
+        private final Split split;
+        private final DeviceRecordFactory factory;
+        private long sequence;
+
+        SplitState(Split split, DeviceRecordFactory factory) {
+            this.split = split;
+            this.factory = factory;
+            this.sequence = split.getSequence();
+        }
+
+        Split toSplit() {
+            return new Split(split.getIndex(), split.getCount(), sequence, factory.getRandom().getState());
+        }
+    }
+
+    public static FlinkMakerBuilder builder(){
+        return new FlinkMakerBuilder();
+    }
+
+    public static class FlinkMakerBuilder {
+        private Long seed;
+        private int modelNumber = DeviceRecordFactory.DEFAULT_MODEL_NUMBER;
+        private int deviceNumber = DeviceRecordFactory.DEFAULT_DEVICE_NUMBER;
+        private double rate;
+        private long recordsPerSplit;
+        private FlinkMakerBuilder(){
+        }
+        /**
+         * If it's not set, a random seed is taken when the source is built, so every split has the same models.
+         */
+        public FlinkMakerBuilder seed(long seed){
+            this.seed = seed;
+            return this;
+        }
+        public FlinkMakerBuilder models(int length){
+            if(length<=0)
+                throw new IllegalArgumentException("The size of model should be more than zero.");
+            this.modelNumber = length;
+            return this;
+        }
+        /**
+         * Devices of every model, split between the splits.
+         */
+        public FlinkMakerBuilder deviceNumber(int number){
+            if(number<=0)
+                throw new IllegalArgumentException("The number of device should be more than zero.");
+            this.deviceNumber = number;
+            return this;
+        }
+        /**
+         * Records per second of all the splits together, if it's zero they are made as fast as they can.
+         */
+        public FlinkMakerBuilder rate(double rate){
+            if(!(rate >= 0) || Double.isInfinite(rate))
+                throw new IllegalArgumentException("rate was "+rate);
+            this.rate = rate;
+            return this;
+        }
+        /**
+         * Records of every split, the splits are as many as the subtasks of the first run. If it's zero,
+         * the source never ends.
+         */
+        public FlinkMakerBuilder recordsPerSplit(long records){
+            if(records<0)
+                throw new IllegalArgumentException("records per split was "+records);
+            this.recordsPerSplit = records;
+            return this;
+        }
+        public FlinkMaker build(){
+            if(seed == null)
+                seed(ThreadLocalRandom.current().nextLong());
+            return new FlinkMaker(seed, modelNumber, deviceNumber, rate, recordsPerSplit);
+        }
+    }
 }
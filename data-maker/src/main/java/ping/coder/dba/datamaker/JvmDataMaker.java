@@ -17,9 +17,22 @@
 package ping.coder.dba.datamaker;
 
 import com.google.common.base.Strings;
+import ping.coder.dba.datamaker.codec.RecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+import ping.coder.dba.datamaker.file.SegmentFileWriter;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.pipeline.PipelineWriter;
+import ping.coder.dba.datamaker.pipeline.WaitStrategy;
+import ping.coder.dba.datamaker.pubsub.EnvelopePublisherWriter;
+import ping.coder.dba.datamaker.pubsub.LocalPublisher;
+import ping.coder.dba.datamaker.pubsub.MessagePublisher;
+import ping.coder.dba.datamaker.pubsub.OrderedPublisherWriter;
 import ping.coder.dba.datamaker.pubsub.PublisherWriter;
+import ping.coder.dba.datamaker.pubsub.RetryPolicy;
+import ping.coder.dba.datamaker.pubsub.RoutingWriter;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 
 /**
  * @Description @TODO
@@ -28,6 +41,11 @@ import java.io.IOException;
  **/
 public class JvmDataMaker extends DataMaker{
 
+    public static final String SINK_PUBSUB = "pubsub";
+    public static final String SINK_FILE = "file";
+    public static final String SINK_LOCAL = "local";
+    public static final String SINK_BLACKHOLE = "blackhole";
+
     private final Writer writer;
 
     protected JvmDataMaker(String recordFactoryClassName, Writer writer, Options options) {
@@ -36,6 +54,17 @@ public class JvmDataMaker extends DataMaker{
     }
 
     public static void main(String[] args) throws Exception {
+        Options options = readOptions();
+        String recordFactoryClass = System.getenv().get("DATA_MAKER.RECORD_FACTORY");
+        Writer writer = buildPipeline(buildWriter(options), options);
+        JvmDataMaker maker = new JvmDataMaker(recordFactoryClass, writer, options);
+        maker.run();
+    }
+
+    /**
+     * Reads the options from the DATA_MAKER.* environment variables, the ones which aren't set keep their defaults.
+     */
+    protected static Options readOptions() {
         String workerIndex = System.getenv().get("DATA_MAKER.WORKER_INDEX");
         if(workerIndex==null || workerIndex.isEmpty())
             workerIndex = "0";
@@ -51,39 +80,349 @@ public class JvmDataMaker extends DataMaker{
         String interval = System.getenv().get("DATA_MAKER.INTERVAL");
         if(interval==null || interval.isEmpty())
             interval = "1000";
+        String rate = System.getenv().get("DATA_MAKER.RATE");
+        if(rate==null || rate.isEmpty())
+            rate = "0";
+        String burst = System.getenv().get("DATA_MAKER.BURST");
+        if(burst==null || burst.isEmpty())
+            burst = "0";
         String loopNumber = System.getenv().get("DATA_MAKER.LOOP_NUMBER");
         if(loopNumber==null || loopNumber.isEmpty())
             loopNumber = "3";
+        String flushNumber = System.getenv().get("DATA_MAKER.FLUSH_NUMBER");
+        if(flushNumber==null || flushNumber.isEmpty())
+            flushNumber = "0";
+        String threadNumber = System.getenv().get("DATA_MAKER.THREAD_NUMBER");
+        if(threadNumber==null || threadNumber.isEmpty())
+            threadNumber = "1";
+        String recordsPerThread = System.getenv().get("DATA_MAKER.RECORDS_PER_THREAD");
+        if(recordsPerThread==null || recordsPerThread.isEmpty())
+            recordsPerThread = "0";
+        String format = System.getenv().get("DATA_MAKER.FORMAT");
+        if(format==null || format.isEmpty())
+            format = RecordSerializers.JSON;
 
         Options options = new Options();
         options.setWorkerIndex(Integer.parseInt(workerIndex));
         options.setWorkerNumber(Integer.parseInt(workerNumber));
         options.setInterval(Integer.parseInt(interval));
+        options.setRate(Double.parseDouble(rate));
+        options.setBurst(Integer.parseInt(burst));
         options.setModelNumber(Integer.parseInt(modelNumber));
         options.setDeviceNumber(Integer.parseInt(deviceNumber));
         options.setLoopNumber(Integer.parseInt(loopNumber));
+        options.setFlushNumber(Integer.parseInt(flushNumber));
+        options.setThreadNumber(Integer.parseInt(threadNumber));
+        options.setRecordsPerThread(Integer.parseInt(recordsPerThread));
+        options.setFormat(format);
+        readPublishOptions(options);
 
-        String recordFactoryClass = System.getenv().get("DATA_MAKER.RECORD_FACTORY");
-        String projectId = System.getenv().get("DATA_MAKER.PROJECT_ID");
-        if(Strings.isNullOrEmpty(projectId))
-            throw new IllegalArgumentException("Project id is empty.");
-        String topicId = System.getenv().get("DATA_MAKER.TOPIC_ID");
-        if(Strings.isNullOrEmpty(topicId))
-            throw new IllegalArgumentException("Topic id is empty.");
-        Writer writer = new PublisherWriter(projectId, topicId);
-        JvmDataMaker maker = new JvmDataMaker(recordFactoryClass, writer, options);
-        maker.run();
+        String serializeThreadNumber = System.getenv().get("DATA_MAKER.SERIALIZE_THREAD_NUMBER");
+        if(serializeThreadNumber==null || serializeThreadNumber.isEmpty())
+            serializeThreadNumber = "0";
+        String writeThreadNumber = System.getenv().get("DATA_MAKER.WRITE_THREAD_NUMBER");
+        if(writeThreadNumber==null || writeThreadNumber.isEmpty())
+            writeThreadNumber = "1";
+        String queueCapacity = System.getenv().get("DATA_MAKER.QUEUE_CAPACITY");
+        if(queueCapacity==null || queueCapacity.isEmpty())
+            queueCapacity = "65536";
+        String waitStrategy = System.getenv().get("DATA_MAKER.WAIT_STRATEGY");
+        if(waitStrategy==null || waitStrategy.isEmpty())
+            waitStrategy = "park";
+        String serializeWaitStrategy = System.getenv().get("DATA_MAKER.SERIALIZE_WAIT_STRATEGY");
+        if(serializeWaitStrategy==null || serializeWaitStrategy.isEmpty())
+            serializeWaitStrategy = waitStrategy;
+        String writeWaitStrategy = System.getenv().get("DATA_MAKER.WRITE_WAIT_STRATEGY");
+        if(writeWaitStrategy==null || writeWaitStrategy.isEmpty())
+            writeWaitStrategy = waitStrategy;
+        String shedLoad = System.getenv().get("DATA_MAKER.SHED_LOAD");
+        if(shedLoad==null || shedLoad.isEmpty())
+            shedLoad = "false";
+        options.setSerializeThreadNumber(Integer.parseInt(serializeThreadNumber));
+        options.setWriteThreadNumber(Integer.parseInt(writeThreadNumber));
+        options.setQueueCapacity(Integer.parseInt(queueCapacity));
+        options.setSerializeWaitStrategy(serializeWaitStrategy);
+        options.setWriteWaitStrategy(writeWaitStrategy);
+        options.setShedLoad(Boolean.parseBoolean(shedLoad));
+        String metricsPort = System.getenv().get("DATA_MAKER.METRICS_PORT");
+        if(metricsPort==null || metricsPort.isEmpty())
+            metricsPort = "0";
+        String metricsInterval = System.getenv().get("DATA_MAKER.METRICS_INTERVAL");
+        if(metricsInterval==null || metricsInterval.isEmpty())
+            metricsInterval = "10";
+        options.setMetricsPort(Integer.parseInt(metricsPort));
+        options.setMetricsInterval(Integer.parseInt(metricsInterval));
+        String retryMaxAttempts = System.getenv().get("DATA_MAKER.RETRY_MAX_ATTEMPTS");
+        if(retryMaxAttempts==null || retryMaxAttempts.isEmpty())
+            retryMaxAttempts = "5";
+        String retryInitialBackoff = System.getenv().get("DATA_MAKER.RETRY_INITIAL_BACKOFF");
+        if(retryInitialBackoff==null || retryInitialBackoff.isEmpty())
+            retryInitialBackoff = "100";
+        String retryMaxBackoff = System.getenv().get("DATA_MAKER.RETRY_MAX_BACKOFF");
+        if(retryMaxBackoff==null || retryMaxBackoff.isEmpty())
+            retryMaxBackoff = "10000";
+        String retryQueueCapacity = System.getenv().get("DATA_MAKER.RETRY_QUEUE_CAPACITY");
+        if(retryQueueCapacity==null || retryQueueCapacity.isEmpty())
+            retryQueueCapacity = "10000";
+        options.setRetryMaxAttempts(Integer.parseInt(retryMaxAttempts));
+        options.setRetryInitialBackoff(Long.parseLong(retryInitialBackoff));
+        options.setRetryMaxBackoff(Long.parseLong(retryMaxBackoff));
+        options.setRetryQueueCapacity(Integer.parseInt(retryQueueCapacity));
+
+        String seed = System.getenv().get("DATA_MAKER.SEED");
+        if(seed==null || seed.isEmpty())
+            seed = "0";
+        options.setSeed(Long.parseLong(seed));
+        String statefulTelemetry = System.getenv().get("DATA_MAKER.STATEFUL_TELEMETRY");
+        if(statefulTelemetry==null || statefulTelemetry.isEmpty())
+            statefulTelemetry = "false";
+        options.setStatefulTelemetry(Boolean.parseBoolean(statefulTelemetry));
+        String outOfOrderRate = System.getenv().get("DATA_MAKER.OUT_OF_ORDER_RATE");
+        if(outOfOrderRate==null || outOfOrderRate.isEmpty())
+            outOfOrderRate = "0";
+        String maxSkew = System.getenv().get("DATA_MAKER.MAX_SKEW");
+        if(maxSkew==null || maxSkew.isEmpty())
+            maxSkew = "5000";
+        String lateRate = System.getenv().get("DATA_MAKER.LATE_RATE");
+        if(lateRate==null || lateRate.isEmpty())
+            lateRate = "0";
+        String lateness = System.getenv().get("DATA_MAKER.LATENESS");
+        if(lateness==null || lateness.isEmpty())
+            lateness = "60000";
+        String duplicateRate = System.getenv().get("DATA_MAKER.DUPLICATE_RATE");
+        if(duplicateRate==null || duplicateRate.isEmpty())
+            duplicateRate = "0";
+        options.setOutOfOrderRate(Double.parseDouble(outOfOrderRate));
+        options.setMaxSkew(Long.parseLong(maxSkew));
+        options.setLateRate(Double.parseDouble(lateRate));
+        options.setLateness(Long.parseLong(lateness));
+        options.setDuplicateRate(Double.parseDouble(duplicateRate));
+        String modelDistribution = System.getenv().get("DATA_MAKER.MODEL_DISTRIBUTION");
+        if(modelDistribution!=null && !modelDistribution.isEmpty())
+            options.setModelDistribution(modelDistribution);
+        String deviceDistribution = System.getenv().get("DATA_MAKER.DEVICE_DISTRIBUTION");
+        if(deviceDistribution!=null && !deviceDistribution.isEmpty())
+            options.setDeviceDistribution(deviceDistribution);
+        String catalogVersion = System.getenv().get("DATA_MAKER.CATALOG_VERSION");
+        if(catalogVersion==null || catalogVersion.isEmpty())
+            catalogVersion = "0";
+        String catalogDirectory = System.getenv().get("DATA_MAKER.CATALOG_DIRECTORY");
+        if(catalogDirectory==null)
+            catalogDirectory = "";
+        options.setCatalogVersion(Long.parseLong(catalogVersion));
+        options.setCatalogDirectory(catalogDirectory);
+        String schemaFile = System.getenv().get("DATA_MAKER.SCHEMA_FILE");
+        if(schemaFile!=null)
+            options.setSchemaFile(schemaFile);
+        String partitioned = System.getenv().get("DATA_MAKER.PARTITIONED");
+        if(partitioned==null || partitioned.isEmpty())
+            partitioned = "false";
+        String globalRate = System.getenv().get("DATA_MAKER.GLOBAL_RATE");
+        if(globalRate==null || globalRate.isEmpty())
+            globalRate = "0";
+        String coordinatorDirectory = System.getenv().get("DATA_MAKER.COORDINATOR_DIRECTORY");
+        if(coordinatorDirectory==null)
+            coordinatorDirectory = "";
+        String coordinatorLease = System.getenv().get("DATA_MAKER.COORDINATOR_LEASE");
+        if(coordinatorLease==null || coordinatorLease.isEmpty())
+            coordinatorLease = "10000";
+        String memberId = System.getenv().get("DATA_MAKER.MEMBER_ID");
+        if(memberId==null)
+            memberId = "";
+        options.setPartitioned(Boolean.parseBoolean(partitioned));
+        options.setGlobalRate(Double.parseDouble(globalRate));
+        options.setCoordinatorDirectory(coordinatorDirectory);
+        options.setCoordinatorLease(Long.parseLong(coordinatorLease));
+        options.setMemberId(memberId);
+        return options;
+    }
+
+    /**
+     * The preset is applied first, every single setting which is set overrides the preset.
+     */
+    protected static void readPublishOptions(Options options) {
+        String publishPreset = System.getenv().get("DATA_MAKER.PUBLISH_PRESET");
+        if(publishPreset!=null && !publishPreset.isEmpty())
+            options.setPublishPreset(publishPreset);
+        String batchElementCount = System.getenv().get("DATA_MAKER.BATCH_ELEMENT_COUNT");
+        if(batchElementCount!=null && !batchElementCount.isEmpty())
+            options.setBatchElementCount(Long.parseLong(batchElementCount));
+        String batchRequestBytes = System.getenv().get("DATA_MAKER.BATCH_REQUEST_BYTES");
+        if(batchRequestBytes!=null && !batchRequestBytes.isEmpty())
+            options.setBatchRequestBytes(Long.parseLong(batchRequestBytes));
+        String batchDelayMillis = System.getenv().get("DATA_MAKER.BATCH_DELAY_MILLIS");
+        if(batchDelayMillis!=null && !batchDelayMillis.isEmpty())
+            options.setBatchDelayMillis(Long.parseLong(batchDelayMillis));
+        String maxOutstandingElements = System.getenv().get("DATA_MAKER.MAX_OUTSTANDING_ELEMENTS");
+        if(maxOutstandingElements!=null && !maxOutstandingElements.isEmpty())
+            options.setMaxOutstandingElements(Long.parseLong(maxOutstandingElements));
+        String maxOutstandingBytes = System.getenv().get("DATA_MAKER.MAX_OUTSTANDING_BYTES");
+        if(maxOutstandingBytes!=null && !maxOutstandingBytes.isEmpty())
+            options.setMaxOutstandingBytes(Long.parseLong(maxOutstandingBytes));
+        String limitExceededBehavior = System.getenv().get("DATA_MAKER.LIMIT_EXCEEDED_BEHAVIOR");
+        if(limitExceededBehavior!=null && !limitExceededBehavior.isEmpty())
+            options.setLimitExceededBehavior(limitExceededBehavior);
+        String publisherThreadNumber = System.getenv().get("DATA_MAKER.PUBLISHER_THREAD_NUMBER");
+        if(publisherThreadNumber!=null && !publisherThreadNumber.isEmpty())
+            options.setPublisherThreadNumber(Integer.parseInt(publisherThreadNumber));
+        String compression = System.getenv().get("DATA_MAKER.COMPRESSION");
+        if(compression!=null && !compression.isEmpty())
+            options.setCompression(Boolean.parseBoolean(compression));
+        String compressionBytesThreshold = System.getenv().get("DATA_MAKER.COMPRESSION_BYTES_THRESHOLD");
+        if(compressionBytesThreshold!=null && !compressionBytesThreshold.isEmpty())
+            options.setCompressionBytesThreshold(Long.parseLong(compressionBytesThreshold));
+        String orderingShards = System.getenv().get("DATA_MAKER.ORDERING_SHARDS");
+        if(orderingShards!=null && !orderingShards.isEmpty())
+            options.setOrderingShards(Integer.parseInt(orderingShards));
+        String publishEndpoint = System.getenv().get("DATA_MAKER.PUBLISH_ENDPOINT");
+        if(publishEndpoint!=null)
+            options.setPublishEndpoint(publishEndpoint);
+        String envelopeRecords = System.getenv().get("DATA_MAKER.ENVELOPE_RECORDS");
+        if(envelopeRecords!=null && !envelopeRecords.isEmpty())
+            options.setEnvelopeRecords(Integer.parseInt(envelopeRecords));
+        String envelopeBytes = System.getenv().get("DATA_MAKER.ENVELOPE_BYTES");
+        if(envelopeBytes!=null && !envelopeBytes.isEmpty())
+            options.setEnvelopeBytes(Integer.parseInt(envelopeBytes));
+        String envelopeCodec = System.getenv().get("DATA_MAKER.ENVELOPE_CODEC");
+        if(envelopeCodec!=null && !envelopeCodec.isEmpty())
+            options.setEnvelopeCodec(envelopeCodec);
+    }
+
+    /**
+     * Builds the sink named by DATA_MAKER.SINK, Pub/Sub by default. The local and blackhole sinks need
+     * no project or topic, they find the throughput ceiling of each stage offline.
+     */
+    protected static Writer buildWriter(Options options) {
+        String sink = System.getenv().get("DATA_MAKER.SINK");
+        if(sink==null || sink.isEmpty())
+            sink = SINK_PUBSUB;
+        RecordSerializer serializer = RecordSerializers.of(options.getFormat());
+        switch (sink){
+            case SINK_PUBSUB:
+                String projectId = System.getenv().get("DATA_MAKER.PROJECT_ID");
+                if(Strings.isNullOrEmpty(projectId))
+                    throw new IllegalArgumentException("Project id is empty.");
+                String topicId = System.getenv().get("DATA_MAKER.TOPIC_ID");
+                if(Strings.isNullOrEmpty(topicId))
+                    throw new IllegalArgumentException("Topic id is empty.");
+                return buildPublisherWriter(options, projectId, topicId, PublisherWriter.cloudPublisherFactory(options), serializer);
+            case SINK_FILE:
+                String directory = System.getenv().get("DATA_MAKER.FILE_DIRECTORY");
+                if(Strings.isNullOrEmpty(directory))
+                    throw new IllegalArgumentException("File directory is empty.");
+                String prefix = System.getenv().get("DATA_MAKER.FILE_PREFIX");
+                if(prefix==null || prefix.isEmpty())
+                    prefix = "device";
+                String segmentBytes = System.getenv().get("DATA_MAKER.FILE_SEGMENT_BYTES");
+                if(segmentBytes==null || segmentBytes.isEmpty())
+                    segmentBytes = String.valueOf(SegmentFileWriter.DEFAULT_SEGMENT_BYTES);
+                String rollSeconds = System.getenv().get("DATA_MAKER.FILE_ROLL_SECONDS");
+                if(rollSeconds==null || rollSeconds.isEmpty())
+                    rollSeconds = "0";
+                return new SegmentFileWriter(Paths.get(directory), prefix + "-" + options.getWorkerIndex(),
+                        Long.parseLong(segmentBytes), Long.parseLong(rollSeconds) * 1000, serializer);
+            case SINK_LOCAL:
+                String latencyMillis = System.getenv().get("DATA_MAKER.LOCAL_LATENCY_MILLIS");
+                if(latencyMillis==null || latencyMillis.isEmpty())
+                    latencyMillis = "0";
+                String errorRate = System.getenv().get("DATA_MAKER.LOCAL_ERROR_RATE");
+                if(errorRate==null || errorRate.isEmpty())
+                    errorRate = "0";
+                String capacity = System.getenv().get("DATA_MAKER.LOCAL_CAPACITY");
+                if(capacity==null || capacity.isEmpty())
+                    capacity = "0";
+                return buildPublisherWriter(options, SINK_LOCAL, SINK_LOCAL, LocalPublisher.factory(
+                        (long) (Double.parseDouble(latencyMillis) * 1_000_000L), Double.parseDouble(errorRate), Integer.parseInt(capacity)),
+                        serializer);
+            case SINK_BLACKHOLE:
+                return new BlackholeWriter(serializer);
+            default:
+                throw new IllegalArgumentException(String.format("Error sink is: %s", sink));
+        }
+    }
+
+    /**
+     * Publishes into the topic, in the order of every device when DATA_MAKER.ORDERING_SHARDS is set, packed
+     * into envelopes when DATA_MAKER.ENVELOPE_RECORDS is set, or into one topic per route when DATA_MAKER.ROUTE_BY
+     * names a route. The routed topics are named by DATA_MAKER.ROUTE_TOPIC_FORMAT, the topic with "-%s" by
+     * default, and DATA_MAKER.FIREHOSE_TOPIC_ID names a topic which gets every record too.
+     */
+    protected static Writer buildPublisherWriter(Options options, String projectId, String topicId,
+                                                 MessagePublisher.Factory publisherFactory, RecordSerializer serializer) {
+        String route = System.getenv().get("DATA_MAKER.ROUTE_BY");
+        if(options.getOrderingShards() > 0){
+            if(route!=null && !route.isEmpty())
+                throw new IllegalArgumentException("Ordered records can't be routed, the route was "+route);
+            if(options.getEnvelopeRecords() > 0)
+                throw new IllegalArgumentException("Ordered records can't be packed into envelopes.");
+            return new OrderedPublisherWriter(projectId, topicId, publisherFactory, serializer, Metrics.global(),
+                    buildRetryPolicy(options), options.getOrderingShards());
+        }
+        if(options.getEnvelopeRecords() > 0){
+            if(route!=null && !route.isEmpty())
+                throw new IllegalArgumentException("Packed records can't be routed, the route was "+route);
+            return new EnvelopePublisherWriter(projectId, topicId, publisherFactory, serializer, Metrics.global(),
+                    buildRetryPolicy(options), options.getEnvelopeRecords(), options.getEnvelopeBytes(), options.getEnvelopeCodec());
+        }
+        if(route==null || route.isEmpty())
+            return new PublisherWriter(projectId, topicId, publisherFactory, serializer, Metrics.global(), buildRetryPolicy(options));
+        String topicFormat = System.getenv().get("DATA_MAKER.ROUTE_TOPIC_FORMAT");
+        if(topicFormat==null || topicFormat.isEmpty())
+            topicFormat = topicId + "-%s";
+        String prefixLength = System.getenv().get("DATA_MAKER.ROUTE_PREFIX_LENGTH");
+        if(prefixLength==null || prefixLength.isEmpty())
+            prefixLength = "6";
+        String topicNumber = System.getenv().get("DATA_MAKER.ROUTE_TOPIC_NUMBER");
+        if(topicNumber==null || topicNumber.isEmpty())
+            topicNumber = "4";
+        return RoutingWriter.builder()
+                .projectId(projectId)
+                .route(route)
+                .topicFormat(topicFormat)
+                .prefixLength(Integer.parseInt(prefixLength))
+                .topicNumber(Integer.parseInt(topicNumber))
+                .firehoseTopic(System.getenv().get("DATA_MAKER.FIREHOSE_TOPIC_ID"))
+                .publisherFactory(publisherFactory)
+                .serializer(serializer)
+                .retryPolicy(buildRetryPolicy(options))
+                .build();
+    }
+
+    protected static RetryPolicy buildRetryPolicy(Options options) {
+        if(options.getRetryMaxAttempts() == 0)
+            return RetryPolicy.NONE;
+        return new RetryPolicy(options.getRetryMaxAttempts(), options.getRetryInitialBackoff(),
+                Math.max(options.getRetryInitialBackoff(), options.getRetryMaxBackoff()), options.getRetryQueueCapacity());
+    }
+
+    /**
+     * Puts serialize and write stages in front of the sink when serialize threads are configured.
+     */
+    protected static Writer buildPipeline(Writer writer, Options options) {
+        if(options.getSerializeThreadNumber() <= 0)
+            return writer;
+        return new PipelineWriter(writer, RecordSerializers.of(options.getFormat()), options.getSerializeThreadNumber(),
+                options.getWriteThreadNumber(), options.getQueueCapacity(), WaitStrategy.of(options.getSerializeWaitStrategy()),
+                WaitStrategy.of(options.getWriteWaitStrategy()), options.isShedLoad(), Metrics.global());
+    }
+
+    @Override
+    protected void open() throws IOException {
+        writer.open();
     }
 
     @Override
     protected void makeRecord(Object record) {
-        try {
-            writer.open();
-            writer.write(record);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        } finally {
-            writer.close();
-        }
+        writer.write(record);
+    }
+
+    @Override
+    protected void flush() {
+        writer.flush();
+    }
+
+    @Override
+    protected void close() {
+        writer.close();
     }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Description Paces records to a target rate with nanosecond resolution. Every call of
+ * {@link #acquire()} reserves the next time slot, slots are computed from the start of the run
+ * instead of being added after each record, so the time spent making and sending a record
+ * doesn't make the rate drift. When the caller falls behind, up to {@code burst} records are
+ * released back to back to catch up; older missed slots are dropped. A pacer may be shared by
+ * several threads, the target rate is then the total of all of them. The rate can be changed while
+ * the pacer is used, from the next slot on, and a burst of one second of records follows it. Periods
+ * and catch-up windows are capped at about 100 days, so no rate or burst overflows the slots.
+ * @Author Ping
+ * @Date 2026/10/18 11:02
+ **/
+public class RatePacer {
+
+    /**
+     * Slots are kept in fixed point nanoseconds, so a period like 333.33ns doesn't round the rate.
+     */
+    private static final int FRACTION_BITS = 8;
+    /**
+     * Waits shorter than this are spun instead of parked, parking isn't that precise.
+     */
+    private static final long SPIN_NANOS = 50_000L;
+    /**
+     * Cap of the period and the catch-up window in fixed point, 2^53 ns or about 104 days: a slot plus
+     * either of them stays far from overflowing.
+     */
+    private static final long MAX_FIXED = Long.MAX_VALUE >> 2;
+
+    private volatile double rate;
+    /**
+     * Whether the burst is one second of records at the current rate instead of a fixed number.
+     */
+    private final boolean burstFollowsRate;
+    private volatile int burst;
+    private volatile long periodFixed;
+    private volatile long burstFixed;
+    private final long origin;
+    private final AtomicLong nextSlot = new AtomicLong(Long.MIN_VALUE);
+    private final LongAdder acquired = new LongAdder();
+    private volatile long startNanos;
+    private volatile long lastNanos;
+
+    /**
+     * @param rate target records per second, fractional rates are allowed.
+     * @param burst max number of records released back to back when catching up.
+     */
+    public RatePacer(double rate, int burst) {
+        if(burst <= 0)
+            throw new IllegalArgumentException("burst was "+burst);
+        this.burstFollowsRate = false;
+        this.burst = burst;
+        setRate(rate);
+        this.origin = System.nanoTime();
+    }
+
+    /**
+     * A pacer which catches up one second of records at most, the burst follows the rate when it's changed.
+     * @param rate target records per second, fractional rates are allowed.
+     */
+    public RatePacer(double rate) {
+        this.burstFollowsRate = true;
+        setRate(rate);
+        this.origin = System.nanoTime();
+    }
+
+    /**
+     * Changes the target rate, e.g. when the quota of the worker changes.
+     */
+    public void setRate(double rate) {
+        if(!(rate > 0) || Double.isInfinite(rate))
+            throw new IllegalArgumentException("rate was "+rate);
+        long periodFixed = Math.min(MAX_FIXED, Math.max(1L, Math.round((1_000_000_000d / rate) * (1 << FRACTION_BITS))));
+        int burst = burstFollowsRate ? (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.ceil(rate))) : this.burst;
+        this.burstFixed = burst - 1 > MAX_FIXED / periodFixed ? MAX_FIXED : (burst - 1) * periodFixed;
+        this.periodFixed = periodFixed;
+        this.burst = burst;
+        this.rate = rate;
+    }
+
+    /**
+     * Blocks until the next slot of the target rate.
+     */
+    public void acquire() throws InterruptedException {
+        long deadline = reserve();
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0){
+            if(remaining > SPIN_NANOS)
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            else
+                Thread.yield();
+            if(Thread.interrupted())
+                throw new InterruptedException();
+        }
+        markAcquired();
+    }
+
+    /**
+     * Reserves the next slot without waiting for it, for a caller which mustn't block. It waits in its
+     * own way until the returned time, then calls {@link #markAcquired()}.
+     * @return the {@link System#nanoTime()} of the slot.
+     */
+    public long reserve() {
+        long slot;
+        while (true){
+            long now = (System.nanoTime() - origin) << FRACTION_BITS;
+            long next = nextSlot.get();
+            long periodFixed = this.periodFixed;
+            if(next == Long.MIN_VALUE){
+                if(nextSlot.compareAndSet(next, now + periodFixed)){
+                    startNanos = System.nanoTime();
+                    slot = now;
+                    break;
+                }
+                continue;
+            }
+            slot = Math.max(next, now - burstFixed);
+            if(nextSlot.compareAndSet(next, slot + periodFixed))
+                break;
+        }
+        return origin + (slot >> FRACTION_BITS);
+    }
+
+    /**
+     * Counts a reserved slot as used once its time has come.
+     */
+    public void markAcquired() {
+        acquired.increment();
+        lastNanos = System.nanoTime();
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public long getAcquired() {
+        return acquired.sum();
+    }
+
+    /**
+     * Records per second achieved from the first to the last acquired slot.
+     */
+    public double getAchievedRate() {
+        long count = acquired.sum();
+        long elapsed = lastNanos - startNanos;
+        if(count <= 1 || elapsed <= 0)
+            return 0;
+        return (count - 1) / (elapsed / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Paced %d records, achieved rate %.3f rec/s, target rate %.3f rec/s (%.2f%%)",
+                getAcquired(), getAchievedRate(), rate, getAchievedRate() * 100 / rate);
+    }
+}
@@ -16,12 +16,12 @@
 
 package ping.coder.dba.datamaker;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-
 import java.io.IOException;
 
 /**
- * @Description @TODO
+ * @Description A writer is a session: open it once, write many records, flush at the points
+ * the caller chooses and close it when the run is over. Records written between two flushes
+ * may be buffered and batched by the implementation.
  * @Author Ping
  * @Date 2024/5/23 0:04
  **/
@@ -30,4 +30,9 @@ public interface Writer {
     void open() throws IOException;
     void close();
     void write(Object record);
+
+    /**
+     * Push every buffered record out of the session without closing it.
+     */
+    void flush();
 }
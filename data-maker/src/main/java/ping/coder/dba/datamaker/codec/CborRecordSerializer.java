@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import ping.coder.dba.datamaker.model.DeviceModel;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * @Description CBOR payloads written by Jackson. A device record is written field by field, because the
+ * CBOR generator can't write raw values: the json documents are kept as JSON text strings, the ones of
+ * the model are written from its UTF-8 bytes. Other records go through a CBOR object mapper.
+ * @Author Ping
+ * @Date 2026/10/18 13:12
+ **/
+public class CborRecordSerializer implements RecordSerializer {
+
+    private static final ThreadLocal<ByteArrayOutputStream> outputs = ThreadLocal.withInitial(() -> new ByteArrayOutputStream(512));
+    private final CBORFactory factory = new CBORFactory();
+    private final ObjectMapper mapper = new ObjectMapper(factory);
+
+    @Override
+    public String getFormat() {
+        return RecordSerializers.CBOR;
+    }
+
+    @Override
+    public byte[] serialize(Object record) throws IOException {
+        if(!(record instanceof DeviceRecord))
+            return mapper.writeValueAsBytes(record);
+        DeviceRecord deviceRecord = (DeviceRecord) record;
+        DeviceModel model = deviceRecord.getModel();
+        ByteArrayOutputStream output = outputs.get();
+        output.reset();
+        try (CBORGenerator generator = factory.createGenerator(output)) {
+            generator.writeStartObject(8);
+            generator.writeStringField("deviceId", deviceRecord.getDeviceId());
+            generator.writeStringField("deviceType", deviceRecord.getDeviceType());
+            generator.writeStringField("version", deviceRecord.getVersion());
+            generator.writeFieldName("timestamp");
+            if(deviceRecord.getTimestamp() == null)
+                generator.writeNull();
+            else
+                generator.writeNumber(deviceRecord.getTimestamp().getTime());
+            generator.writeNumberField("retry", deviceRecord.getRetry());
+            generator.writeFieldName("deviceData");
+            writeString(generator, deviceRecord.getDeviceData(), RecordSerializers.deviceDataUtf8(deviceRecord, model));
+            generator.writeStringField("sensorData", deviceRecord.getSensorData());
+            generator.writeFieldName("sensorMetadata");
+            writeString(generator, deviceRecord.getSensorMetadata(), RecordSerializers.sensorMetadataUtf8(deviceRecord, model));
+            generator.writeEndObject();
+        }
+        return output.toByteArray();
+    }
+
+    private static void writeString(CBORGenerator generator, String value, byte[] utf8) throws IOException {
+        if(utf8 != null)
+            generator.writeUTF8String(utf8, 0, utf8.length);
+        else
+            generator.writeString(value);
+    }
+}
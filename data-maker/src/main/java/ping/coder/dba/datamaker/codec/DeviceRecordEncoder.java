@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import com.google.protobuf.ByteString;
+import ping.coder.dba.datamaker.model.DeviceModel;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * @Description Writes a {@link DeviceRecord} as JSON straight into a reusable UTF-8 buffer, with the same
+ * fields, order and escaping as Jackson's {@code ObjectMapper}. The json fields of the model are appended
+ * from the bytes the model encoded once. An encoder isn't thread safe, use one per thread.
+ * @Author Ping
+ * @Date 2026/10/18 12:10
+ **/
+public class DeviceRecordEncoder {
+
+    private static final byte[] DEVICE_ID = ascii("{\"deviceId\":");
+    private static final byte[] DEVICE_TYPE = ascii(",\"deviceType\":");
+    private static final byte[] VERSION = ascii(",\"version\":");
+    private static final byte[] TIMESTAMP = ascii(",\"timestamp\":");
+    private static final byte[] RETRY = ascii(",\"retry\":");
+    private static final byte[] DEVICE_DATA = ascii(",\"deviceData\":");
+    private static final byte[] SENSOR_DATA = ascii(",\"sensorData\":");
+    private static final byte[] SENSOR_METADATA = ascii(",\"sensorMetadata\":");
+    private static final byte[] NULL = ascii("null");
+    private static final byte[] MIN_LONG = ascii(String.valueOf(Long.MIN_VALUE));
+    private static final byte[] HEX = ascii("0123456789ABCDEF");
+
+    private byte[] buffer;
+    private int length;
+
+    public DeviceRecordEncoder() {
+        this(1024);
+    }
+
+    public DeviceRecordEncoder(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * Encodes the record into the buffer, replacing what was encoded before.
+     */
+    public DeviceRecordEncoder encode(DeviceRecord record) {
+        DeviceModel model = record.getModel();
+        length = 0;
+        append(DEVICE_ID);
+        appendString(record.getDeviceId());
+        append(DEVICE_TYPE);
+        appendString(record.getDeviceType());
+        append(VERSION);
+        appendString(record.getVersion());
+        append(TIMESTAMP);
+        Date timestamp = record.getTimestamp();
+        if(timestamp == null)
+            append(NULL);
+        else
+            appendLong(timestamp.getTime());
+        append(RETRY);
+        appendLong(record.getRetry());
+        append(DEVICE_DATA);
+        if(model != null && model.getDeviceData() == record.getDeviceData())
+            appendRaw(model.getDeviceDataUtf8());
+        else
+            appendRaw(record.getDeviceData());
+        append(SENSOR_DATA);
+        appendRaw(record.getSensorData());
+        append(SENSOR_METADATA);
+        if(model != null && model.getSensorMetadata() == record.getSensorMetadata())
+            appendRaw(model.getSensorMetadataUtf8());
+        else
+            appendRaw(record.getSensorMetadata());
+        ensure(1);
+        buffer[length++] = '}';
+        return this;
+    }
+
+    /**
+     * The buffer is reused by the next {@link #encode(DeviceRecord)}, only the first {@link #length()} bytes are valid.
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, length);
+    }
+
+    public ByteString toByteString() {
+        return ByteString.copyFrom(buffer, 0, length);
+    }
+
+    private void append(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    private void appendRaw(byte[] bytes) {
+        if(bytes == null)
+            append(NULL);
+        else
+            append(bytes);
+    }
+
+    private void appendRaw(String value) {
+        if(value == null)
+            append(NULL);
+        else
+            appendUtf8(value, false);
+    }
+
+    private void appendString(String value) {
+        if(value == null){
+            append(NULL);
+            return;
+        }
+        ensure(1);
+        buffer[length++] = '"';
+        appendUtf8(value, true);
+        ensure(1);
+        buffer[length++] = '"';
+    }
+
+    private void appendUtf8(String value, boolean escape) {
+        int size = value.length();
+        // every char takes at most 6 bytes when escaped, 3 bytes otherwise
+        ensure(size * (escape ? 6 : 3));
+        byte[] buffer = this.buffer;
+        int position = length;
+        for (int i = 0; i < size; i++) {
+            char c = value.charAt(i);
+            if(c < 0x80){
+                if(escape && (c < 0x20 || c == '"' || c == '\\'))
+                    position = appendEscape(c, buffer, position);
+                else
+                    buffer[position++] = (byte) c;
+            } else if(c < 0x800){
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if(Character.isHighSurrogate(c) && i + 1 < size && Character.isLowSurrogate(value.charAt(i + 1))){
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if(Character.isSurrogate(c)){
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        length = position;
+    }
+
+    private static int appendEscape(char c, byte[] buffer, int position) {
+        buffer[position++] = '\\';
+        switch (c){
+            case '"': buffer[position++] = '"'; break;
+            case '\\': buffer[position++] = '\\'; break;
+            case '\b': buffer[position++] = 'b'; break;
+            case '\t': buffer[position++] = 't'; break;
+            case '\n': buffer[position++] = 'n'; break;
+            case '\f': buffer[position++] = 'f'; break;
+            case '\r': buffer[position++] = 'r'; break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xF];
+        }
+        return position;
+    }
+
+    private void appendLong(long value) {
+        if(value == Long.MIN_VALUE){
+            append(MIN_LONG);
+            return;
+        }
+        ensure(20);
+        if(value < 0){
+            buffer[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10)
+            digits++;
+        for (int i = length + digits - 1; i >= length; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    private void ensure(int more) {
+        if(length + more > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + more));
+    }
+
+    private static byte[] ascii(String value) {
+        byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.io.IOException;
+
+/**
+ * @Description JSON payloads, device records are encoded by {@link DeviceRecordEncoder} and other records
+ * by the object mapper.
+ * @Author Ping
+ * @Date 2026/10/18 13:08
+ **/
+public class JsonRecordSerializer implements RecordSerializer {
+
+    private static final ThreadLocal<DeviceRecordEncoder> encoders = ThreadLocal.withInitial(DeviceRecordEncoder::new);
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public String getFormat() {
+        return RecordSerializers.JSON;
+    }
+
+    @Override
+    public byte[] serialize(Object record) throws IOException {
+        if(record instanceof DeviceRecord)
+            return encoders.get().encode((DeviceRecord) record).toByteArray();
+        return mapper.writeValueAsBytes(record);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import ping.coder.dba.datamaker.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description Counts the records, the bytes and the time spent by the serializer it wraps, so the wire
+ * formats can be compared by bytes per record and encode cost.
+ * @Author Ping
+ * @Date 2026/10/18 13:46
+ **/
+public class MeteredRecordSerializer implements RecordSerializer {
+
+    private final RecordSerializer serializer;
+    private final Metrics metrics;
+    private final LongAdder records = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+
+    public MeteredRecordSerializer(RecordSerializer serializer) {
+        this(serializer, Metrics.global());
+    }
+
+    public MeteredRecordSerializer(RecordSerializer serializer, Metrics metrics) {
+        this.serializer = serializer;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String getFormat() {
+        return serializer.getFormat();
+    }
+
+    @Override
+    public byte[] serialize(Object record) throws IOException {
+        if(record instanceof SerializedRecord){
+            byte[] data = ((SerializedRecord) record).getData(getFormat());
+            forwarded.increment();
+            records.increment();
+            bytes.add(data.length);
+            return data;
+        }
+        long start = System.nanoTime();
+        byte[] data = serializer.serialize(record);
+        long elapsed = System.nanoTime() - start;
+        nanos.add(elapsed);
+        metrics.recordSerialized(elapsed);
+        records.increment();
+        bytes.add(data.length);
+        return data;
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public double getBytesPerRecord() {
+        long count = records.sum();
+        return count == 0 ? 0 : (double) bytes.sum() / count;
+    }
+
+    /**
+     * Number of records which came already serialized and were only forwarded.
+     */
+    public long getForwarded() {
+        return forwarded.sum();
+    }
+
+    public double getNanosPerRecord() {
+        long count = records.sum() - forwarded.sum();
+        return count == 0 ? 0 : (double) nanos.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        long forwarded = getForwarded();
+        if(forwarded > 0)
+            return String.format("Serialized %d records as %s, %.1f bytes/record, %.1f ns/record, %d forwarded already serialized",
+                    getRecords(), getFormat(), getBytesPerRecord(), getNanosPerRecord(), forwarded);
+        return String.format("Serialized %d records as %s, %.1f bytes/record, %.1f ns/record",
+                getRecords(), getFormat(), getBytesPerRecord(), getNanosPerRecord());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import com.google.protobuf.CodedOutputStream;
+import ping.coder.dba.datamaker.model.DeviceModel;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.io.IOException;
+
+/**
+ * @Description Protobuf payloads of {@code schema/device.proto}. The messages are written field by field
+ * with a coded output stream into an array of the exact size, so no generated classes are needed and
+ * nothing is copied. Like proto3, empty fields aren't written.
+ * @Author Ping
+ * @Date 2026/10/18 13:31
+ **/
+public class ProtobufRecordSerializer implements RecordSerializer {
+
+    static final int RECORD_DEVICE_ID = 1;
+    static final int RECORD_DEVICE_TYPE = 2;
+    static final int RECORD_VERSION = 3;
+    static final int RECORD_TIMESTAMP = 4;
+    static final int RECORD_RETRY = 5;
+    static final int RECORD_DEVICE_DATA = 6;
+    static final int RECORD_SENSOR_DATA = 7;
+    static final int RECORD_SENSOR_METADATA = 8;
+
+    static final int MODEL_DEVICE_MODEL_ID = 1;
+    static final int MODEL_DEVICE_TYPE = 2;
+    static final int MODEL_VERSION = 3;
+    static final int MODEL_DEVICE_DATA = 4;
+    static final int MODEL_SENSOR_METADATA = 5;
+
+    @Override
+    public String getFormat() {
+        return RecordSerializers.PROTOBUF;
+    }
+
+    @Override
+    public byte[] serialize(Object record) throws IOException {
+        if(record instanceof DeviceRecord)
+            return serialize((DeviceRecord) record);
+        if(record instanceof DeviceModel)
+            return serialize((DeviceModel) record);
+        throw new IllegalArgumentException("No protobuf message for "+record.getClass().getName());
+    }
+
+    private static byte[] serialize(DeviceRecord record) throws IOException {
+        DeviceModel model = record.getModel();
+        byte[] deviceData = RecordSerializers.deviceDataUtf8(record, model);
+        byte[] sensorMetadata = RecordSerializers.sensorMetadataUtf8(record, model);
+        long timestamp = record.getTimestamp() == null ? 0L : record.getTimestamp().getTime();
+        int size = stringSize(RECORD_DEVICE_ID, record.getDeviceId())
+                + stringSize(RECORD_DEVICE_TYPE, record.getDeviceType())
+                + stringSize(RECORD_VERSION, record.getVersion())
+                + (timestamp == 0 ? 0 : CodedOutputStream.computeInt64Size(RECORD_TIMESTAMP, timestamp))
+                + (record.getRetry() == 0 ? 0 : CodedOutputStream.computeInt32Size(RECORD_RETRY, record.getRetry()))
+                + stringSize(RECORD_DEVICE_DATA, record.getDeviceData(), deviceData)
+                + stringSize(RECORD_SENSOR_DATA, record.getSensorData())
+                + stringSize(RECORD_SENSOR_METADATA, record.getSensorMetadata(), sensorMetadata);
+        byte[] result = new byte[size];
+        CodedOutputStream output = CodedOutputStream.newInstance(result);
+        writeString(output, RECORD_DEVICE_ID, record.getDeviceId());
+        writeString(output, RECORD_DEVICE_TYPE, record.getDeviceType());
+        writeString(output, RECORD_VERSION, record.getVersion());
+        if(timestamp != 0)
+            output.writeInt64(RECORD_TIMESTAMP, timestamp);
+        if(record.getRetry() != 0)
+            output.writeInt32(RECORD_RETRY, record.getRetry());
+        writeString(output, RECORD_DEVICE_DATA, record.getDeviceData(), deviceData);
+        writeString(output, RECORD_SENSOR_DATA, record.getSensorData());
+        writeString(output, RECORD_SENSOR_METADATA, record.getSensorMetadata(), sensorMetadata);
+        output.checkNoSpaceLeft();
+        return result;
+    }
+
+    private static byte[] serialize(DeviceModel model) throws IOException {
+        int size = stringSize(MODEL_DEVICE_MODEL_ID, model.getDeviceModelId())
+                + stringSize(MODEL_DEVICE_TYPE, model.getDeviceType())
+                + stringSize(MODEL_VERSION, model.getVersion())
+                + stringSize(MODEL_DEVICE_DATA, model.getDeviceData(), model.getDeviceDataUtf8())
+                + stringSize(MODEL_SENSOR_METADATA, model.getSensorMetadata(), model.getSensorMetadataUtf8());
+        byte[] result = new byte[size];
+        CodedOutputStream output = CodedOutputStream.newInstance(result);
+        writeString(output, MODEL_DEVICE_MODEL_ID, model.getDeviceModelId());
+        writeString(output, MODEL_DEVICE_TYPE, model.getDeviceType());
+        writeString(output, MODEL_VERSION, model.getVersion());
+        writeString(output, MODEL_DEVICE_DATA, model.getDeviceData(), model.getDeviceDataUtf8());
+        writeString(output, MODEL_SENSOR_METADATA, model.getSensorMetadata(), model.getSensorMetadataUtf8());
+        output.checkNoSpaceLeft();
+        return result;
+    }
+
+    private static int stringSize(int field, String value) {
+        return value == null || value.isEmpty() ? 0 : CodedOutputStream.computeStringSize(field, value);
+    }
+
+    private static int stringSize(int field, String value, byte[] utf8) {
+        if(utf8 == null)
+            return stringSize(field, value);
+        return utf8.length == 0 ? 0 : CodedOutputStream.computeTagSize(field) + CodedOutputStream.computeUInt32SizeNoTag(utf8.length) + utf8.length;
+    }
+
+    private static void writeString(CodedOutputStream output, int field, String value) throws IOException {
+        if(value != null && !value.isEmpty())
+            output.writeString(field, value);
+    }
+
+    /**
+     * Protobuf strings and bytes share the same encoding, so UTF-8 bytes are written as they are.
+     */
+    private static void writeString(CodedOutputStream output, int field, String value, byte[] utf8) throws IOException {
+        if(utf8 == null)
+            writeString(output, field, value);
+        else if(utf8.length > 0)
+            output.writeByteArray(field, utf8);
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @Description Serialized records packed into one message. Every record is framed by its length as an
+ * unsigned varint, and the frames are compressed together by the codec of the envelope, so the records
+ * share the per-message overhead and the compression window. The number of records, the codec and the
+ * record format go into the attributes of the message, {@link #unpack(byte[], Map)} reads them back.
+ * @Author Ping
+ * @Date 2026/10/18 23:10
+ **/
+public final class RecordEnvelope {
+
+    public static final String CODEC_NONE = "none";
+    public static final String CODEC_GZIP = "gzip";
+    public static final String CODEC_ZSTD = "zstd";
+    public static final List<String> CODECS = Collections.unmodifiableList(Arrays.asList(CODEC_NONE, CODEC_GZIP, CODEC_ZSTD));
+
+    public static final String ATTRIBUTE_COUNT = "count";
+    public static final String ATTRIBUTE_CODEC = "codec";
+    public static final String ATTRIBUTE_FORMAT = "format";
+
+    private static final int ZSTD_LEVEL = 3;
+
+    private byte[] buffer;
+    private int size;
+    private int count;
+
+    public RecordEnvelope(int initialCapacity) {
+        if(initialCapacity <= 0)
+            throw new IllegalArgumentException("initial capacity was "+initialCapacity);
+        this.buffer = new byte[initialCapacity];
+    }
+
+    public void add(byte[] record) {
+        ensure(size + 5 + record.length);
+        for (int length = record.length; ; length >>>= 7) {
+            if((length & ~0x7F) == 0){
+                buffer[size++] = (byte) length;
+                break;
+            }
+            buffer[size++] = (byte) ((length & 0x7F) | 0x80);
+        }
+        System.arraycopy(record, 0, buffer, size, record.length);
+        size += record.length;
+        count++;
+    }
+
+    private void ensure(int capacity) {
+        if(capacity > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+    }
+
+    /**
+     * Number of records in the envelope.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Bytes of the framed records before compression.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * The framed records compressed by the codec.
+     */
+    public byte[] pack(String codec) throws IOException {
+        if(CODEC_NONE.equals(codec))
+            return Arrays.copyOf(buffer, size);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(Math.max(64, size / 4));
+        try (OutputStream compressing = compressing(codec, output)) {
+            compressing.write(buffer, 0, size);
+        }
+        return output.toByteArray();
+    }
+
+    private static OutputStream compressing(String codec, OutputStream output) throws IOException {
+        switch (codec){
+            case CODEC_GZIP:
+                return new GZIPOutputStream(output, 8192);
+            case CODEC_ZSTD:
+                return new ZstdOutputStream(output, ZSTD_LEVEL);
+            default:
+                throw new IllegalArgumentException(String.format("Error envelope codec is: %s, should be one of %s", codec, CODECS));
+        }
+    }
+
+    private static InputStream decompressing(String codec, InputStream input) throws IOException {
+        switch (codec){
+            case CODEC_NONE:
+                return input;
+            case CODEC_GZIP:
+                return new GZIPInputStream(input, 8192);
+            case CODEC_ZSTD:
+                return new ZstdInputStream(input);
+            default:
+                throw new IOException(String.format("Error envelope codec is: %s, should be one of %s", codec, CODECS));
+        }
+    }
+
+    /**
+     * Reads the records of a message packed by an envelope, by the codec and count in its attributes.
+     */
+    public static List<byte[]> unpack(byte[] data, Map<String, String> attributes) throws IOException {
+        String codec = attributes.get(ATTRIBUTE_CODEC);
+        String count = attributes.get(ATTRIBUTE_COUNT);
+        if(codec == null || count == null)
+            throw new IOException("Message isn't an envelope, its attributes were "+attributes);
+        List<byte[]> records = unpack(data, codec);
+        if(records.size() != Integer.parseInt(count))
+            throw new IOException("Envelope should have "+count+" records, it had "+records.size());
+        return records;
+    }
+
+    public static List<byte[]> unpack(byte[] data, String codec) throws IOException {
+        List<byte[]> records = new ArrayList<>();
+        try (InputStream input = decompressing(codec, new ByteArrayInputStream(data))) {
+            for (int length; (length = readLength(input)) >= 0; ) {
+                byte[] record = new byte[length];
+                for (int read = 0; read < length; ) {
+                    int n = input.read(record, read, length - read);
+                    if(n < 0)
+                        throw new IOException("Envelope ends inside a record of "+length+" bytes");
+                    read += n;
+                }
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return -1 at the end of the envelope.
+     */
+    private static int readLength(InputStream input) throws IOException {
+        int length = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = input.read();
+            if(b < 0){
+                if(shift == 0)
+                    return -1;
+                throw new IOException("Envelope ends inside a record length");
+            }
+            length |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0)
+                return length;
+        }
+        throw new IOException("Record length of the envelope is malformed");
+    }
+}
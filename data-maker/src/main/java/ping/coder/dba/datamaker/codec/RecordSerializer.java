@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import java.io.IOException;
+
+/**
+ * @Description Turns a record made by a record factory into the payload a writer sends. Serializers are
+ * shared by the generating threads, so implementations must be thread safe.
+ * @Author Ping
+ * @Date 2026/10/18 13:05
+ **/
+public interface RecordSerializer {
+
+    /**
+     * Name of the wire format, see {@link RecordSerializers}.
+     */
+    String getFormat();
+
+    /**
+     * Returns a new array owned by the caller.
+     */
+    byte[] serialize(Object record) throws IOException;
+}
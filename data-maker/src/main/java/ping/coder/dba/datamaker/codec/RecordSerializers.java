@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.model.DeviceModel;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 13:40
+ **/
+public abstract class RecordSerializers {
+
+    public static final String JSON = "json";
+    public static final String CBOR = "cbor";
+    public static final String AVRO = "avro";
+    public static final String PROTOBUF = "protobuf";
+    public static final List<String> FORMATS = Collections.unmodifiableList(Arrays.asList(JSON, CBOR, AVRO, PROTOBUF));
+
+    public static RecordSerializer of(String format){
+        if(format == null || format.isEmpty() || JSON.equals(format))
+            return new JsonRecordSerializer();
+        if(CBOR.equals(format))
+            return new CborRecordSerializer();
+        if(AVRO.equals(format))
+            return new AvroRecordSerializer();
+        if(PROTOBUF.equals(format))
+            return new ProtobufRecordSerializer();
+        throw new IllegalArgumentException(String.format("Error record format is: %s, should be one of %s", format, FORMATS));
+    }
+
+    /**
+     * Wraps the serializer to count records, bytes and encode time, unless it's already metered.
+     */
+    public static MeteredRecordSerializer metered(RecordSerializer serializer){
+        return metered(serializer, Metrics.global());
+    }
+
+    public static MeteredRecordSerializer metered(RecordSerializer serializer, Metrics metrics){
+        if(serializer instanceof MeteredRecordSerializer)
+            return (MeteredRecordSerializer) serializer;
+        return new MeteredRecordSerializer(serializer, metrics);
+    }
+
+    /**
+     * UTF-8 bytes of the device data if the record still carries the document of its model, otherwise null.
+     */
+    static byte[] deviceDataUtf8(DeviceRecord record, DeviceModel model){
+        return model != null && model.getDeviceData() == record.getDeviceData() ? model.getDeviceDataUtf8() : null;
+    }
+
+    /**
+     * UTF-8 bytes of the sensor metadata if the record still carries the document of its model, otherwise null.
+     */
+    static byte[] sensorMetadataUtf8(DeviceRecord record, DeviceModel model){
+        return model != null && model.getSensorMetadata() == record.getSensorMetadata() ? model.getSensorMetadataUtf8() : null;
+    }
+}
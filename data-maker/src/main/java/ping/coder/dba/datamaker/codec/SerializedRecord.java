@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import java.io.IOException;
+
+/**
+ * @Description A record already serialized by an earlier stage. Writers hand it to their serializer as
+ * usual, and a metered serializer forwards its bytes instead of encoding the record again.
+ * @Author Ping
+ * @Date 2026/10/18 17:05
+ **/
+public final class SerializedRecord {
+
+    private final Object record;
+    private final String format;
+    private final byte[] data;
+
+    public SerializedRecord(Object record, String format, byte[] data) {
+        this.record = record;
+        this.format = format;
+        this.data = data;
+    }
+
+    public Object getRecord() {
+        return record;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * Bytes of the record, they are shared and must not be changed.
+     *
+     * @param format format the caller would have serialized the record as.
+     */
+    public byte[] getData(String format) throws IOException {
+        if(!this.format.equals(format))
+            throw new IOException("Record was serialized as "+this.format+", not as "+format);
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(record);
+    }
+}
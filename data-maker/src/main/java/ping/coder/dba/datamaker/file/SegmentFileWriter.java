@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.file;
+
+import ping.coder.dba.datamaker.Writer;
+import ping.coder.dba.datamaker.codec.DeviceRecordEncoder;
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+import ping.coder.dba.datamaker.codec.SerializedRecord;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Description Writes newline-delimited JSON records into local files. Every writing thread owns a lane
+ * with its own segment files, so threads never share a file position, and the lock of a lane is only
+ * taken by another thread to force or roll its segment. A segment is mapped into memory at its full size
+ * up front and records are copied into the mapping, with no system call per record. A segment is rolled
+ * when it's full or older than the roll interval, the age is checked by a timer too, so the segment of an
+ * idle lane is still rolled on time. A rolled segment is unmapped, truncated to the bytes written and
+ * renamed from {@code .ndjson.inprogress} to {@code .ndjson}, so readers only pick up finished segments.
+ * Segment files are named {@code {prefix}-{open millis}-{lane}-{segment}.ndjson}.
+ * <p>
+ * The mapping is dropped through the cleaner of the JDK. If a JDK has none, the mapping stays until
+ * the buffer is collected and the truncation fails on Windows, which can't truncate a mapped file.
+ * @Author Ping
+ * @Date 2026/10/18 15:10
+ **/
+public class SegmentFileWriter implements Writer {
+
+    public static final String SUFFIX = ".ndjson";
+    public static final String IN_PROGRESS_SUFFIX = ".inprogress";
+    public static final long DEFAULT_SEGMENT_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * The unsafe of Java 9 and later and its invokeCleaner, or the cleaner of a direct buffer of Java 8
+     * and its clean, to unmap a segment, see {@link #unmap(MappedByteBuffer)}.
+     */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+    private static final Method CLEANER;
+    private static final Method CLEAN;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        Method cleaner = null;
+        Method clean = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            try {
+                cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            } catch (ReflectiveOperationException | RuntimeException ignored) {
+                cleaner = null;
+                clean = null;
+            }
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+        CLEANER = cleaner;
+        CLEAN = clean;
+    }
+
+    private final Path directory;
+    private final String prefix;
+    private final long segmentBytes;
+    private final long rollNanos;
+    private final RecordSerializer serializer;
+    private final boolean jsonEncoder;
+    private final AtomicInteger laneIndex = new AtomicInteger();
+    private final Queue<Lane> lanes = new ConcurrentLinkedQueue<>();
+    private volatile ThreadLocal<Lane> threadLanes;
+    private ScheduledExecutorService roller;
+    private long openMillis;
+
+    public SegmentFileWriter(Path directory, String prefix) {
+        this(directory, prefix, DEFAULT_SEGMENT_BYTES, 0, new JsonRecordSerializer());
+    }
+
+    /**
+     * @param segmentBytes size of a segment file, a record larger than that gets a segment of its own.
+     * @param rollMillis max age of a segment, if it's zero segments are only rolled when they are full.
+     * @param serializer must write JSON, other formats may contain new lines.
+     */
+    public SegmentFileWriter(Path directory, String prefix, long segmentBytes, long rollMillis, RecordSerializer serializer) {
+        if(segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("segment bytes was "+segmentBytes);
+        if(rollMillis < 0)
+            throw new IllegalArgumentException("roll millis was "+rollMillis);
+        if(!RecordSerializers.JSON.equals(serializer.getFormat()))
+            throw new IllegalArgumentException("Newline-delimited segments need json records, format was "+serializer.getFormat());
+        this.directory = directory;
+        this.prefix = prefix;
+        this.segmentBytes = segmentBytes;
+        this.rollNanos = rollMillis * 1_000_000L;
+        this.serializer = serializer;
+        this.jsonEncoder = serializer instanceof JsonRecordSerializer;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if(threadLanes != null)
+            throw new IllegalStateException("Writer is already opened.");
+        Files.createDirectories(directory);
+        openMillis = System.currentTimeMillis();
+        threadLanes = ThreadLocal.withInitial(() -> {
+            Lane lane = new Lane(laneIndex.getAndIncrement());
+            lanes.add(lane);
+            return lane;
+        });
+        if(rollNanos > 0){
+            roller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "data-maker-segment-roller");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long period = Math.max(TimeUnit.MILLISECONDS.toNanos(1), rollNanos / 4);
+            roller.scheduleWithFixedDelay(this::rollOld, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Rolls the segments older than the roll interval, whether their lanes still write or not.
+     */
+    private void rollOld() {
+        for (Lane lane : lanes) {
+            try {
+                lane.rollOld();
+            } catch (IOException e) {
+                System.out.println("Segment of lane " + lane.index + " can't be rolled: " + e);
+            }
+        }
+    }
+
+    @Override
+    public void write(Object record) {
+        ThreadLocal<Lane> threadLanes = this.threadLanes;
+        if(threadLanes == null)
+            throw new IllegalStateException("Writer isn't opened.");
+        try {
+            threadLanes.get().write(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forces the written records of every lane to the disk.
+     */
+    @Override
+    public void flush() {
+        for (Lane lane : lanes) {
+            lane.force();
+        }
+    }
+
+    /**
+     * Finishes the segments of every lane, the writing threads must have stopped.
+     */
+    @Override
+    public void close() {
+        if(threadLanes == null)
+            return;
+        threadLanes = null;
+        if(roller != null){
+            roller.shutdownNow();
+            roller = null;
+        }
+        IOException error = null;
+        Lane lane;
+        while ((lane = lanes.poll()) != null) {
+            try {
+                lane.finish();
+            } catch (IOException e) {
+                if(error == null)
+                    error = e;
+            }
+        }
+        if(error != null)
+            throw new UncheckedIOException(error);
+    }
+
+    private class Lane {
+        private final int index;
+        private final DeviceRecordEncoder encoder;
+        private int segmentIndex;
+        private Path path;
+        private FileChannel channel;
+        private MappedByteBuffer buffer;
+        private long segmentStart;
+
+        private Lane(int index) {
+            this.index = index;
+            this.encoder = jsonEncoder ? new DeviceRecordEncoder() : null;
+        }
+
+        private synchronized void write(Object record) throws IOException {
+            byte[] data;
+            int length;
+            if(record instanceof SerializedRecord){
+                data = ((SerializedRecord) record).getData(serializer.getFormat());
+                length = data.length;
+            } else if(encoder != null && record instanceof DeviceRecord){
+                data = encoder.encode((DeviceRecord) record).buffer();
+                length = encoder.length();
+            } else {
+                data = serializer.serialize(record);
+                length = data.length;
+            }
+            MappedByteBuffer buffer = this.buffer;
+            if(buffer == null || buffer.remaining() < length + 1 || isOld()){
+                finish();
+                buffer = next(length + 1);
+            }
+            buffer.put(data, 0, length);
+            buffer.put((byte) '\n');
+        }
+
+        private MappedByteBuffer next(int minBytes) throws IOException {
+            path = directory.resolve(String.format("%s-%d-%05d-%06d%s%s", prefix, openMillis, index, segmentIndex++, SUFFIX, IN_PROGRESS_SUFFIX));
+            channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            segmentStart = System.nanoTime();
+            return buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(segmentBytes, minBytes));
+        }
+
+        private boolean isOld() {
+            return rollNanos > 0 && System.nanoTime() - segmentStart >= rollNanos;
+        }
+
+        /**
+         * Finishes the segment if it's older than the roll interval, the next write opens a new one.
+         */
+        private synchronized void rollOld() throws IOException {
+            if(buffer != null && isOld())
+                finish();
+        }
+
+        private synchronized void force() {
+            if(buffer != null)
+                buffer.force();
+        }
+
+        private synchronized void finish() throws IOException {
+            MappedByteBuffer buffer = this.buffer;
+            if(buffer == null)
+                return;
+            this.buffer = null;
+            buffer.force();
+            int size = buffer.position();
+            unmap(buffer);
+            try {
+                channel.truncate(size);
+            } finally {
+                channel.close();
+            }
+            String name = path.getFileName().toString();
+            Files.move(path, path.resolveSibling(name.substring(0, name.length() - IN_PROGRESS_SUFFIX.length())),
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Drops a mapping at once instead of when the buffer is collected, by {@code Unsafe.invokeCleaner} from
+     * Java 9 or by the cleaner of the buffer on Java 8. The buffer mustn't be used afterwards.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            if(UNSAFE != null)
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            else if(CLEANER != null)
+                CLEAN.invoke(CLEANER.invoke(buffer));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // the mapping is released when the buffer is collected
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.metrics;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @Description Concurrent latency histogram with log-linear buckets like HdrHistogram: values below 128
+ * have a bucket each, above that every power of two is split into 64 buckets, so any value is kept
+ * within 1.6% of its real size from one nanosecond up to the whole long range in about 3700 buckets.
+ * Recording threads are spread round-robin over stripes, one per core, each with its own buckets, count,
+ * sum and max, so threads recording similar latencies don't contend on the same cache lines. A stripe is
+ * made on its first use, and the stripes are merged when the histogram is read. Recording never allocates
+ * after that.
+ * @Author Ping
+ * @Date 2026/10/18 18:05
+ **/
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_SUB_BUCKETS = SUB_BUCKETS >> 1;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * HALF_SUB_BUCKETS;
+    /**
+     * Slots after the buckets of a stripe, the last ones keep the next stripe off the cache line of the max.
+     */
+    private static final int COUNT = BUCKETS;
+    private static final int SUM = BUCKETS + 1;
+    private static final int MAX = BUCKETS + 2;
+    private static final int STRIPE_LENGTH = BUCKETS + 3 + 8;
+    private static final int STRIPES = Math.max(2, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private static final AtomicInteger NEXT_PROBE = new AtomicInteger();
+    private static final ThreadLocal<Integer> PROBE = ThreadLocal.withInitial(NEXT_PROBE::getAndIncrement);
+
+    private final AtomicReferenceArray<AtomicLongArray> stripes = new AtomicReferenceArray<>(STRIPES);
+
+    /**
+     * @param nanos negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        AtomicLongArray stripe = stripe();
+        stripe.incrementAndGet(index(value));
+        stripe.incrementAndGet(COUNT);
+        stripe.addAndGet(SUM, value);
+        long current;
+        while (value > (current = stripe.get(MAX)) && !stripe.compareAndSet(MAX, current, value)) {
+        }
+    }
+
+    private AtomicLongArray stripe() {
+        int index = PROBE.get() & (STRIPES - 1);
+        AtomicLongArray stripe = stripes.get(index);
+        if(stripe == null){
+            stripes.compareAndSet(index, null, new AtomicLongArray(STRIPE_LENGTH));
+            stripe = stripes.get(index);
+        }
+        return stripe;
+    }
+
+    private long total(int slot) {
+        long total = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if(stripe != null)
+                total += stripe.get(slot);
+        }
+        return total;
+    }
+
+    static int index(long value) {
+        if(value < SUB_BUCKETS)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    /**
+     * Largest value which falls into the bucket.
+     */
+    static long highestValue(int index) {
+        if(index < SUB_BUCKETS)
+            return index;
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return total(COUNT);
+    }
+
+    public long getSum() {
+        return total(SUM);
+    }
+
+    public long getMax() {
+        long max = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if(stripe != null)
+                max = Math.max(max, stripe.get(MAX));
+        }
+        return max;
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * @param quantile between 0 and 1.
+     * @return the value which the quantile of the records are not above, or 0 if nothing is recorded.
+     */
+    public long getValueAtQuantile(double quantile) {
+        if(!(quantile >= 0 && quantile <= 1))
+            throw new IllegalArgumentException("quantile was "+quantile);
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < STRIPES; i++) {
+            AtomicLongArray stripe = stripes.get(i);
+            if(stripe == null)
+                continue;
+            for (int j = 0; j < BUCKETS; j++)
+                snapshot[j] += stripe.get(j);
+        }
+        long total = 0;
+        for (long count : snapshot)
+            total += count;
+        if(total == 0)
+            return 0;
+        long max = getMax();
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if(seen >= rank)
+                return Math.min(highestValue(i), max);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * @Description Counters and latency histograms of a run. Every counter is a {@link LongAdder}, so the
+ * generating and publishing threads never contend on a single cache line, and nothing is printed per
+ * record. They are read by the {@link MetricsServer} and the {@link MetricsReporter}. A writer with several
+ * destinations records into the metrics of each destination, which add up into the metrics they come from.
+ * A pipeline registers the queues in front of its stages, whose depth is read when the metrics are.
+ * @Author Ping
+ * @Date 2026/10/18 18:10
+ **/
+public class Metrics {
+
+    /**
+     * A bounded queue in front of a stage, read as gauges.
+     */
+    public interface QueueGauge {
+
+        int getDepth();
+
+        int getCapacity();
+
+        /**
+         * Number of offers which found the queue full.
+         */
+        long getFull();
+    }
+
+    private static final Metrics GLOBAL = new Metrics();
+
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder serialized = new LongAdder();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+    private final LatencyHistogram generateLatency = new LatencyHistogram();
+    private final LatencyHistogram serializeLatency = new LatencyHistogram();
+    private final LatencyHistogram publishLatency = new LatencyHistogram();
+    private final Metrics parent;
+    private final ConcurrentMap<String, Metrics> destinations = new ConcurrentHashMap<>();
+    private final Map<String, QueueGauge> queues = new LinkedHashMap<>();
+
+    public Metrics() {
+        this(null);
+    }
+
+    private Metrics(Metrics parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Metrics shared by all the parts of the process which aren't given their own.
+     */
+    public static Metrics global() {
+        return GLOBAL;
+    }
+
+    public void recordGenerated(long nanos) {
+        generated.increment();
+        generateLatency.record(nanos);
+    }
+
+    public void recordSerialized(long nanos) {
+        serialized.increment();
+        serializeLatency.record(nanos);
+        if(parent != null)
+            parent.recordSerialized(nanos);
+    }
+
+    /**
+     * @param nanos time from the publish call to the acknowledgement.
+     */
+    public void recordPublished(long nanos) {
+        recordPublished(nanos, 1);
+    }
+
+    /**
+     * @param records number of records carried by the acknowledged message.
+     */
+    public void recordPublished(long nanos, int records) {
+        published.add(records);
+        publishLatency.record(nanos);
+        if(parent != null)
+            parent.recordPublished(nanos, records);
+    }
+
+    /**
+     * @param code status code of the failure, or the exception class name if it has none.
+     */
+    public void recordFailed(String code) {
+        failed.increment();
+        LongAdder counter = failures.get(code);
+        if(counter == null)
+            counter = failures.computeIfAbsent(code, key -> new LongAdder());
+        counter.increment();
+        if(parent != null)
+            parent.recordFailed(code);
+    }
+
+    /**
+     * A failed record is put on the retry queue for one more attempt.
+     */
+    public void recordRetried() {
+        retried.increment();
+        if(parent != null)
+            parent.recordRetried();
+    }
+
+    /**
+     * A record is given up and won't be published.
+     */
+    public void recordLost() {
+        recordLost(1);
+    }
+
+    public void recordLost(int records) {
+        lost.add(records);
+        if(parent != null)
+            parent.recordLost(records);
+    }
+
+    /**
+     * A record is dropped because the pipeline is full.
+     */
+    public void recordShed() {
+        shed.increment();
+    }
+
+    /**
+     * Registers the queue in front of a stage, in the order of the stages from the generation to the sink.
+     * A queue registered again under the same stage name replaces the one before.
+     */
+    public synchronized void registerQueue(String stage, QueueGauge queue) {
+        queues.put(stage, queue);
+    }
+
+    /**
+     * Queues by stage, in the order of the stages.
+     */
+    public synchronized Map<String, QueueGauge> getQueues() {
+        return new LinkedHashMap<>(queues);
+    }
+
+    /**
+     * The stage behind the last queue which was ever found full, or the generation when no queue was.
+     * A slow stage fills the queue in front of it first and the queues before that only fill as a
+     * consequence, so the full queue closest to the sink points at the slowest stage.
+     */
+    public String getBottleneck() {
+        String bottleneck = "generate";
+        for (Map.Entry<String, QueueGauge> entry : getQueues().entrySet()) {
+            if(entry.getValue().getFull() > 0)
+                bottleneck = entry.getKey();
+        }
+        return bottleneck;
+    }
+
+    /**
+     * Metrics of a destination, e.g. a topic, made on first use. What is recorded into them is recorded
+     * into these metrics too.
+     */
+    public Metrics destination(String name) {
+        Metrics metrics = destinations.get(name);
+        return metrics != null ? metrics : destinations.computeIfAbsent(name, key -> new Metrics(this));
+    }
+
+    /**
+     * Metrics of the destinations, sorted by name.
+     */
+    public Map<String, Metrics> getDestinations() {
+        return new TreeMap<>(destinations);
+    }
+
+    public long getGenerated() {
+        return generated.sum();
+    }
+
+    public long getSerialized() {
+        return serialized.sum();
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    public long getLost() {
+        return lost.sum();
+    }
+
+    public long getShed() {
+        return shed.sum();
+    }
+
+    /**
+     * Failures by status code, sorted by code.
+     */
+    public Map<String, Long> getFailures() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : failures.entrySet())
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        return snapshot;
+    }
+
+    public LatencyHistogram getGenerateLatency() {
+        return generateLatency;
+    }
+
+    public LatencyHistogram getSerializeLatency() {
+        return serializeLatency;
+    }
+
+    public LatencyHistogram getPublishLatency() {
+        return publishLatency;
+    }
+
+    /**
+     * Writes all the metrics in the Prometheus text exposition format, the histograms as summaries in seconds.
+     */
+    public String toPrometheus() {
+        StringBuilder builder = new StringBuilder(2048);
+        counter(builder, "data_maker_records_generated_total", "Records made by the record factories.", getGenerated());
+        counter(builder, "data_maker_records_serialized_total", "Records encoded by the serializers.", getSerialized());
+        counter(builder, "data_maker_records_published_total", "Records acknowledged by the sink.", getPublished());
+        counter(builder, "data_maker_records_retried_total", "Failed records put on the retry queue.", getRetried());
+        counter(builder, "data_maker_records_lost_total", "Records given up after failing.", getLost());
+        counter(builder, "data_maker_records_shed_total", "Records dropped because the pipeline was full.", getShed());
+        builder.append("# HELP data_maker_publish_failures_total Publish attempts which failed, by status code.\n");
+        builder.append("# TYPE data_maker_publish_failures_total counter\n");
+        for (Map.Entry<String, Long> entry : getFailures().entrySet())
+            builder.append("data_maker_publish_failures_total{code=\"").append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+        summary(builder, "data_maker_generate_seconds", "Time to make one record.", generateLatency);
+        summary(builder, "data_maker_serialize_seconds", "Time to encode one record.", serializeLatency);
+        summary(builder, "data_maker_publish_latency_seconds", "Time from publishing a record to its acknowledgement.", publishLatency);
+        Map<String, Metrics> destinations = getDestinations();
+        if(!destinations.isEmpty()){
+            destinationCounter(builder, destinations, "data_maker_destination_records_published_total",
+                    "Records acknowledged by the destination.", Metrics::getPublished);
+            destinationCounter(builder, destinations, "data_maker_destination_records_failed_total",
+                    "Publish attempts to the destination which failed.", Metrics::getFailed);
+            destinationCounter(builder, destinations, "data_maker_destination_records_lost_total",
+                    "Records given up by the destination.", Metrics::getLost);
+            String name = "data_maker_destination_publish_latency_seconds";
+            builder.append("# HELP ").append(name).append(" Time from publishing a record to the destination to its acknowledgement.\n");
+            builder.append("# TYPE ").append(name).append(" summary\n");
+            for (Map.Entry<String, Metrics> entry : destinations.entrySet())
+                summaryValues(builder, name, "destination=\"" + entry.getKey() + "\",", entry.getValue().publishLatency);
+        }
+        Map<String, QueueGauge> queues = getQueues();
+        if(!queues.isEmpty()){
+            queueValues(builder, queues, "data_maker_queue_depth", "gauge", "Records waiting in the queue in front of the stage.",
+                    QueueGauge::getDepth);
+            queueValues(builder, queues, "data_maker_queue_capacity", "gauge", "Capacity of the queue in front of the stage.",
+                    QueueGauge::getCapacity);
+            queueValues(builder, queues, "data_maker_queue_full_total", "counter", "Offers which found the queue in front of the stage full.",
+                    QueueGauge::getFull);
+            String bottleneck = getBottleneck();
+            builder.append("# HELP data_maker_bottleneck The slowest stage of the pipeline is 1, the others are 0.\n");
+            builder.append("# TYPE data_maker_bottleneck gauge\n");
+            builder.append("data_maker_bottleneck{stage=\"generate\"} ").append("generate".equals(bottleneck) ? 1 : 0).append('\n');
+            for (String stage : queues.keySet())
+                builder.append("data_maker_bottleneck{stage=\"").append(stage).append("\"} ").append(stage.equals(bottleneck) ? 1 : 0).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static void counter(StringBuilder builder, String name, String help, long value) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(" counter\n");
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void destinationCounter(StringBuilder builder, Map<String, Metrics> destinations, String name, String help,
+                                           ToLongFunction<Metrics> value) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(" counter\n");
+        for (Map.Entry<String, Metrics> entry : destinations.entrySet())
+            builder.append(name).append("{destination=\"").append(entry.getKey()).append("\"} ")
+                    .append(value.applyAsLong(entry.getValue())).append('\n');
+    }
+
+    private static void queueValues(StringBuilder builder, Map<String, QueueGauge> queues, String name, String type, String help,
+                                    ToLongFunction<QueueGauge> value) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (Map.Entry<String, QueueGauge> entry : queues.entrySet())
+            builder.append(name).append("{stage=\"").append(entry.getKey()).append("\"} ")
+                    .append(value.applyAsLong(entry.getValue())).append('\n');
+    }
+
+    private static void summary(StringBuilder builder, String name, String help, LatencyHistogram histogram) {
+        builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        builder.append("# TYPE ").append(name).append(" summary\n");
+        summaryValues(builder, name, "", histogram);
+    }
+
+    /**
+     * @param labels labels before the quantile, each followed by a comma.
+     */
+    private static void summaryValues(StringBuilder builder, String name, String labels, LatencyHistogram histogram) {
+        for (String quantile : new String[]{"0.5", "0.9", "0.99", "0.999"}) {
+            builder.append(name).append('{').append(labels).append("quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getValueAtQuantile(Double.parseDouble(quantile)) / 1e9).append('\n');
+        }
+        String suffix = labels.isEmpty() ? " " : "{" + labels.substring(0, labels.length() - 1) + "} ";
+        builder.append(name).append("_sum").append(suffix).append(histogram.getSum() / 1e9).append('\n');
+        builder.append(name).append("_count").append(suffix).append(histogram.getCount()).append('\n');
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.metrics;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description Prints one summary line of the metrics every interval and once more when it's closed,
+ * with the rates since the line before, one more line per destination if there are destinations, and one
+ * more with the queues of the pipeline if there is a pipeline.
+ * @Author Ping
+ * @Date 2026/10/18 18:25
+ **/
+public class MetricsReporter implements AutoCloseable {
+
+    private final Metrics metrics;
+    private final long intervalMillis;
+    private final ScheduledExecutorService executor;
+    private long lastNanos;
+    private long lastGenerated;
+    private long lastPublished;
+
+    /**
+     * @param intervalMillis if it's zero, only the line on close is printed.
+     */
+    public MetricsReporter(Metrics metrics, long intervalMillis) {
+        if(intervalMillis < 0)
+            throw new IllegalArgumentException("interval millis was "+intervalMillis);
+        this.metrics = metrics;
+        this.intervalMillis = intervalMillis;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "data-maker-metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        lastNanos = System.nanoTime();
+        lastGenerated = metrics.getGenerated();
+        lastPublished = metrics.getPublished();
+        if(intervalMillis > 0)
+            executor.scheduleAtFixedRate(this::report, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void report() {
+        System.out.println(summary());
+    }
+
+    synchronized String summary() {
+        long now = System.nanoTime();
+        long generated = metrics.getGenerated();
+        long published = metrics.getPublished();
+        double seconds = Math.max(1e-9, (now - lastNanos) / 1e9);
+        String line = String.format("Metrics generated %d (%.1f/s), serialized %d, published %d (%.1f/s), failed %d %s, retried %d, lost %d, "
+                        + "generate %s, serialize %s, publish %s",
+                generated, (generated - lastGenerated) / seconds, metrics.getSerialized(),
+                published, (published - lastPublished) / seconds, metrics.getFailed(), metrics.getFailures(),
+                metrics.getRetried(), metrics.getLost(),
+                percentiles(metrics.getGenerateLatency()), percentiles(metrics.getSerializeLatency()),
+                percentiles(metrics.getPublishLatency()));
+        for (Map.Entry<String, Metrics> entry : metrics.getDestinations().entrySet()) {
+            Metrics destination = entry.getValue();
+            line += String.format("%n  %s published %d, failed %d, lost %d, publish %s", entry.getKey(), destination.getPublished(),
+                    destination.getFailed(), destination.getLost(), percentiles(destination.getPublishLatency()));
+        }
+        Map<String, Metrics.QueueGauge> queues = metrics.getQueues();
+        if(!queues.isEmpty()){
+            line += String.format("%n  pipeline shed %d", metrics.getShed());
+            for (Map.Entry<String, Metrics.QueueGauge> entry : queues.entrySet()) {
+                Metrics.QueueGauge queue = entry.getValue();
+                line += String.format(", %s queue %d of %d full %d", entry.getKey(), queue.getDepth(), queue.getCapacity(), queue.getFull());
+            }
+            line += ", bottleneck is the " + metrics.getBottleneck() + " stage";
+        }
+        lastNanos = now;
+        lastGenerated = generated;
+        lastPublished = published;
+        return line;
+    }
+
+    private static String percentiles(LatencyHistogram histogram) {
+        return String.format("p50 %.1f p99 %.1f p99.9 %.1f max %.1f us",
+                histogram.getValueAtQuantile(0.5) / 1e3, histogram.getValueAtQuantile(0.99) / 1e3,
+                histogram.getValueAtQuantile(0.999) / 1e3, histogram.getMax() / 1e3);
+    }
+
+    /**
+     * Stops the schedule and prints the last line.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        report();
+    }
+}
@@ -16,12 +16,20 @@
 
 package ping.coder.dba.datamaker.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.nio.charset.StandardCharsets;
+
 /**
  * @Description @TODO
  * @Author Ping
  * @Date 2024/5/21 23:10
  **/
 public class DeviceModel {
+    /**
+     * Position of the model in its model list, so per-model tables are arrays instead of maps.
+     */
+    private int index;
     private String deviceModelId;
     private String deviceType;
     private String version;
@@ -33,6 +41,20 @@ public class DeviceModel {
      * Json type
      */
     private String sensorMetadata;
+    /**
+     * UTF-8 bytes of the json fields, encoded once so the encoders can append them verbatim.
+     */
+    private byte[] deviceDataUtf8;
+    private byte[] sensorMetadataUtf8;
+
+    @JsonIgnore
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
 
     public String getDeviceModelId() {
         return deviceModelId;
@@ -64,6 +86,15 @@ public class DeviceModel {
 
     public void setDeviceData(String deviceData) {
         this.deviceData = deviceData;
+        this.deviceDataUtf8 = deviceData == null ? null : deviceData.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The returned array is shared, it must not be modified.
+     */
+    @JsonIgnore
+    public byte[] getDeviceDataUtf8() {
+        return deviceDataUtf8;
     }
 
     public String getSensorMetadata() {
@@ -72,5 +103,14 @@ public class DeviceModel {
 
     public void setSensorMetadata(String sensorMetadata) {
         this.sensorMetadata = sensorMetadata;
+        this.sensorMetadataUtf8 = sensorMetadata == null ? null : sensorMetadata.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The returned array is shared, it must not be modified.
+     */
+    @JsonIgnore
+    public byte[] getSensorMetadataUtf8() {
+        return sensorMetadataUtf8;
     }
 }
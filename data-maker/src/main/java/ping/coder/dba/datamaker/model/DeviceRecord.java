@@ -16,6 +16,7 @@
 
 package ping.coder.dba.datamaker.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonRawValue;
 
 import java.util.Date;
@@ -47,6 +48,11 @@ public class DeviceRecord {
      */
     @JsonRawValue
     private String sensorMetadata;
+    /**
+     * The model the record was made from, it isn't serialized.
+     */
+    @JsonIgnore
+    private transient DeviceModel model;
 
     public String getDeviceId() {
         return deviceId;
@@ -112,6 +118,31 @@ public class DeviceRecord {
         this.sensorMetadata = sensorMetadata;
     }
 
+    public DeviceModel getModel() {
+        return model;
+    }
+
+    public void setModel(DeviceModel model) {
+        this.model = model;
+    }
+
+    /**
+     * A copy of the record with another retry count, the record itself may still be read by other threads.
+     */
+    public DeviceRecord withRetry(int retry) {
+        DeviceRecord copy = new DeviceRecord();
+        copy.deviceId = deviceId;
+        copy.deviceType = deviceType;
+        copy.version = version;
+        copy.timestamp = timestamp;
+        copy.retry = retry;
+        copy.deviceData = deviceData;
+        copy.sensorData = sensorData;
+        copy.sensorMetadata = sensorMetadata;
+        copy.model = model;
+        return copy;
+    }
+
     @Override
     public String toString() {
         return "DeviceRecord{" +
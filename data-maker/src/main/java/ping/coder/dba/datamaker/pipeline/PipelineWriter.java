@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pipeline;
+
+import ping.coder.dba.datamaker.Writer;
+import ping.coder.dba.datamaker.codec.MeteredRecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+import ping.coder.dba.datamaker.codec.SerializedRecord;
+import ping.coder.dba.datamaker.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description Splits writing into stages connected by bounded ring buffers: the generating threads
+ * only hand records over, serialize threads encode them and write threads pass the bytes to the sink it
+ * wraps. A stalled sink fills the write queue, then the serialize queue, and then either blocks the
+ * generating threads or sheds their records, instead of stalling generation record by record.
+ * Every stage has its own threads and wait strategy, and its queue is registered in the metrics, so the
+ * depths and the bottleneck are reported while the pipeline runs. Records of different threads may reach
+ * the sink in any order.
+ * @Author Ping
+ * @Date 2026/10/18 17:20
+ **/
+public class PipelineWriter implements Writer {
+
+    /**
+     * Depth meters of the queue in front of a stage. The depth is sampled by every producer before it
+     * offers, and a queue found full means the stage behind it is the slowest one. The threads of the
+     * stage wait on an empty queue and the producers on a full one with the wait strategy of the stage.
+     */
+    public static final class Stage<E> implements Metrics.QueueGauge {
+
+        private final String name;
+        private final RingBuffer<E> queue;
+        private final WaitStrategy waitStrategy;
+        private final LongAdder offers = new LongAdder();
+        private final LongAdder depthSum = new LongAdder();
+        private final LongAdder full = new LongAdder();
+        private final AtomicLong maxDepth = new AtomicLong();
+
+        private Stage(String name, int capacity, WaitStrategy waitStrategy) {
+            this.name = name;
+            this.queue = new RingBuffer<>(capacity);
+            this.waitStrategy = waitStrategy;
+        }
+
+        private boolean offer(E element, boolean shedLoad) {
+            long depth = queue.size();
+            offers.increment();
+            depthSum.add(depth);
+            long max;
+            while (depth > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, depth)) {
+            }
+            if(queue.offer(element))
+                return true;
+            full.increment();
+            if(shedLoad)
+                return false;
+            int times = 0;
+            while (!queue.offer(element))
+                waitStrategy.idle(++times);
+            return true;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public WaitStrategy getWaitStrategy() {
+            return waitStrategy;
+        }
+
+        @Override
+        public int getDepth() {
+            return queue.size();
+        }
+
+        @Override
+        public int getCapacity() {
+            return queue.capacity();
+        }
+
+        public long getMaxDepth() {
+            return maxDepth.get();
+        }
+
+        public double getAverageDepth() {
+            long count = offers.sum();
+            return count == 0 ? 0 : (double) depthSum.sum() / count;
+        }
+
+        /**
+         * Number of offers which found the queue full.
+         */
+        @Override
+        public long getFull() {
+            return full.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s queue %.1f avg, %d max of %d, full %d times, %s wait",
+                    name, getAverageDepth(), getMaxDepth(), getCapacity(), getFull(), waitStrategy.name().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    private final Writer downstream;
+    private final MeteredRecordSerializer serializer;
+    private final int serializeThreadNumber;
+    private final int writeThreadNumber;
+    private final boolean shedLoad;
+    private final Metrics metrics;
+    private final Stage<Object> serializeStage;
+    private final Stage<SerializedRecord> writeStage;
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder done = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running;
+    private volatile Throwable failure;
+
+    /**
+     * Waits the same way in every stage and records into the global metrics.
+     */
+    public PipelineWriter(Writer downstream, RecordSerializer serializer, int serializeThreadNumber, int writeThreadNumber,
+                          int capacity, WaitStrategy waitStrategy, boolean shedLoad) {
+        this(downstream, serializer, serializeThreadNumber, writeThreadNumber, capacity, waitStrategy, waitStrategy, shedLoad, Metrics.global());
+    }
+
+    /**
+     * @param downstream sink of the write stage, its serializer must have the same format.
+     * @param capacity capacity of every queue, rounded up to a power of two.
+     * @param serializeWaitStrategy how the serialize threads and the generating threads wait on the serialize queue.
+     * @param writeWaitStrategy how the write threads, the serialize threads and a flush wait on the write queue.
+     * @param shedLoad drops the records which find the serialize queue full instead of waiting.
+     */
+    public PipelineWriter(Writer downstream, RecordSerializer serializer, int serializeThreadNumber, int writeThreadNumber,
+                          int capacity, WaitStrategy serializeWaitStrategy, WaitStrategy writeWaitStrategy, boolean shedLoad,
+                          Metrics metrics) {
+        if(serializeThreadNumber <= 0)
+            throw new IllegalArgumentException("serialize thread number was "+serializeThreadNumber);
+        if(writeThreadNumber <= 0)
+            throw new IllegalArgumentException("write thread number was "+writeThreadNumber);
+        this.downstream = downstream;
+        this.serializer = RecordSerializers.metered(serializer);
+        this.serializeThreadNumber = serializeThreadNumber;
+        this.writeThreadNumber = writeThreadNumber;
+        this.shedLoad = shedLoad;
+        this.metrics = metrics;
+        this.serializeStage = new Stage<>("serialize", capacity, serializeWaitStrategy);
+        this.writeStage = new Stage<>("write", capacity, writeWaitStrategy);
+    }
+
+    @Override
+    public void open() throws IOException {
+        if(running)
+            throw new IllegalStateException("Pipeline is already opened.");
+        downstream.open();
+        metrics.registerQueue(serializeStage.getName(), serializeStage);
+        metrics.registerQueue(writeStage.getName(), writeStage);
+        running = true;
+        for (int i = 0; i < serializeThreadNumber; i++)
+            threads.add(new Thread(this::serializeLoop, "data-maker-serialize-" + i));
+        for (int i = 0; i < writeThreadNumber; i++)
+            threads.add(new Thread(this::writeLoop, "data-maker-write-" + i));
+        for (Thread thread : threads)
+            thread.start();
+    }
+
+    @Override
+    public void write(Object record) {
+        checkFailure();
+        if(!running)
+            throw new IllegalStateException("Pipeline isn't opened.");
+        accepted.increment();
+        if(!serializeStage.offer(record, shedLoad)){
+            accepted.decrement();
+            shed.increment();
+            metrics.recordShed();
+        }
+    }
+
+    /**
+     * Waits until every record accepted so far has been written to the sink, then flushes the sink.
+     */
+    @Override
+    public void flush() {
+        drain();
+        downstream.flush();
+        checkFailure();
+    }
+
+    @Override
+    public void close() {
+        if(!running)
+            return;
+        try {
+            drain();
+        } finally {
+            running = false;
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            threads.clear();
+            downstream.close();
+            System.out.println(this);
+            System.out.println(serializer);
+        }
+    }
+
+    private void drain() {
+        long target = accepted.sum();
+        int times = 0;
+        while (done.sum() < target)
+            writeStage.waitStrategy.idle(++times);
+    }
+
+    private void serializeLoop() {
+        int times = 0;
+        while (true){
+            Object record = serializeStage.queue.poll();
+            if(record == null){
+                if(!running)
+                    return;
+                serializeStage.waitStrategy.idle(++times);
+                continue;
+            }
+            times = 0;
+            SerializedRecord serialized;
+            try {
+                serialized = new SerializedRecord(record, serializer.getFormat(), serializer.serialize(record));
+            } catch (Throwable e) {
+                fail(new IllegalArgumentException("Record can't be serialized as "+serializer.getFormat()+": "+record, e));
+                done.increment();
+                continue;
+            }
+            writeStage.offer(serialized, false);
+        }
+    }
+
+    private void writeLoop() {
+        int times = 0;
+        while (true){
+            SerializedRecord record = writeStage.queue.poll();
+            if(record == null){
+                if(!running)
+                    return;
+                writeStage.waitStrategy.idle(++times);
+                continue;
+            }
+            times = 0;
+            try {
+                downstream.write(record);
+            } catch (Throwable e) {
+                fail(e);
+            }
+            done.increment();
+        }
+    }
+
+    private void fail(Throwable e) {
+        if(failure == null)
+            failure = e;
+    }
+
+    private void checkFailure() {
+        Throwable failure = this.failure;
+        if(failure != null)
+            throw new IllegalStateException("Pipeline stage failed.", failure);
+    }
+
+    /**
+     * The stage behind the last queue which was ever found full, or the generation when no queue was.
+     * A slow stage fills the queue in front of it first and the queues before that only fill as a
+     * consequence, so the full queue closest to the sink points at the slowest stage.
+     */
+    public String getBottleneck() {
+        if(writeStage.getFull() > 0)
+            return writeStage.getName();
+        if(serializeStage.getFull() > 0)
+            return serializeStage.getName();
+        return "generate";
+    }
+
+    public Stage<Object> getSerializeStage() {
+        return serializeStage;
+    }
+
+    public Stage<SerializedRecord> getWriteStage() {
+        return writeStage;
+    }
+
+    public MeteredRecordSerializer getSerializer() {
+        return serializer;
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getShed() {
+        return shed.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pipeline accepted %d records, shed %d, %s, %s, bottleneck is the %s stage",
+                getAccepted(), getShed(), serializeStage, writeStage, getBottleneck());
+    }
+}
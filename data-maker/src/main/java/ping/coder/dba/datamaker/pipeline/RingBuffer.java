@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * @Description Bounded lock-free queue for many producers and many consumers. Every slot carries a
+ * sequence number, a producer claims a slot by a CAS on the enqueue position once the slot's sequence
+ * says it's free, and a consumer does the same on the dequeue position once the sequence says it's
+ * filled. Neither side ever waits for the other, a full or empty queue is reported to the caller.
+ * @Author Ping
+ * @Date 2026/10/18 17:10
+ **/
+public final class RingBuffer<E> {
+
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    private final AtomicLongArray sequences;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two.
+     */
+    public RingBuffer(int capacity) {
+        if(capacity <= 0 || capacity > 1 << 30)
+            throw new IllegalArgumentException("capacity was "+capacity);
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity)
+            size <<= 1;
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++)
+            sequences.set(i, i);
+    }
+
+    /**
+     * @return false if the queue is full.
+     */
+    public boolean offer(E element) {
+        if(element == null)
+            throw new NullPointerException();
+        long position = enqueuePosition.get();
+        while (true){
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if(difference == 0){
+                if(enqueuePosition.compareAndSet(position, position + 1)){
+                    elements.lazySet(index, element);
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = enqueuePosition.get();
+            } else if(difference < 0){
+                return false;
+            } else {
+                position = enqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * @return null if the queue is empty.
+     */
+    public E poll() {
+        long position = dequeuePosition.get();
+        while (true){
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if(difference == 0){
+                if(dequeuePosition.compareAndSet(position, position + 1)){
+                    E element = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.lazySet(index, position + mask + 1);
+                    return element;
+                }
+                position = dequeuePosition.get();
+            } else if(difference < 0){
+                return null;
+            } else {
+                position = dequeuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Number of elements at the moment, it may be stale as soon as it's returned.
+     */
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pipeline;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Description What a stage thread does while its input queue is empty, or a producer while the output
+ * queue is full. Spinning has the lowest handoff latency but burns a core per waiting thread, parking
+ * frees the core but wakes up late, yielding is in between.
+ * @Author Ping
+ * @Date 2026/10/18 17:12
+ **/
+public enum WaitStrategy {
+
+    SPIN {
+        @Override
+        public void idle(int times) {
+        }
+    },
+
+    YIELD {
+        @Override
+        public void idle(int times) {
+            Thread.yield();
+        }
+    },
+
+    /**
+     * Parks a little longer every time up to 100 microseconds, so a busy queue is picked up again
+     * quickly and an idle one costs almost nothing.
+     */
+    PARK {
+        @Override
+        public void idle(int times) {
+            LockSupport.parkNanos(Math.min(times, 100) * 1_000L);
+        }
+    };
+
+    public static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("spin", "yield", "park"));
+
+    /**
+     * @param times number of times in a row the caller found nothing to do, starting from 1.
+     */
+    public abstract void idle(int times);
+
+    public static WaitStrategy of(String name) {
+        if(name == null || !NAMES.contains(name))
+            throw new IllegalArgumentException(String.format("Error wait strategy is: %s, should be one of %s", name, NAMES));
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
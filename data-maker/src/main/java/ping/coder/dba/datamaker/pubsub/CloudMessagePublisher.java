@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.pubsub.v1.Publisher;
+import com.google.pubsub.v1.PubsubMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description Adapts the Google Cloud {@link Publisher} to {@link MessagePublisher}.
+ * @Author Ping
+ * @Date 2026/10/18 10:08
+ **/
+public class CloudMessagePublisher implements MessagePublisher {
+
+    private final Publisher publisher;
+
+    public CloudMessagePublisher(Publisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public ApiFuture<String> publish(PubsubMessage message) {
+        return publisher.publish(message);
+    }
+
+    @Override
+    public void publishAllOutstanding() {
+        publisher.publishAllOutstanding();
+    }
+
+    @Override
+    public void resumePublish(String orderingKey) {
+        publisher.resumePublish(orderingKey);
+    }
+
+    @Override
+    public void shutdown() {
+        publisher.shutdown();
+    }
+
+    @Override
+    public boolean awaitTermination(long duration, TimeUnit unit) throws InterruptedException {
+        return publisher.awaitTermination(duration, unit);
+    }
+}
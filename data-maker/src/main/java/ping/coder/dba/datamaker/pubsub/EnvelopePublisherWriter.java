@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.pubsub.v1.PubsubMessage;
+import ping.coder.dba.datamaker.codec.RecordEnvelope;
+import ping.coder.dba.datamaker.codec.RecordSerializer;
+import ping.coder.dba.datamaker.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * @Description Packs the written records into envelopes of up to a number of records or bytes, and publishes
+ * every envelope as one message, compressed by the codec of the writer. A record is serialized on the
+ * writing thread, only appending it to the open envelope is serialized between the threads. The envelope
+ * still open is published by {@link #flush()} and {@link #close()}. Published and lost are counted in
+ * records, retried in messages.
+ * @Author Ping
+ * @Date 2026/10/18 23:30
+ **/
+public class EnvelopePublisherWriter extends PublisherWriter {
+
+    private final int maxRecords;
+    private final int maxBytes;
+    private final String codec;
+    private final String format;
+    private final Object lock = new Object();
+    private RecordEnvelope envelope;
+
+    /**
+     * @param maxRecords records of a full envelope.
+     * @param maxBytes most bytes of the framed records of an envelope before compression, the open envelope
+     *                 is published before a record which would take it over. A record bigger than this goes
+     *                 alone in its envelope.
+     * @param codec one of {@link RecordEnvelope#CODECS}.
+     */
+    public EnvelopePublisherWriter(String projectId, String topicId, MessagePublisher.Factory publisherFactory, RecordSerializer serializer,
+                                   Metrics metrics, RetryPolicy retryPolicy, int maxRecords, int maxBytes, String codec) {
+        super(projectId, topicId, publisherFactory, serializer, metrics, retryPolicy);
+        if(maxRecords <= 0)
+            throw new IllegalArgumentException("max records was "+maxRecords);
+        if(maxBytes <= 0)
+            throw new IllegalArgumentException("max bytes was "+maxBytes);
+        if(!RecordEnvelope.CODECS.contains(codec))
+            throw new IllegalArgumentException(String.format("Error envelope codec is: %s, should be one of %s", codec, RecordEnvelope.CODECS));
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.codec = codec;
+        this.format = serializer.getFormat();
+        this.envelope = newEnvelope();
+    }
+
+    private RecordEnvelope newEnvelope() {
+        return new RecordEnvelope(Math.min(maxBytes, 1 << 16) + 1024);
+    }
+
+    @Override
+    public void write(Object record) {
+        byte[] data;
+        try {
+            data = getSerializer().serialize(record);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Record can't be serialized as "+format+": "+record, e);
+        }
+        RecordEnvelope sealed = null;
+        RecordEnvelope full = null;
+        synchronized (lock) {
+            if(envelope.getCount() > 0 && (long) envelope.getSize() + 5 + data.length > maxBytes){
+                sealed = envelope;
+                envelope = newEnvelope();
+            }
+            envelope.add(data);
+            if(envelope.getCount() >= maxRecords || envelope.getSize() >= maxBytes){
+                full = envelope;
+                envelope = newEnvelope();
+            }
+        }
+        if(sealed != null)
+            publish(sealed);
+        if(full != null)
+            publish(full);
+    }
+
+    private void publish(RecordEnvelope envelope) {
+        byte[] packed;
+        try {
+            packed = envelope.pack(codec);
+        } catch (IOException e) {
+            throw new IllegalStateException("Envelope of "+envelope.getCount()+" records can't be packed by "+codec, e);
+        }
+        super.write(new Packed(packed, envelope.getCount()));
+    }
+
+    /**
+     * Publishes the envelope still open.
+     */
+    private void seal() {
+        RecordEnvelope open;
+        synchronized (lock) {
+            if(envelope.getCount() == 0)
+                return;
+            open = envelope;
+            envelope = newEnvelope();
+        }
+        publish(open);
+    }
+
+    @Override
+    protected PubsubMessage toMessage(Object record) {
+        Packed packed = (Packed) record;
+        return PubsubMessage.newBuilder()
+                .setData(UnsafeByteOperations.unsafeWrap(packed.data))
+                .putAttributes(RecordEnvelope.ATTRIBUTE_COUNT, Integer.toString(packed.count))
+                .putAttributes(RecordEnvelope.ATTRIBUTE_CODEC, codec)
+                .putAttributes(RecordEnvelope.ATTRIBUTE_FORMAT, format)
+                .build();
+    }
+
+    @Override
+    protected int recordCount(Object record) {
+        return ((Packed) record).count;
+    }
+
+    @Override
+    public void flush() {
+        seal();
+        super.flush();
+    }
+
+    @Override
+    public void close() {
+        seal();
+        super.close();
+    }
+
+    /**
+     * Reads the serialized records of a message published by an envelope writer.
+     */
+    public static List<byte[]> decode(PubsubMessage message) throws IOException {
+        return RecordEnvelope.unpack(message.getData().toByteArray(), message.getAttributesMap());
+    }
+
+    /**
+     * A packed envelope, it's published again as it is when it's retried.
+     */
+    private static final class Packed {
+        private final byte[] data;
+        private final int count;
+
+        private Packed(byte[] data, int count) {
+            this.data = data;
+            this.count = count;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+import com.google.pubsub.v1.PubsubMessage;
+import io.grpc.Status;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToLongFunction;
+
+/**
+ * @Description In-memory stand-in of a Pub/Sub publisher, to measure the data maker without the network.
+ * Every message is acknowledged after a fixed simulated latency by a completer thread, a fraction of them
+ * fails with a retryable UNAVAILABLE error, and messages beyond the capacity of outstanding messages are
+ * rejected at once with RESOURCE_EXHAUSTED, like a throttled topic. With no latency messages are
+ * acknowledged on the publishing thread. Messages with an ordering key behave like the ordering of the
+ * cloud publisher: once one of them fails, the key is paused and its messages are cancelled until
+ * {@link #resumePublish(String)}. The order of the acknowledged messages of every key can be checked.
+ * @Author Ping
+ * @Date 2026/10/18 16:05
+ **/
+public class LocalPublisher implements MessagePublisher {
+
+    private final long latencyNanos;
+    private final double errorRate;
+    private final int capacity;
+    private final AtomicLong messageId = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder outOfOrder = new LongAdder();
+    private final Set<String> pausedKeys = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> lastSequences = new ConcurrentHashMap<>();
+    private volatile ToLongFunction<PubsubMessage> sequence;
+    private final Queue<Pending> pendings = new ConcurrentLinkedQueue<>();
+    private final Thread completer;
+    private volatile boolean shutdown;
+
+    /**
+     * @param latencyNanos time from publish to acknowledgement.
+     * @param errorRate fraction of the messages failing, from 0 to 1.
+     * @param capacity max outstanding messages, if it's zero there is no limit.
+     */
+    public LocalPublisher(long latencyNanos, double errorRate, int capacity) {
+        if(latencyNanos < 0)
+            throw new IllegalArgumentException("latency was "+latencyNanos);
+        if(!(errorRate >= 0 && errorRate <= 1))
+            throw new IllegalArgumentException("error rate was "+errorRate);
+        if(capacity < 0)
+            throw new IllegalArgumentException("capacity was "+capacity);
+        this.latencyNanos = latencyNanos;
+        this.errorRate = errorRate;
+        this.capacity = capacity;
+        if(latencyNanos > 0){
+            completer = new Thread(this::complete, "local-publisher");
+            completer.setDaemon(true);
+            completer.start();
+        } else {
+            completer = null;
+        }
+    }
+
+    public static MessagePublisher.Factory factory(long latencyNanos, double errorRate, int capacity) {
+        return (projectId, topicId) -> new LocalPublisher(latencyNanos, errorRate, capacity);
+    }
+
+    @Override
+    public ApiFuture<String> publish(PubsubMessage message) {
+        if(shutdown)
+            throw new IllegalStateException("Cannot publish on a shut-down publisher.");
+        SettableApiFuture<String> future = SettableApiFuture.create();
+        if(!message.getOrderingKey().isEmpty() && pausedKeys.contains(message.getOrderingKey())){
+            cancel(future);
+            return future;
+        }
+        if(capacity > 0 && outstanding.incrementAndGet() > capacity){
+            outstanding.decrementAndGet();
+            rejected.increment();
+            future.setException(ApiExceptionFactory.createException("Local publisher is over capacity", null,
+                    GrpcStatusCode.of(Status.Code.RESOURCE_EXHAUSTED), true));
+            return future;
+        }
+        bytes.add(message.getSerializedSize());
+        boolean fail = errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+        if(completer == null)
+            settle(message, future, fail);
+        else
+            pendings.add(new Pending(message, future, fail, System.nanoTime() + latencyNanos));
+        return future;
+    }
+
+    /**
+     * The latency is the same for every message, so the pending queue is already ordered by due time.
+     */
+    private void complete() {
+        while (!shutdown || !pendings.isEmpty()){
+            Pending pending = pendings.peek();
+            if(pending == null){
+                LockSupport.parkNanos(Math.min(latencyNanos, 100_000L));
+                continue;
+            }
+            long remaining = pending.due - System.nanoTime();
+            if(remaining > 0){
+                LockSupport.parkNanos(remaining);
+                continue;
+            }
+            pendings.poll();
+            settle(pending.message, pending.future, pending.fail);
+        }
+    }
+
+    private void settle(PubsubMessage message, SettableApiFuture<String> future, boolean fail) {
+        if(capacity > 0)
+            outstanding.decrementAndGet();
+        String orderingKey = message.getOrderingKey();
+        if(!orderingKey.isEmpty() && pausedKeys.contains(orderingKey)){
+            cancel(future);
+            return;
+        }
+        if(fail){
+            if(!orderingKey.isEmpty())
+                pausedKeys.add(orderingKey);
+            failed.increment();
+            future.setException(ApiExceptionFactory.createException("Local publisher failed the message", null,
+                    GrpcStatusCode.of(Status.Code.UNAVAILABLE), true));
+        } else {
+            ToLongFunction<PubsubMessage> sequence = this.sequence;
+            if(sequence != null && !orderingKey.isEmpty()){
+                long current = sequence.applyAsLong(message);
+                Long last = lastSequences.put(orderingKey, current);
+                if(last != null && last >= current)
+                    outOfOrder.increment();
+            }
+            published.increment();
+            future.set(Long.toString(messageId.incrementAndGet()));
+        }
+    }
+
+    /**
+     * Fails a message of a paused key the way the cloud publisher does.
+     */
+    private void cancel(SettableApiFuture<String> future) {
+        cancelled.increment();
+        future.setException(new CancellationException("Execution cancelled because executing previous runnable failed."));
+    }
+
+    /**
+     * Checks that the acknowledged messages of every ordering key come in the order of their sequence.
+     */
+    public LocalPublisher checkOrder(ToLongFunction<PubsubMessage> sequence) {
+        this.sequence = sequence;
+        return this;
+    }
+
+    @Override
+    public void resumePublish(String orderingKey) {
+        pausedKeys.remove(orderingKey);
+    }
+
+    @Override
+    public void publishAllOutstanding() {
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    @Override
+    public boolean awaitTermination(long duration, TimeUnit unit) throws InterruptedException {
+        if(completer != null)
+            completer.join(unit.toMillis(duration));
+        System.out.println(this);
+        return completer == null || !completer.isAlive();
+    }
+
+    public long getPublished() {
+        return published.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Number of messages cancelled because their ordering key was paused.
+     */
+    public long getCancelled() {
+        return cancelled.sum();
+    }
+
+    /**
+     * Number of acknowledged messages whose sequence wasn't after the one before of their ordering key.
+     */
+    public long getOutOfOrder() {
+        return outOfOrder.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Local publisher acknowledged %d messages (%d bytes), failed %d, rejected %d, cancelled %d, out of order %d",
+                getPublished(), getBytes(), getFailed(), getRejected(), getCancelled(), getOutOfOrder());
+    }
+
+    private static class Pending {
+        private final PubsubMessage message;
+        private final SettableApiFuture<String> future;
+        private final boolean fail;
+        private final long due;
+
+        private Pending(PubsubMessage message, SettableApiFuture<String> future, boolean fail, long due) {
+            this.message = message;
+            this.future = future;
+            this.fail = fail;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import com.google.cloud.pubsub.v1.PublisherInterface;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description The part of a Pub/Sub publisher that a writer session needs, so the session can
+ * run against the cloud publisher or a local stand-in.
+ * @Author Ping
+ * @Date 2026/10/18 10:05
+ **/
+public interface MessagePublisher extends PublisherInterface {
+
+    /**
+     * Send every batched message now, without waiting for the batching thresholds.
+     */
+    void publishAllOutstanding();
+
+    /**
+     * Lets the messages of an ordering key be published again after one of them failed, until then
+     * every message of the key fails at once. A publisher without ordering has nothing to resume.
+     */
+    default void resumePublish(String orderingKey) {
+    }
+
+    void shutdown();
+
+    boolean awaitTermination(long duration, TimeUnit unit) throws InterruptedException;
+
+    interface Factory {
+        MessagePublisher create(String projectId, String topicId) throws IOException;
+    }
+}
@@ -0,0 +1,517 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.ApiException;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.pubsub.v1.PubsubMessage;
+import ping.coder.dba.datamaker.Writer;
+import ping.coder.dba.datamaker.codec.MeteredRecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+import ping.coder.dba.datamaker.codec.SerializedRecord;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description Publishes every device record with its device id as ordering key, so the records of a device
+ * are delivered in the order they were written. One ordering key is bounded to the throughput of one
+ * publisher, so the devices are sharded by the hash of their id over several publishers of the topic.
+ * <p>
+ * Once a record of a device fails, its publisher cancels the records of the device after it and pauses
+ * the device. Until every record of the device in flight has come back, the failed and cancelled records
+ * and the new records of the device are held; then after a backoff the device is resumed and the held
+ * records are published again in the order they were written. A record out of retry attempts is lost,
+ * the records after it keep their order. The held records of all the devices are bounded by the capacity
+ * of the retry queue, a record beyond it is lost, so a device which keeps failing can't hold more.
+ * <p>
+ * The state of a device is guarded by its key and is only changed briefly, the publish call is made
+ * outside of it: with blocking flow control a publish may wait for acknowledgements, whose callbacks need
+ * the state. The publish calls of a device are put in order by a second lock of the key, which the
+ * callbacks never take.
+ * @Author Ping
+ * @Date 2026/10/18 22:30
+ **/
+public class OrderedPublisherWriter implements Writer {
+
+    private static final Comparator<Entry> BY_SEQUENCE = Comparator.comparingLong(entry -> entry.sequence);
+
+    private final String projectId;
+    private final String topicId;
+    private final MessagePublisher.Factory publisherFactory;
+    private final MeteredRecordSerializer serializer;
+    private final Metrics metrics;
+    private final RetryPolicy retryPolicy;
+    private final int shards;
+    /**
+     * State of the devices with records in flight or held, a device without any is removed.
+     */
+    private final ConcurrentHashMap<String, Key> keys = new ConcurrentHashMap<>();
+    private final DelayQueue<Resume> resumes = new DelayQueue<>();
+    private final AtomicInteger heldSize = new AtomicInteger();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private volatile MessagePublisher[] publishers;
+    private volatile Thread resumeThread;
+
+    /**
+     * @param shards number of publishers the devices are sharded over.
+     */
+    public OrderedPublisherWriter(String projectId, String topicId, MessagePublisher.Factory publisherFactory, RecordSerializer serializer,
+                                  Metrics metrics, RetryPolicy retryPolicy, int shards) {
+        if(shards <= 0)
+            throw new IllegalArgumentException("shards was "+shards);
+        this.projectId = projectId;
+        this.topicId = topicId;
+        this.publisherFactory = publisherFactory;
+        this.serializer = RecordSerializers.metered(serializer, metrics);
+        this.metrics = metrics;
+        this.retryPolicy = retryPolicy;
+        this.shards = shards;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if(publishers!=null)
+            throw new IllegalStateException("Publishers are already opened.");
+        MessagePublisher[] publishers = new MessagePublisher[shards];
+        for (int i = 0; i < shards; i++) {
+            publishers[i] = publisherFactory.create(projectId, topicId);
+        }
+        this.publishers = publishers;
+        Thread thread = new Thread(this::resumeLoop, "data-maker-resume-" + topicId);
+        thread.setDaemon(true);
+        resumeThread = thread;
+        thread.start();
+    }
+
+    @Override
+    public void write(Object record) {
+        MessagePublisher[] publishers = this.publishers;
+        if(publishers==null)
+            throw new IllegalStateException("Publishers aren't initialized.");
+        String orderingKey = orderingKey(record);
+        byte[] data = serialize(record);
+        outstanding.incrementAndGet();
+        while (true){
+            Key key = keys.computeIfAbsent(orderingKey, name -> new Key(name, publishers[shard(name)]));
+            synchronized (key.publishLock){
+                Entry entry;
+                synchronized (key){
+                    if(key.removed)
+                        continue;
+                    entry = new Entry(record, key.nextSequence++, 0);
+                    if(key.paused){
+                        if(heldSize.incrementAndGet() > retryPolicy.getQueueCapacity()){
+                            heldSize.decrementAndGet();
+                            lose();
+                        } else {
+                            key.held.add(entry.counted());
+                        }
+                        return;
+                    }
+                    key.inFlight++;
+                }
+                try {
+                    publish(key, entry, data);
+                } catch (RuntimeException e) {
+                    outstanding.decrementAndGet();
+                    throw e;
+                }
+                return;
+            }
+        }
+    }
+
+    private static String orderingKey(Object record) {
+        Object original = record instanceof SerializedRecord ? ((SerializedRecord) record).getRecord() : record;
+        if(!(original instanceof DeviceRecord))
+            throw new IllegalArgumentException("Only device records have an ordering key, the record was "+original.getClass().getName());
+        return ((DeviceRecord) original).getDeviceId();
+    }
+
+    private int shard(String orderingKey) {
+        int hash = orderingKey.hashCode() * 0x9E3779B9;
+        return (int) (((hash ^ (hash >>> 16)) & 0xFFFFFFFFL) % shards);
+    }
+
+    private byte[] serialize(Object payload) {
+        try {
+            return serializer.serialize(payload);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Record can't be serialized as "+serializer.getFormat()+": "+payload.toString(), e);
+        }
+    }
+
+    /**
+     * Called with the publish lock of the key but not the key itself, after the entry was counted in flight.
+     * If the record can't be published, it's no longer in flight when the exception is thrown.
+     * @param data the serialized record, or null to serialize it for its attempt.
+     */
+    private void publish(Key key, Entry entry, byte[] data) {
+        ApiFuture<String> future;
+        long start = System.nanoTime();
+        try {
+            if(data == null)
+                data = serialize(entry.attempt == 0 ? entry.record : PublisherWriter.retryPayload(entry.record, entry.attempt));
+            future = key.publisher.publish(PubsubMessage.newBuilder()
+                    .setData(UnsafeByteOperations.unsafeWrap(data))
+                    .setOrderingKey(key.name)
+                    .build());
+        } catch (RuntimeException e) {
+            synchronized (key){
+                key.inFlight--;
+                settled(key);
+            }
+            throw e;
+        }
+        ApiFutures.addCallback(future, new PublishCallback(key, entry, start), MoreExecutors.directExecutor());
+    }
+
+    /**
+     * Counts the outcome of one message. A failed record is held by its key, it's never published again by
+     * the callback thread itself.
+     */
+    private final class PublishCallback implements ApiFutureCallback<String> {
+        private final Key key;
+        private final Entry entry;
+        private final long start;
+
+        private PublishCallback(Key key, Entry entry, long start) {
+            this.key = key;
+            this.entry = entry;
+            this.start = start;
+        }
+
+        @Override
+        public void onFailure(Throwable throwable) {
+            synchronized (key){
+                key.inFlight--;
+                key.paused = true;
+                if(throwable instanceof CancellationException){
+                    hold(entry);
+                } else {
+                    boolean retryable = throwable instanceof ApiException && ((ApiException) throwable).isRetryable();
+                    metrics.recordFailed(throwable instanceof ApiException
+                            ? ((ApiException) throwable).getStatusCode().getCode().toString()
+                            : throwable.getClass().getSimpleName());
+                    key.failures++;
+                    if(retryable && entry.attempt < retryPolicy.getMaxAttempts()){
+                        if(hold(new Entry(entry.record, entry.sequence, entry.attempt + 1))){
+                            retried.increment();
+                            metrics.recordRetried();
+                        }
+                    } else {
+                        lose();
+                    }
+                }
+                settled(key);
+            }
+        }
+
+        /**
+         * Holds a failed or cancelled record unless the records waiting are already at the capacity of the retry queue.
+         */
+        private boolean hold(Entry entry) {
+            if(heldSize.incrementAndGet() > retryPolicy.getQueueCapacity()){
+                heldSize.decrementAndGet();
+                lose();
+                return false;
+            }
+            key.held.add(entry.counted());
+            return true;
+        }
+
+        @Override
+        public void onSuccess(String messageId) {
+            metrics.recordPublished(System.nanoTime() - start);
+            outstanding.decrementAndGet();
+            synchronized (key){
+                key.inFlight--;
+                key.failures = 0;
+                settled(key);
+            }
+        }
+    }
+
+    /**
+     * Called with the lock of the key when one of its records came back: a paused key is resumed once none
+     * of its records is in flight, a key without any record in flight or held is removed.
+     */
+    private void settled(Key key) {
+        if(key.inFlight > 0)
+            return;
+        if(key.paused){
+            if(!key.resumeScheduled){
+                key.resumeScheduled = true;
+                resumes.add(new Resume(key, System.nanoTime() + retryPolicy.backoffNanos(Math.max(1, key.failures))));
+            }
+        } else if(key.held.isEmpty()){
+            key.removed = true;
+            keys.remove(key.name, key);
+        }
+    }
+
+    /**
+     * A paused key waiting for its backoff.
+     */
+    private static final class Resume implements Delayed {
+        private final Key key;
+        private final long dueNanos;
+
+        private Resume(Key key, long dueNanos) {
+            this.key = key;
+            this.dueNanos = dueNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((Resume) other).dueNanos);
+        }
+    }
+
+    private void resumeLoop() {
+        while (!Thread.currentThread().isInterrupted()){
+            Resume resume;
+            try {
+                resume = resumes.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            resume(resume.key);
+        }
+    }
+
+    /**
+     * Publishes the held records of the key again in the order they were written. If one fails at once,
+     * the key is paused again and the records after it stay held.
+     */
+    private void resume(Key key) {
+        synchronized (key.publishLock){
+            List<Entry> entries;
+            synchronized (key){
+                key.resumeScheduled = false;
+                entries = new ArrayList<>(key.held);
+                key.held.clear();
+                entries.sort(BY_SEQUENCE);
+                if(publishers == null){
+                    for (Entry entry : entries) {
+                        entry.uncount();
+                        lose();
+                    }
+                    return;
+                }
+                key.publisher.resumePublish(key.name);
+                key.paused = false;
+                resumed.increment();
+                // counted in flight until the last one is published, so the key isn't removed meanwhile
+                key.inFlight++;
+            }
+            for (Entry entry : entries) {
+                synchronized (key){
+                    if(key.paused){
+                        key.held.add(entry);
+                        continue;
+                    }
+                    entry.uncount();
+                    key.inFlight++;
+                }
+                try {
+                    publish(key, entry, null);
+                } catch (RuntimeException e) {
+                    metrics.recordFailed(e.getClass().getSimpleName());
+                    lose();
+                }
+            }
+            synchronized (key){
+                key.inFlight--;
+                settled(key);
+            }
+        }
+    }
+
+    private void lose() {
+        lost.increment();
+        metrics.recordLost();
+        outstanding.decrementAndGet();
+    }
+
+    @Override
+    public void flush() {
+        MessagePublisher[] publishers = this.publishers;
+        if(publishers!=null){
+            for (MessagePublisher publisher : publishers) {
+                publisher.publishAllOutstanding();
+            }
+        }
+    }
+
+    /**
+     * Waits up to a minute for the records still in flight or held, the ones left after that are lost
+     * when the publishers shut down.
+     */
+    @Override
+    public void close() {
+        MessagePublisher[] publishers = this.publishers;
+        if(publishers==null)
+            return;
+        flush();
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        try {
+            while (outstanding.get() > 0 && System.nanoTime() < deadline){
+                Thread.sleep(10);
+                flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Thread thread = resumeThread;
+        resumeThread = null;
+        if(thread != null)
+            thread.interrupt();
+        this.publishers = null;
+        for (MessagePublisher publisher : publishers) {
+            publisher.shutdown();
+        }
+        try {
+            for (MessagePublisher publisher : publishers) {
+                publisher.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Key key : keys.values()) {
+            synchronized (key){
+                for (Entry entry : key.held) {
+                    entry.uncount();
+                    lose();
+                }
+                key.held.clear();
+            }
+        }
+        keys.clear();
+        resumes.clear();
+        System.out.println(serializer);
+        System.out.println(String.format("Retried %d records, lost %d records, resumed %d ordering keys over %d publishers",
+                getRetried(), getLost(), getResumed(), shards));
+    }
+
+    /**
+     * Number of records held for their next attempt, a record retried twice is counted twice.
+     */
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    /**
+     * Number of records given up: failed with a non-retryable error, out of attempts, or held beyond the retry queue.
+     */
+    public long getLost() {
+        return lost.sum();
+    }
+
+    /**
+     * Number of times a paused ordering key was resumed.
+     */
+    public long getResumed() {
+        return resumed.sum();
+    }
+
+    /**
+     * Number of records written and neither acknowledged nor lost yet.
+     */
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Ordering state of one device, guarded by itself. Its publish calls are made with the publish lock,
+     * which is taken before the key and never by the callbacks.
+     */
+    private static final class Key {
+        private final String name;
+        private final MessagePublisher publisher;
+        private final Object publishLock = new Object();
+        private final List<Entry> held = new ArrayList<>();
+        private long nextSequence;
+        private int inFlight;
+        private int failures;
+        private boolean paused;
+        private boolean resumeScheduled;
+        private boolean removed;
+
+        private Key(String name, MessagePublisher publisher) {
+            this.name = name;
+            this.publisher = publisher;
+        }
+    }
+
+    /**
+     * A record with its place among the records of its key.
+     */
+    private final class Entry {
+        private final Object record;
+        private final long sequence;
+        private final int attempt;
+        private boolean counted;
+
+        private Entry(Object record, long sequence, int attempt) {
+            this.record = record;
+            this.sequence = sequence;
+            this.attempt = attempt;
+        }
+
+        /**
+         * Marks the entry as one of the records counted against the capacity of the retry queue.
+         */
+        private Entry counted() {
+            counted = true;
+            return this;
+        }
+
+        private void uncount() {
+            if(counted){
+                counted = false;
+                heldSize.decrementAndGet();
+            }
+        }
+    }
+}
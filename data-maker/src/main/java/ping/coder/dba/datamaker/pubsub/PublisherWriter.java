@@ -16,25 +16,41 @@
 
 package ping.coder.dba.datamaker.pubsub;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.core.ApiFuture;
 import com.google.api.core.ApiFutureCallback;
 import com.google.api.core.ApiFutures;
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.api.gax.batching.FlowControlSettings;
+import com.google.api.gax.batching.FlowController;
+import com.google.api.gax.core.InstantiatingExecutorProvider;
 import com.google.api.gax.retrying.RetrySettings;
 import com.google.api.gax.rpc.ApiException;
 import com.google.cloud.pubsub.v1.Publisher;
 import com.google.common.util.concurrent.MoreExecutors;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import com.google.pubsub.v1.PubsubMessage;
 import com.google.pubsub.v1.TopicName;
 import org.threeten.bp.Duration;
+import ping.coder.dba.datamaker.DataMaker;
 import ping.coder.dba.datamaker.Writer;
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.codec.MeteredRecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+import ping.coder.dba.datamaker.codec.SerializedRecord;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.model.DeviceRecord;
 
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @Description @TODO
@@ -45,54 +61,297 @@ public class PublisherWriter implements Writer {
 
     protected final String projectId;
     protected final String topicId;
-    private final ObjectMapper mapper = new ObjectMapper();
-    private Publisher publisher;
+    private final MessagePublisher.Factory publisherFactory;
+    private final MeteredRecordSerializer serializer;
+    private final Metrics metrics;
+    private final RetryPolicy retryPolicy;
+    private final DelayQueue<Retry> retries = new DelayQueue<>();
+    private final AtomicInteger retrySize = new AtomicInteger();
+    private final AtomicLong outstanding = new AtomicLong();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder lost = new LongAdder();
+    private volatile MessagePublisher publisher;
+    private volatile Thread retryThread;
 
     public PublisherWriter(String projectId, String topicId) {
+        this(projectId, topicId, PublisherWriter::newCloudPublisher);
+    }
+
+    public PublisherWriter(String projectId, String topicId, MessagePublisher.Factory publisherFactory) {
+        this(projectId, topicId, publisherFactory, new JsonRecordSerializer());
+    }
+
+    public PublisherWriter(String projectId, String topicId, MessagePublisher.Factory publisherFactory, RecordSerializer serializer) {
+        this(projectId, topicId, publisherFactory, serializer, Metrics.global(), RetryPolicy.DEFAULT);
+    }
+
+    public PublisherWriter(String projectId, String topicId, MessagePublisher.Factory publisherFactory, RecordSerializer serializer,
+                           Metrics metrics, RetryPolicy retryPolicy) {
         this.projectId = projectId;
         this.topicId = topicId;
+        this.publisherFactory = publisherFactory;
+        this.serializer = RecordSerializers.metered(serializer, metrics);
+        this.metrics = metrics;
+        this.retryPolicy = retryPolicy;
+    }
+
+    public MeteredRecordSerializer getSerializer() {
+        return serializer;
     }
 
     @Override
     public void write(Object record) {
+        MessagePublisher publisher = this.publisher;
         if(publisher==null)
             throw new IllegalStateException("Publisher isn't initialized.");
+        outstanding.incrementAndGet();
+        try {
+            publish(publisher, record, record, 0);
+        } catch (RuntimeException e) {
+            outstanding.decrementAndGet();
+            throw e;
+        }
+    }
 
+    /**
+     * @param record the record as it was written, it's kept for the next attempt.
+     * @param payload what is serialized for this attempt.
+     */
+    private void publish(MessagePublisher publisher, Object record, Object payload, int attempt) {
+        PubsubMessage pubsubMessage;
         try {
-            String message = mapper.writeValueAsString(record);
-            ByteString data = ByteString.copyFromUtf8(message);
-            PubsubMessage pubsubMessage = PubsubMessage.newBuilder().setData(data).build();
-            // Once published, returns a server-assigned message id (unique within the topic)
-            ApiFuture<String> future = publisher.publish(pubsubMessage);
-            // Add an asynchronous callback to handle success / failure
-            ApiFutures.addCallback(
-                    future,
-                    new ApiFutureCallback<String>() {
-                        @Override
-                        public void onFailure(Throwable throwable) {
-                            if (throwable instanceof ApiException) {
-                                ApiException apiException = ((ApiException) throwable);
-                                // details on the API exception
-                                System.out.println(apiException.getStatusCode().getCode());
-                                System.out.println(apiException.isRetryable());
-                            }else{
-                                System.out.println(throwable.toString());
-                            }
-                            System.out.println("Error publishing message : " + message);
-                        }
-                        @Override
-                        public void onSuccess(String messageId) {
-                            System.out.println("Published message ID: " + messageId);
-                        }
-                    },
-                    MoreExecutors.directExecutor());
-        } catch (JsonProcessingException e) {
-            throw new IllegalArgumentException("Record can't be transform to Json: "+record.toString(), e);
+            pubsubMessage = toMessage(payload);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Record can't be serialized as "+serializer.getFormat()+": "+payload.toString(), e);
         }
+        long start = System.nanoTime();
+        ApiFuture<String> future = publisher.publish(pubsubMessage);
+        ApiFutures.addCallback(future, new PublishCallback(record, attempt, start), MoreExecutors.directExecutor());
     }
 
+    /**
+     * Counts the outcome of one message, nothing is printed per message. A retryable failure puts the
+     * record on the retry queue, the callback thread never publishes it again itself.
+     */
+    private final class PublishCallback implements ApiFutureCallback<String> {
+        private final Object record;
+        private final int attempt;
+        private final long start;
+
+        private PublishCallback(Object record, int attempt, long start) {
+            this.record = record;
+            this.attempt = attempt;
+            this.start = start;
+        }
+
+        @Override
+        public void onFailure(Throwable throwable) {
+            boolean retryable = throwable instanceof ApiException && ((ApiException) throwable).isRetryable();
+            metrics.recordFailed(throwable instanceof ApiException
+                    ? ((ApiException) throwable).getStatusCode().getCode().toString()
+                    : throwable.getClass().getSimpleName());
+            if(retryable && attempt < retryPolicy.getMaxAttempts() && retryThread != null){
+                if(retrySize.incrementAndGet() <= retryPolicy.getQueueCapacity()){
+                    retries.add(new Retry(record, attempt + 1, System.nanoTime() + retryPolicy.backoffNanos(attempt + 1)));
+                    retried.increment();
+                    metrics.recordRetried();
+                    return;
+                }
+                retrySize.decrementAndGet();
+            }
+            lose(record);
+        }
+
+        @Override
+        public void onSuccess(String messageId) {
+            metrics.recordPublished(System.nanoTime() - start, recordCount(record));
+            outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * A record waiting for its next attempt.
+     */
+    private static final class Retry implements Delayed {
+        private final Object record;
+        private final int attempt;
+        private final long dueNanos;
+
+        private Retry(Object record, int attempt, long dueNanos) {
+            this.record = record;
+            this.attempt = attempt;
+            this.dueNanos = dueNanos;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueNanos, ((Retry) other).dueNanos);
+        }
+    }
+
+    private void retryLoop() {
+        while (!Thread.currentThread().isInterrupted()){
+            Retry retry;
+            try {
+                retry = retries.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            retrySize.decrementAndGet();
+            MessagePublisher publisher = this.publisher;
+            if(publisher == null){
+                lose(retry.record);
+                continue;
+            }
+            try {
+                publish(publisher, retry.record, retryPayload(retry.record, retry.attempt), retry.attempt);
+            } catch (RuntimeException e) {
+                metrics.recordFailed(e.getClass().getSimpleName());
+                lose(retry.record);
+            }
+        }
+    }
+
+    /**
+     * A device record is published again as a copy with the retry count of the attempt, so it's serialized
+     * again. The written record isn't changed, the factory or another writer may still read it. Other
+     * records are published again as they are.
+     */
+    static Object retryPayload(Object record, int attempt) {
+        Object original = record instanceof SerializedRecord ? ((SerializedRecord) record).getRecord() : record;
+        if(original instanceof DeviceRecord)
+            return ((DeviceRecord) original).withRetry(attempt);
+        return record;
+    }
+
+    private void lose(Object record) {
+        int count = recordCount(record);
+        lost.add(count);
+        metrics.recordLost(count);
+        outstanding.decrementAndGet();
+    }
+
+    /**
+     * The message of a written record, its data is the serialized record.
+     */
+    protected PubsubMessage toMessage(Object record) throws IOException {
+        return PubsubMessage.newBuilder().setData(toByteString(record)).build();
+    }
+
+    /**
+     * The serializer returns a new array, so it's wrapped without another copy.
+     */
+    protected ByteString toByteString(Object record) throws IOException {
+        return UnsafeByteOperations.unsafeWrap(serializer.serialize(record));
+    }
+
+    /**
+     * Number of records carried by the message of a written record, counted when it's published or lost.
+     */
+    protected int recordCount(Object record) {
+        return 1;
+    }
+
+    /**
+     * Opens the publisher session. The session stays open until {@link #close()}, so records written
+     * in between share the publisher's batches instead of paying the connection setup per record.
+     */
     @Override
     public void open() throws IOException {
+        if(publisher!=null)
+            throw new IllegalStateException("Publisher is already opened.");
+        publisher = publisherFactory.create(projectId, topicId);
+        if(retryPolicy.getMaxAttempts() > 0){
+            Thread thread = new Thread(this::retryLoop, "data-maker-retry-" + topicId);
+            thread.setDaemon(true);
+            retryThread = thread;
+            thread.start();
+        }
+    }
+
+    @Override
+    public void flush() {
+        MessagePublisher publisher = this.publisher;
+        if(publisher!=null)
+            publisher.publishAllOutstanding();
+    }
+
+    /**
+     * Waits up to a minute for the records still waiting for an acknowledgement or a retry, the ones
+     * left after that are lost when the publisher shuts down.
+     */
+    @Override
+    public void close() {
+        MessagePublisher publisher = this.publisher;
+        if(publisher!=null){
+            publisher.publishAllOutstanding();
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+            try {
+                while (outstanding.get() > 0 && System.nanoTime() < deadline){
+                    Thread.sleep(10);
+                    publisher.publishAllOutstanding();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            Thread thread = retryThread;
+            retryThread = null;
+            if(thread != null)
+                thread.interrupt();
+            this.publisher = null;
+            publisher.shutdown();
+            try {
+                publisher.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            for (Retry retry; (retry = retries.poll()) != null; ){
+                retrySize.decrementAndGet();
+                lose(retry.record);
+            }
+            System.out.println(serializer);
+            System.out.println(String.format("Retried %d records, lost %d records", getRetried(), getLost()));
+        }
+    }
+
+    /**
+     * Number of records put on the retry queue, a record retried twice is counted twice.
+     */
+    public long getRetried() {
+        return retried.sum();
+    }
+
+    /**
+     * Number of records given up: failed with a non-retryable error, out of attempts, or beyond the retry queue.
+     */
+    public long getLost() {
+        return lost.sum();
+    }
+
+    /**
+     * Number of records written and neither acknowledged nor lost yet.
+     */
+    public long getOutstanding() {
+        return outstanding.get();
+    }
+
+    public static MessagePublisher newCloudPublisher(String projectId, String topicId) throws IOException {
+        return newCloudPublisher(projectId, topicId, new DataMaker.Options());
+    }
+
+    /**
+     * Factory of cloud publishers tuned by the batching, flow control, executor and compression settings of the options.
+     */
+    public static MessagePublisher.Factory cloudPublisherFactory(DataMaker.Options options) {
+        return (projectId, topicId) -> newCloudPublisher(projectId, topicId, options);
+    }
+
+    public static MessagePublisher newCloudPublisher(String projectId, String topicId, DataMaker.Options options) throws IOException {
         TopicName topicName = TopicName.of(projectId, topicId);
         Duration initialRetryDelay = Duration.ofMillis(100); // default: 100 ms
         double retryDelayMultiplier = 2.0; // back off for repeated failures, default: 1.3
@@ -112,19 +371,53 @@ public class PublisherWriter implements Writer {
                                             .setTotalTimeout(totalTimeout)
                                             .build();
 
-        publisher = Publisher.newBuilder(topicName).setRetrySettings(retrySettings).build();
+        Publisher.Builder builder = Publisher.newBuilder(topicName)
+                                            .setRetrySettings(retrySettings)
+                                            .setBatchingSettings(batchingSettings(options))
+                                            .setEnableCompression(options.isCompression())
+                                            .setCompressionBytesThreshold(options.getCompressionBytesThreshold())
+                                            .setEnableMessageOrdering(options.getOrderingShards() > 0);
+        if(!options.getPublishEndpoint().isEmpty())
+            builder.setEndpoint(options.getPublishEndpoint());
+        if(options.getPublisherThreadNumber() > 0)
+            builder.setExecutorProvider(InstantiatingExecutorProvider.newBuilder()
+                                            .setExecutorThreadCount(options.getPublisherThreadNumber())
+                                            .build());
+        return new CloudMessagePublisher(builder.build());
     }
 
-    @Override
-    public void close() {
-        if(publisher!=null){
-            publisher.shutdown();
-            try {
-                publisher.awaitTermination(1, TimeUnit.MINUTES);
-            } catch (InterruptedException e) {
-                throw new IllegalStateException(e);
-            }
-            publisher = null;
+    /**
+     * Without flow control the outstanding messages are only bounded by the heap, so a run faster than
+     * the topic ends with an OOM instead of being slowed down.
+     */
+    static BatchingSettings batchingSettings(DataMaker.Options options) {
+        FlowControlSettings.Builder flowControl = FlowControlSettings.newBuilder()
+                                            .setLimitExceededBehavior(limitExceededBehavior(options.getLimitExceededBehavior()));
+        if(options.getMaxOutstandingElements() > 0)
+            flowControl.setMaxOutstandingElementCount(options.getMaxOutstandingElements());
+        if(options.getMaxOutstandingBytes() > 0)
+            flowControl.setMaxOutstandingRequestBytes(options.getMaxOutstandingBytes());
+        if(options.getMaxOutstandingElements() == 0 && options.getMaxOutstandingBytes() == 0)
+            flowControl.setLimitExceededBehavior(FlowController.LimitExceededBehavior.Ignore);
+
+        return BatchingSettings.newBuilder()
+                                            .setElementCountThreshold(options.getBatchElementCount())
+                                            .setRequestByteThreshold(options.getBatchRequestBytes())
+                                            .setDelayThreshold(Duration.ofMillis(options.getBatchDelayMillis()))
+                                            .setFlowControlSettings(flowControl.build())
+                                            .build();
+    }
+
+    private static FlowController.LimitExceededBehavior limitExceededBehavior(String behavior) {
+        switch (behavior){
+            case DataMaker.Options.LIMIT_BLOCK:
+                return FlowController.LimitExceededBehavior.Block;
+            case DataMaker.Options.LIMIT_THROW:
+                return FlowController.LimitExceededBehavior.ThrowException;
+            case DataMaker.Options.LIMIT_IGNORE:
+                return FlowController.LimitExceededBehavior.Ignore;
+            default:
+                throw new IllegalArgumentException("Error limit exceeded behavior is: "+behavior);
         }
     }
 
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @Description How the records whose publish failed with a retryable error are published again: up to a
+ * number of attempts, after an exponential backoff with jitter, and with a bound on the records waiting
+ * for their next attempt.
+ * @Author Ping
+ * @Date 2026/10/18 19:05
+ **/
+public final class RetryPolicy {
+
+    /**
+     * Failed records are only counted, never published again.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(0, 1, 1, 1);
+
+    public static final RetryPolicy DEFAULT = new RetryPolicy(5, 100, 10_000, 10_000);
+
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final int queueCapacity;
+
+    /**
+     * @param maxAttempts max number of publishes after the first one.
+     * @param queueCapacity max number of records waiting for their next attempt, the records beyond it are lost.
+     */
+    public RetryPolicy(int maxAttempts, long initialBackoffMillis, long maxBackoffMillis, int queueCapacity) {
+        if(maxAttempts < 0)
+            throw new IllegalArgumentException("max attempts was "+maxAttempts);
+        if(initialBackoffMillis <= 0)
+            throw new IllegalArgumentException("initial backoff millis was "+initialBackoffMillis);
+        if(maxBackoffMillis < initialBackoffMillis)
+            throw new IllegalArgumentException("max backoff millis was "+maxBackoffMillis);
+        if(queueCapacity <= 0)
+            throw new IllegalArgumentException("queue capacity was "+queueCapacity);
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(initialBackoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Doubles for every attempt up to the max backoff, and a random half of it is taken off so the
+     * records failed by the same throttling don't all come back at the same time.
+     *
+     * @param attempt the attempt about to be made, starting from 1.
+     */
+    public long backoffNanos(int attempt) {
+        long backoff = initialBackoffNanos << Math.min(attempt - 1, 30);
+        if(backoff <= 0 || backoff > maxBackoffNanos)
+            backoff = maxBackoffNanos;
+        long half = backoff >> 1;
+        return backoff - half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import ping.coder.dba.datamaker.Writer;
+import ping.coder.dba.datamaker.codec.MeteredRecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+import ping.coder.dba.datamaker.codec.SerializedRecord;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.model.DeviceModel;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @Description Writes every device record into the topic of its route, and into a firehose topic if there
+ * is one, through a pool of long-lived {@link PublisherWriter}s, one per topic, each with the metrics of
+ * its topic. A record is routed by its device type, by the prefix of its model id, or by the hash of its
+ * device id into a fixed number of topics. The topic of a device type or a model prefix is looked up by
+ * strings once per model, then kept in an array by model index, so routing a record is an array read;
+ * the records must come from one model list. A record written to the firehose too is serialized once and
+ * its bytes are shared by both topics.
+ * @Author Ping
+ * @Date 2026/10/18 21:40
+ **/
+public class RoutingWriter implements Writer {
+
+    public static final String BY_DEVICE_TYPE = "device-type";
+    public static final String BY_MODEL_PREFIX = "model-prefix";
+    public static final String BY_HASH = "hash";
+    public static final List<String> ROUTES = Arrays.asList(BY_DEVICE_TYPE, BY_MODEL_PREFIX, BY_HASH);
+
+    private final String projectId;
+    private final String route;
+    private final String topicFormat;
+    private final int prefixLength;
+    private final int topicNumber;
+    private final String firehoseTopic;
+    private final MessagePublisher.Factory publisherFactory;
+    private final RecordSerializer serializer;
+    private final MeteredRecordSerializer firehoseSerializer;
+    private final Metrics metrics;
+    private final RetryPolicy retryPolicy;
+    /**
+     * Writers by topic, only used when a route is learnt, guarded by itself.
+     */
+    private final Map<String, PublisherWriter> writers = new LinkedHashMap<>();
+    /**
+     * Writer of every model index which was routed, replaced by a larger copy when a model is learnt.
+     */
+    private volatile PublisherWriter[] writersByModel = new PublisherWriter[0];
+    private PublisherWriter[] writersByHash;
+    private PublisherWriter firehose;
+    private volatile boolean opened;
+
+    private RoutingWriter(RoutingWriterBuilder builder) {
+        this.projectId = builder.projectId;
+        this.route = builder.route;
+        this.topicFormat = builder.topicFormat;
+        this.prefixLength = builder.prefixLength;
+        this.topicNumber = builder.topicNumber;
+        this.firehoseTopic = builder.firehoseTopic;
+        this.publisherFactory = builder.publisherFactory;
+        this.serializer = builder.serializer;
+        this.firehoseSerializer = RecordSerializers.metered(builder.serializer, builder.metrics);
+        this.metrics = builder.metrics;
+        this.retryPolicy = builder.retryPolicy;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if(opened)
+            throw new IllegalStateException("Writer is already opened.");
+        synchronized (writers) {
+            if(firehoseTopic != null)
+                firehose = writer(firehoseTopic);
+            if(BY_HASH.equals(route)){
+                writersByHash = new PublisherWriter[topicNumber];
+                for (int i = 0; i < topicNumber; i++) {
+                    writersByHash[i] = writer(topicName(Integer.toString(i)));
+                }
+            }
+        }
+        opened = true;
+    }
+
+    @Override
+    public void write(Object record) {
+        if(!opened)
+            throw new IllegalStateException("Writer isn't opened.");
+        Object original = record instanceof SerializedRecord ? ((SerializedRecord) record).getRecord() : record;
+        if(!(original instanceof DeviceRecord))
+            throw new IllegalArgumentException("Only device records can be routed, the record was "+original.getClass().getName());
+        PublisherWriter writer = route((DeviceRecord) original);
+        if(firehose != null && !(record instanceof SerializedRecord)){
+            try {
+                record = new SerializedRecord(record, firehoseSerializer.getFormat(), firehoseSerializer.serialize(record));
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Record can't be serialized as "+firehoseSerializer.getFormat()+": "+record, e);
+            }
+        }
+        writer.write(record);
+        if(firehose != null)
+            firehose.write(record);
+    }
+
+    private PublisherWriter route(DeviceRecord record) {
+        if(writersByHash != null){
+            int hash = record.getDeviceId().hashCode() * 0x9E3779B9;
+            return writersByHash[(int) (((hash ^ (hash >>> 16)) & 0xFFFFFFFFL) % writersByHash.length)];
+        }
+        DeviceModel model = record.getModel();
+        if(model != null){
+            PublisherWriter[] writersByModel = this.writersByModel;
+            int index = model.getIndex();
+            if(index < writersByModel.length && writersByModel[index] != null)
+                return writersByModel[index];
+        }
+        return learn(record, model);
+    }
+
+    /**
+     * Finds the topic of the record by its key and opens its writer if it's the first record of the topic.
+     */
+    private PublisherWriter learn(DeviceRecord record, DeviceModel model) {
+        String key;
+        if(BY_DEVICE_TYPE.equals(route)){
+            key = record.getDeviceType();
+        } else {
+            String modelId = model != null ? model.getDeviceModelId() : modelId(record.getDeviceId());
+            key = modelId.substring(0, Math.min(prefixLength, modelId.length()));
+        }
+        synchronized (writers) {
+            PublisherWriter writer = writer(topicName(key));
+            if(model != null){
+                PublisherWriter[] writersByModel = this.writersByModel;
+                if(model.getIndex() >= writersByModel.length)
+                    writersByModel = Arrays.copyOf(writersByModel, Math.max(model.getIndex() + 1, writersByModel.length * 2));
+                else
+                    writersByModel = writersByModel.clone();
+                writersByModel[model.getIndex()] = writer;
+                this.writersByModel = writersByModel;
+            }
+            return writer;
+        }
+    }
+
+    /**
+     * The model id of a device id "D{worker}-{model}-{number}".
+     */
+    private static String modelId(String deviceId) {
+        int start = deviceId.indexOf('-');
+        int end = deviceId.lastIndexOf('-');
+        if(start < 0 || end <= start)
+            throw new IllegalArgumentException("Device id has no model: "+deviceId);
+        return deviceId.substring(start + 1, end);
+    }
+
+    /**
+     * The key goes into the topic format with the characters a topic name doesn't allow replaced by '-'.
+     */
+    String topicName(String key) {
+        StringBuilder builder = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            char c = Character.toLowerCase(key.charAt(i));
+            builder.append((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '.' || c == '_' || c == '~' || c == '+' || c == '-' ? c : '-');
+        }
+        return String.format(Locale.ROOT, topicFormat, builder);
+    }
+
+    private PublisherWriter writer(String topic) {
+        PublisherWriter writer = writers.get(topic);
+        if(writer == null){
+            writer = new PublisherWriter(projectId, topic, publisherFactory, serializer, metrics.destination(topic), retryPolicy);
+            try {
+                writer.open();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Publisher of topic "+topic+" can't be opened", e);
+            }
+            writers.put(topic, writer);
+        }
+        return writer;
+    }
+
+    /**
+     * Writers of the topics opened so far, by topic.
+     */
+    public Map<String, PublisherWriter> getWriters() {
+        synchronized (writers) {
+            return new LinkedHashMap<>(writers);
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (PublisherWriter writer : getWriters().values()) {
+            writer.flush();
+        }
+    }
+
+    @Override
+    public void close() {
+        if(!opened)
+            return;
+        opened = false;
+        List<PublisherWriter> closing;
+        synchronized (writers) {
+            closing = new ArrayList<>(writers.values());
+            writers.clear();
+            writersByModel = new PublisherWriter[0];
+            writersByHash = null;
+            firehose = null;
+        }
+        for (PublisherWriter writer : closing) {
+            writer.close();
+        }
+    }
+
+    public static RoutingWriterBuilder builder(){
+        return new RoutingWriterBuilder();
+    }
+
+    public static class RoutingWriterBuilder {
+        private String projectId;
+        private String route = BY_DEVICE_TYPE;
+        private String topicFormat;
+        private int prefixLength = 6;
+        private int topicNumber = 4;
+        private String firehoseTopic;
+        private MessagePublisher.Factory publisherFactory;
+        private RecordSerializer serializer;
+        private Metrics metrics = Metrics.global();
+        private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+        private RoutingWriterBuilder(){
+        }
+        public RoutingWriterBuilder projectId(String projectId){
+            this.projectId = projectId;
+            return this;
+        }
+        /**
+         * One of {@link #ROUTES}.
+         */
+        public RoutingWriterBuilder route(String route){
+            if(!ROUTES.contains(route))
+                throw new IllegalArgumentException("route was "+route+", it should be one of "+ROUTES);
+            this.route = route;
+            return this;
+        }
+        /**
+         * Format of the topic names with %s for the key of the route, the index of the topic for the hash route.
+         */
+        public RoutingWriterBuilder topicFormat(String topicFormat){
+            if(topicFormat == null || !topicFormat.contains("%s"))
+                throw new IllegalArgumentException("topic format should contain %s, it was "+topicFormat);
+            this.topicFormat = topicFormat;
+            return this;
+        }
+        /**
+         * Characters of the model id which make the key of the model prefix route.
+         */
+        public RoutingWriterBuilder prefixLength(int prefixLength){
+            if(prefixLength <= 0)
+                throw new IllegalArgumentException("prefix length was "+prefixLength);
+            this.prefixLength = prefixLength;
+            return this;
+        }
+        /**
+         * Number of topics of the hash route.
+         */
+        public RoutingWriterBuilder topicNumber(int topicNumber){
+            if(topicNumber <= 0)
+                throw new IllegalArgumentException("topic number was "+topicNumber);
+            this.topicNumber = topicNumber;
+            return this;
+        }
+        /**
+         * Topic which gets every record too, if it's null there is none.
+         */
+        public RoutingWriterBuilder firehoseTopic(String firehoseTopic){
+            this.firehoseTopic = firehoseTopic == null || firehoseTopic.isEmpty() ? null : firehoseTopic;
+            return this;
+        }
+        public RoutingWriterBuilder publisherFactory(MessagePublisher.Factory publisherFactory){
+            this.publisherFactory = publisherFactory;
+            return this;
+        }
+        public RoutingWriterBuilder serializer(RecordSerializer serializer){
+            this.serializer = serializer;
+            return this;
+        }
+        public RoutingWriterBuilder metrics(Metrics metrics){
+            this.metrics = metrics;
+            return this;
+        }
+        public RoutingWriterBuilder retryPolicy(RetryPolicy retryPolicy){
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+        public RoutingWriter build(){
+            if(projectId == null || topicFormat == null || publisherFactory == null || serializer == null)
+                throw new IllegalArgumentException("Project id, topic format, publisher factory and serializer are needed.");
+            return new RoutingWriter(this);
+        }
+    }
+}
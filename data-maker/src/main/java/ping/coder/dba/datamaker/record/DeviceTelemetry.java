@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @Description Sensor state of every device, packed into one long per device so millions of devices
+ * take a few megabytes and no objects:
+ * <pre>
+ * bits 48-63 temperature in tenths of a degree, signed, from -30.0 to 50.0
+ * bits 40-47 humidity, 0 to 100
+ * bits 32-39 occupancy, 0 to 100
+ * bits 16-31 speed, 0 to 399
+ * bits  1-15 battery in hundredths of a percent, 0 to 10000
+ * bit      0 set once the device has a state
+ * </pre>
+ * Every reading moves the state of its device a small random step: temperature, humidity, occupancy
+ * and speed walk within their ranges and the battery drains until it's replaced by a full one. The
+ * update is one CAS on the device's slot, so the state is shared by all the generating threads.
+ * @Author Ping
+ * @Date 2026/10/18 20:10
+ **/
+public final class DeviceTelemetry {
+
+    static final int MIN_TEMPERATURE = -300;
+    static final int MAX_TEMPERATURE = 500;
+    static final int MAX_HUMIDITY = 100;
+    static final int MAX_OCCUPANCY = 100;
+    static final int MAX_SPEED = 399;
+    static final int FULL_BATTERY = 10000;
+
+    private final AtomicLongArray states;
+
+    public DeviceTelemetry(int deviceNumber) {
+        if(deviceNumber <= 0)
+            throw new IllegalArgumentException("device number was "+deviceNumber);
+        this.states = new AtomicLongArray(deviceNumber);
+    }
+
+    public int getDeviceNumber() {
+        return states.length();
+    }
+
+    /**
+     * Moves the device to its next reading.
+     *
+     * @return the packed state of the reading.
+     */
+    public long next(int device, Random random) {
+        while (true){
+            long state = states.get(device);
+            long next = (state & 1) == 0 ? initial(random) : step(state, random);
+            if(states.compareAndSet(device, state, next))
+                return next;
+        }
+    }
+
+    private static long initial(Random random) {
+        return pack(random.nextInt(MAX_TEMPERATURE - MIN_TEMPERATURE + 1) + MIN_TEMPERATURE,
+                random.nextInt(MAX_HUMIDITY + 1), random.nextInt(MAX_OCCUPANCY + 1), random.nextInt(MAX_SPEED + 1),
+                FULL_BATTERY / 2 + random.nextInt(FULL_BATTERY / 2 + 1));
+    }
+
+    private static long step(long state, Random random) {
+        int battery = battery(state) - random.nextInt(3);
+        return pack(walk(temperature(state), 5, MIN_TEMPERATURE, MAX_TEMPERATURE, random),
+                walk(humidity(state), 2, 0, MAX_HUMIDITY, random),
+                walk(occupancy(state), 5, 0, MAX_OCCUPANCY, random),
+                walk(speed(state), 20, 0, MAX_SPEED, random),
+                battery <= 0 ? FULL_BATTERY : battery);
+    }
+
+    /**
+     * One uniform step of at most the given size, reflected back into the range at its bounds.
+     */
+    private static int walk(int value, int maxStep, int min, int max, Random random) {
+        value += random.nextInt(2 * maxStep + 1) - maxStep;
+        if(value < min)
+            return 2 * min - value;
+        if(value > max)
+            return 2 * max - value;
+        return value;
+    }
+
+    static long pack(int temperature, int humidity, int occupancy, int speed, int battery) {
+        return ((long) (temperature & 0xFFFF) << 48) | ((long) humidity << 40) | ((long) occupancy << 32)
+                | ((long) speed << 16) | ((long) battery << 1) | 1L;
+    }
+
+    public static int temperature(long state) {
+        return (short) (state >>> 48);
+    }
+
+    public static int humidity(long state) {
+        return (int) (state >>> 40) & 0xFF;
+    }
+
+    public static int occupancy(long state) {
+        return (int) (state >>> 32) & 0xFF;
+    }
+
+    public static int speed(long state) {
+        return (int) (state >>> 16) & 0xFFFF;
+    }
+
+    public static int battery(long state) {
+        return (int) (state >>> 1) & 0x7FFF;
+    }
+}
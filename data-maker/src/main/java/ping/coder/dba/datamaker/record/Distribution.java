@@ -0,0 +1,340 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @Description How often each of a number of keys, e.g. the models or the device numbers, is picked. A
+ * distribution is written as a spec: {@code uniform}, {@code zipf:1.1} for the key of rank k picked in
+ * proportion to 1/(k+1)^1.1, {@code hotspot:0.2:0.8} for 80% of the picks going to the first 20% of the
+ * keys, or {@code weights:5,3,1} for explicit weights of the keys. Zipf and weights are sampled from a
+ * precomputed alias table, 8 bytes per key, with one random long per pick whatever the number of keys;
+ * uniform and hotspot need no table. Explicit weights are kept too, 8 more bytes per key, to make slices.
+ * <p>
+ * A slice of a distribution is the same distribution conditioned on a range of its keys, so the workers
+ * of a partitioned keyspace each pick from the slice of their partition and together still follow the
+ * distribution of the whole keyspace.
+ * @Author Ping
+ * @Date 2026/10/19 0:10
+ **/
+public abstract class Distribution {
+
+    public static final String UNIFORM = "uniform";
+    public static final String ZIPF = "zipf";
+    public static final String HOTSPOT = "hotspot";
+    public static final String WEIGHTS = "weights";
+    public static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList(UNIFORM, ZIPF, HOTSPOT, WEIGHTS));
+
+    /**
+     * Number of keys, the picks are from 0 to size - 1.
+     */
+    public abstract int size();
+
+    public abstract int sample(Random random);
+
+    /**
+     * The distribution conditioned on the keys from start to start + size - 1, the key start becomes key 0.
+     */
+    public abstract Distribution slice(int start, int size);
+
+    public static Distribution uniform(int size) {
+        return new Uniform(size);
+    }
+
+    public static Distribution zipf(int size, double exponent) {
+        if(!(exponent > 0))
+            throw new IllegalArgumentException("zipf exponent was "+exponent);
+        double[] weights = new double[checkSize(size)];
+        for (int i = 0; i < size; i++) {
+            weights[i] = Math.pow(i + 1, -exponent);
+        }
+        return new Alias(weights, exponent, 0);
+    }
+
+    /**
+     * @param hotFraction part of the keys which are hot, the first ones.
+     * @param hotProbability part of the picks which go to the hot keys.
+     */
+    public static Distribution hotspot(int size, double hotFraction, double hotProbability) {
+        return new Hotspot(size, hotFraction, hotProbability);
+    }
+
+    /**
+     * One key per weight, the weights don't need to add up to one.
+     */
+    public static Distribution weights(double... weights) {
+        if(weights.length == 0)
+            throw new IllegalArgumentException("There should be one weight at least.");
+        for (double weight : weights) {
+            if(!(weight >= 0) || Double.isInfinite(weight))
+                throw new IllegalArgumentException("weight was "+weight);
+        }
+        return new Alias(weights.clone(), 0, 0);
+    }
+
+    /**
+     * @param size number of keys, the weights spec has the size of its weights instead.
+     */
+    public static Distribution parse(String spec, int size) {
+        String[] parts = spec == null || spec.isEmpty() ? new String[]{UNIFORM} : spec.trim().split(":");
+        try {
+            switch (parts[0]){
+                case UNIFORM:
+                    if(parts.length == 1)
+                        return uniform(size);
+                    break;
+                case ZIPF:
+                    if(parts.length == 2)
+                        return zipf(size, Double.parseDouble(parts[1]));
+                    break;
+                case HOTSPOT:
+                    if(parts.length == 3)
+                        return hotspot(size, Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+                    break;
+                case WEIGHTS:
+                    if(parts.length == 2)
+                        return weights(Arrays.stream(parts[1].split(",")).mapToDouble(weight -> Double.parseDouble(weight.trim())).toArray());
+                    break;
+                default:
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Error distribution is: "+spec, e);
+        }
+        throw new IllegalArgumentException(String.format("Error distribution is: %s, should be one of %s, like zipf:1.1, hotspot:0.2:0.8 or weights:5,3,1",
+                spec, NAMES));
+    }
+
+    private static int checkSize(int size) {
+        if(size <= 0)
+            throw new IllegalArgumentException("The number of keys should be more than zero, it was "+size);
+        return size;
+    }
+
+    private static void checkSlice(int start, int size, int keys) {
+        if(start < 0 || size <= 0 || (long) start + size > keys)
+            throw new IllegalArgumentException(String.format("Slice of %d keys from %d is out of the %d keys", size, start, keys));
+    }
+
+    private static final class Uniform extends Distribution {
+        private final int size;
+
+        private Uniform(int size) {
+            this.size = checkSize(size);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int sample(Random random) {
+            return random.nextInt(size);
+        }
+
+        @Override
+        public Distribution slice(int start, int size) {
+            checkSlice(start, size, this.size);
+            return size == this.size ? this : new Uniform(size);
+        }
+
+        @Override
+        public String toString() {
+            return UNIFORM;
+        }
+    }
+
+    private static final class Hotspot extends Distribution {
+        private final int size;
+        private final double hotFraction;
+        private final double hotProbability;
+        private final int hotSize;
+        /**
+         * Part of the picks which go to the hot keys of this distribution, the hot probability unless it's a slice.
+         */
+        private final double hotShare;
+
+        private Hotspot(int size, double hotFraction, double hotProbability) {
+            if(!(hotFraction > 0 && hotFraction < 1))
+                throw new IllegalArgumentException("hot fraction was "+hotFraction);
+            if(!(hotProbability >= 0 && hotProbability <= 1))
+                throw new IllegalArgumentException("hot probability was "+hotProbability);
+            this.size = checkSize(size);
+            this.hotFraction = hotFraction;
+            this.hotProbability = hotProbability;
+            this.hotSize = (int) Math.max(1, Math.min(size - 1, Math.round(size * hotFraction)));
+            this.hotShare = hotProbability;
+        }
+
+        private Hotspot(int size, double hotFraction, double hotProbability, int hotSize, double hotShare) {
+            this.size = size;
+            this.hotFraction = hotFraction;
+            this.hotProbability = hotProbability;
+            this.hotSize = hotSize;
+            this.hotShare = hotShare;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int sample(Random random) {
+            if(size == 1)
+                return 0;
+            if(random.nextDouble() < hotShare)
+                return random.nextInt(hotSize);
+            return hotSize + random.nextInt(size - hotSize);
+        }
+
+        /**
+         * Every hot key has the weight hotShare / hotSize and every other key (1 - hotShare) / (size - hotSize),
+         * the slice keeps the hot keys in it and their part of the weight of the slice.
+         */
+        @Override
+        public Distribution slice(int start, int size) {
+            checkSlice(start, size, this.size);
+            if(size == this.size)
+                return this;
+            int hot = Math.max(0, Math.min(hotSize, start + size) - start);
+            if(hot == 0 || hot == size)
+                return new Uniform(size);
+            double hotWeight = hot * hotShare / hotSize;
+            double coldWeight = (size - hot) * (1 - hotShare) / (this.size - hotSize);
+            return new Hotspot(size, hotFraction, hotProbability, hot, hotWeight / (hotWeight + coldWeight));
+        }
+
+        @Override
+        public String toString() {
+            return HOTSPOT + ":" + hotFraction + ":" + hotProbability;
+        }
+    }
+
+    /**
+     * Vose's alias method: every column of the table keeps its own key with the probability of its
+     * threshold and gives the rest of its share to its alias, so a pick is a column and a coin.
+     */
+    private static final class Alias extends Distribution {
+        private final double exponent;
+        /**
+         * Rank of the first key of a zipf distribution, more than zero for a slice.
+         */
+        private final int offset;
+        /**
+         * The explicit weights, null for a zipf distribution which computes the weights of its slices.
+         */
+        private final double[] weights;
+        private final int[] thresholds;
+        private final int[] aliases;
+
+        /**
+         * @param weights of the keys, the array is reused for the scaled weights.
+         * @param exponent of the zipf distribution, or zero for explicit weights.
+         */
+        private Alias(double[] weights, double exponent, int offset) {
+            int size = weights.length;
+            double sum = 0;
+            for (double weight : weights) {
+                sum += weight;
+            }
+            if(!(sum > 0))
+                throw new IllegalArgumentException("The weights should add up to more than zero.");
+            this.exponent = exponent;
+            this.offset = offset;
+            this.weights = exponent > 0 ? null : weights.clone();
+            this.thresholds = new int[size];
+            this.aliases = new int[size];
+            // the scaled weights replace the weights, the stack of the small ones grows from the start of
+            // the work array and the stack of the large ones from its end
+            double[] scaled = weights;
+            int[] work = new int[size];
+            int small = 0;
+            int large = size;
+            for (int i = 0; i < size; i++) {
+                scaled[i] = weights[i] * size / sum;
+                if(scaled[i] < 1)
+                    work[small++] = i;
+                else
+                    work[--large] = i;
+            }
+            while (small > 0 && large < size){
+                int less = work[--small];
+                int more = work[large++];
+                thresholds[less] = threshold(scaled[less]);
+                aliases[less] = more;
+                scaled[more] = (scaled[more] + scaled[less]) - 1;
+                if(scaled[more] < 1)
+                    work[small++] = more;
+                else
+                    work[--large] = more;
+            }
+            while (small > 0){
+                int column = work[--small];
+                thresholds[column] = Integer.MAX_VALUE;
+                aliases[column] = column;
+            }
+            while (large < size){
+                int column = work[large++];
+                thresholds[column] = Integer.MAX_VALUE;
+                aliases[column] = column;
+            }
+        }
+
+        private static int threshold(double probability) {
+            return (int) Math.min(Integer.MAX_VALUE, Math.round(probability * (1L << 31)));
+        }
+
+        @Override
+        public int size() {
+            return thresholds.length;
+        }
+
+        /**
+         * The high half of the random long picks the column, the low 31 bits are the coin.
+         */
+        @Override
+        public int sample(Random random) {
+            long bits = random.nextLong();
+            int column = (int) (((bits >>> 32) * thresholds.length) >>> 32);
+            return ((int) bits & Integer.MAX_VALUE) < thresholds[column] ? column : aliases[column];
+        }
+
+        @Override
+        public Distribution slice(int start, int size) {
+            checkSlice(start, size, thresholds.length);
+            if(size == thresholds.length)
+                return this;
+            if(weights != null)
+                return new Alias(Arrays.copyOfRange(weights, start, start + size), 0, 0);
+            double[] ranks = new double[size];
+            for (int i = 0; i < size; i++) {
+                ranks[i] = Math.pow(offset + start + i + 1, -exponent);
+            }
+            return new Alias(ranks, exponent, offset + start);
+        }
+
+        @Override
+        public String toString() {
+            return exponent > 0 ? ZIPF + ":" + exponent : WEIGHTS + ":" + thresholds.length;
+        }
+    }
+}
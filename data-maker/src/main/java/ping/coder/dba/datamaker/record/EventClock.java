@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description Event time of the readings. The clock never goes back: it's the wall clock, or the latest
+ * time it gave if the wall clock was set back, so the readings of every device are in order in the order
+ * they are made, whatever thread makes them, without any state per device. On top of that a part of the
+ * readings can be stamped out of order, at most the max skew behind the clock, and another part late,
+ * at least the lateness behind it, to load the late data paths of a streaming pipeline at a known rate.
+ * @Author Ping
+ * @Date 2026/10/18 20:40
+ **/
+public final class EventClock {
+
+    private final AtomicLong latestMillis = new AtomicLong();
+    private final double outOfOrderRate;
+    private final long maxSkewMillis;
+    private final double lateRate;
+    private final long latenessMillis;
+
+    public EventClock() {
+        this(0, 0, 0, 0);
+    }
+
+    /**
+     * @param outOfOrderRate part of the readings stamped between 1 millisecond and the max skew behind the clock.
+     * @param lateRate part of the readings stamped between once and twice the lateness behind the clock.
+     */
+    public EventClock(double outOfOrderRate, long maxSkewMillis, double lateRate, long latenessMillis) {
+        if(!(outOfOrderRate >= 0 && lateRate >= 0 && outOfOrderRate + lateRate <= 1))
+            throw new IllegalArgumentException("out of order rate was "+outOfOrderRate+", late rate was "+lateRate);
+        if(outOfOrderRate > 0 && maxSkewMillis <= 0)
+            throw new IllegalArgumentException("max skew millis was "+maxSkewMillis);
+        if(lateRate > 0 && latenessMillis <= 0)
+            throw new IllegalArgumentException("lateness millis was "+latenessMillis);
+        this.outOfOrderRate = outOfOrderRate;
+        this.maxSkewMillis = maxSkewMillis;
+        this.lateRate = lateRate;
+        this.latenessMillis = latenessMillis;
+    }
+
+    /**
+     * Event time of the next reading. The clock is only written once per millisecond, and the random is
+     * only drawn when some readings are out of order or late.
+     */
+    public long next(long nowMillis, Random random) {
+        long latest;
+        long time;
+        do {
+            latest = latestMillis.get();
+            time = Math.max(nowMillis, latest);
+        } while (time != latest && !latestMillis.compareAndSet(latest, time));
+        if(outOfOrderRate == 0 && lateRate == 0)
+            return time;
+        double draw = random.nextDouble();
+        if(draw < lateRate)
+            return time - latenessMillis - (long) (random.nextDouble() * latenessMillis);
+        if(draw < lateRate + outOfOrderRate)
+            return time - 1 - (long) (random.nextDouble() * maxSkewMillis);
+        return time;
+    }
+
+    public double getOutOfOrderRate() {
+        return outOfOrderRate;
+    }
+
+    public long getMaxSkewMillis() {
+        return maxSkewMillis;
+    }
+
+    public double getLateRate() {
+        return lateRate;
+    }
+
+    public long getLatenessMillis() {
+        return latenessMillis;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+/**
+ * @Description Device keyspace of a run split between its workers. Every model has the same global
+ * population of devices, and worker {@code index} of {@code count} owns the device numbers from
+ * {@code population * index / count} to {@code population * (index + 1) / count}, so the ranges are
+ * disjoint, cover the population, and differ by one device at most. Adding workers splits the population
+ * instead of growing it. The assignment can change while records are made, when a coordinator rebalances
+ * the workers; factories read it for every record.
+ * @Author Ping
+ * @Date 2026/10/18 19:10
+ **/
+public final class Keyspace {
+
+    private final int population;
+    private volatile Partition partition;
+
+    public Keyspace(int population, int index, int count) {
+        if(population <= 0)
+            throw new IllegalArgumentException("population was "+population);
+        this.population = population;
+        this.partition = partition(index, count);
+    }
+
+    /**
+     * Takes the partition of the worker index among the count of workers.
+     */
+    public void assign(int index, int count) {
+        this.partition = partition(index, count);
+    }
+
+    public Partition getPartition() {
+        return partition;
+    }
+
+    public int getPopulation() {
+        return population;
+    }
+
+    private Partition partition(int index, int count) {
+        if(count <= 0 || count > population)
+            throw new IllegalArgumentException(String.format("worker number was %d, it should be from 1 to the %d devices", count, population));
+        if(index < 0 || index >= count)
+            throw new IllegalArgumentException("worker index was "+index+" of "+count);
+        int start = (int) ((long) population * index / count);
+        int end = (int) ((long) population * (index + 1) / count);
+        return new Partition(index, count, start, end - start, population);
+    }
+
+    public static final class Partition {
+        private final int index;
+        private final int count;
+        private final int start;
+        private final int size;
+        private final int population;
+
+        private Partition(int index, int count, int start, int size, int population) {
+            this.index = index;
+            this.count = count;
+            this.start = start;
+            this.size = size;
+            this.population = population;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * First device number of the partition.
+         */
+        public int getStart() {
+            return start;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Part of a global rate the partition should make, the quotas of all the partitions add up to the rate.
+         */
+        public double quota(double rate) {
+            return rate * size / population;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Worker %d of %d owns devices %d to %d", index, count, start, start + size - 1);
+        }
+    }
+}
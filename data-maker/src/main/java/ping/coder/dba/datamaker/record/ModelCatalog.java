@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import net.datafaker.providers.base.BaseFaker;
+import net.datafaker.transformations.Field;
+import net.datafaker.transformations.JsonTransformer;
+import net.datafaker.transformations.Schema;
+import ping.coder.dba.datamaker.model.DeviceModel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * @Description Catalog of the device models of a version. Every model is made from the catalog version
+ * and its own index only, so the models are the same on every worker and every restart whatever the
+ * number of models, and they are made in parallel. A catalog can be saved into a file shared by the
+ * workers, {@code models-{version}-{count}.catalog}: the first worker writes it, the others map it into
+ * memory and decode it instead of running datafaker.
+ * <p>
+ * The file is a header of magic, format, version and model count, the five fields of every model as
+ * UTF-8 strings each after its length, and the CRC32 of all of that.
+ * @Author Ping
+ * @Date 2026/10/18 18:05
+ **/
+public final class ModelCatalog {
+
+    public static final String PREFIX = "models-";
+    public static final String SUFFIX = ".catalog";
+    private static final int MAGIC = 0x444d4d43;
+    private static final int FORMAT = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    private static final int CHUNK = 64;
+    private static final JsonTransformer<Object> transformer = JsonTransformer.builder().build();
+    /**
+     * Production dates of the models are in the 5 years before this instant, 2024-05-21T00:00:00Z, so the
+     * same version gives the same models on any day.
+     */
+    private static final long MODEL_DATE_ORIGIN_MILLIS = 1716249600000L;
+    private static final long MODEL_DATE_PAST_MILLIS = TimeUnit.DAYS.toMillis(365 * 5);
+    /**
+     * Production dates are written in UTC, not in the default time zone of the JVM, so workers in any
+     * time zone make the same documents.
+     */
+    private static final DateTimeFormatter MODEL_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneOffset.UTC);
+
+    private ModelCatalog() {
+    }
+
+    /**
+     * Makes the models of the version in parallel, in chunks which share a faker each.
+     */
+    public static List<DeviceModel> generate(long version, int count) {
+        if(count <= 0)
+            throw new IllegalArgumentException("The size of model should be more than zero.");
+        DeviceModel[] models = new DeviceModel[count];
+        IntStream.range(0, (count + CHUNK - 1) / CHUNK).parallel().forEach(chunk -> {
+            SplitMix64Random random = new SplitMix64Random(0);
+            BaseFaker baseFaker = new BaseFaker(random);
+            for (int i = chunk * CHUNK; i < Math.min(count, (chunk + 1) * CHUNK); i++) {
+                random.setState(SplitMix64Random.derive(version, i));
+                models[i] = createDeviceModel(baseFaker, i + 1);
+            }
+        });
+        return Arrays.asList(models);
+    }
+
+    /**
+     * Reads the models of the version from the catalog in the directory, or makes them and saves the
+     * catalog when there is none yet. Workers racing to save the same catalog write the same bytes, the
+     * last rename wins.
+     */
+    public static List<DeviceModel> load(Path directory, long version, int count) throws IOException {
+        Path path = path(directory, version, count);
+        try {
+            return read(path, version, count);
+        } catch (NoSuchFileException e) {
+            List<DeviceModel> models = generate(version, count);
+            Files.createDirectories(directory);
+            write(path, version, models);
+            return models;
+        }
+    }
+
+    public static Path path(Path directory, long version, int count) {
+        return directory.resolve(PREFIX + Long.toUnsignedString(version, 16) + "-" + count + SUFFIX);
+    }
+
+    /**
+     * Writes the catalog into a temporary file renamed to the path, so readers never see half a catalog.
+     */
+    public static void write(Path path, long version, List<DeviceModel> models) throws IOException {
+        List<byte[]> fields = new ArrayList<>(models.size() * 5);
+        int size = HEADER_BYTES;
+        for (DeviceModel model : models) {
+            for (String field : new String[]{model.getDeviceModelId(), model.getDeviceType(), model.getVersion(),
+                    model.getDeviceData(), model.getSensorMetadata()}) {
+                byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                fields.add(bytes);
+                size += 4 + bytes.length;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size + 8);
+        buffer.putInt(MAGIC).putInt(FORMAT).putLong(version).putInt(models.size());
+        for (byte[] field : fields) {
+            buffer.putInt(field.length).put(field);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, size);
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+        Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Maps the catalog into memory and decodes its models.
+     * @throws IOException if the file isn't a catalog of the version with the count of models, or is corrupted.
+     */
+    public static List<DeviceModel> read(Path path, long version, int count) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < HEADER_BYTES + 8 || size > Integer.MAX_VALUE)
+                throw new IOException("Not a model catalog: "+path);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        int end = buffer.capacity() - 8;
+        CRC32 crc = new CRC32();
+        ByteBuffer body = buffer.duplicate();
+        body.limit(end);
+        crc.update(body);
+        if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT)
+            throw new IOException("Not a model catalog: "+path);
+        if(crc.getValue() != buffer.getLong(end))
+            throw new IOException("Model catalog is corrupted: "+path);
+        long fileVersion = buffer.getLong();
+        int fileCount = buffer.getInt();
+        if(fileVersion != version || fileCount != count)
+            throw new IOException(String.format("Model catalog %s has %d models of version %d, expected %d models of version %d",
+                    path, fileCount, fileVersion, count, version));
+        List<DeviceModel> models = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            DeviceModel model = new DeviceModel();
+            model.setIndex(i);
+            model.setDeviceModelId(readString(buffer));
+            model.setDeviceType(readString(buffer));
+            model.setVersion(readString(buffer));
+            model.setDeviceData(readString(buffer));
+            model.setSensorMetadata(readString(buffer));
+            models.add(model);
+        }
+        if(buffer.position() != end)
+            throw new IOException("Model catalog is corrupted: "+path);
+        return models;
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if(length < 0 || length > buffer.remaining())
+            throw new IOException("Model catalog is corrupted, a field has "+length+" bytes");
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static DeviceModel createDeviceModel(BaseFaker baseFaker, int index){
+        DeviceModel model = new DeviceModel();
+        model.setIndex(index - 1);
+        model.setDeviceModelId(String.format(DeviceRecordFactory.MODEL_FORMAT, index));
+        model.setDeviceType(baseFaker.brand().car());
+        model.setVersion(buildVersion(baseFaker));
+        model.setDeviceData(transformer.generate(dataSchema(baseFaker),1));
+        model.setSensorMetadata(transformer.generate(metadataSchema(baseFaker), 1));
+        return model;
+    }
+
+    private static String buildVersion(BaseFaker baseFaker) {
+        return String.format(DeviceRecordFactory.VERSION_FORMAT, baseFaker.random().nextInt(2), baseFaker.random().nextInt(2), baseFaker.random().nextInt(6));
+    }
+
+    private static Schema<Object, Object> dataSchema(BaseFaker baseFaker){
+        return Schema.of(
+                Field.field("latitude", () -> baseFaker.random().nextDouble(-90, 90)),
+                Field.field("longitude", () -> baseFaker.random().nextDouble(-180, 180)),
+                Field.field("production_date", () -> MODEL_DATE_FORMAT.format(Instant.ofEpochMilli(
+                        MODEL_DATE_ORIGIN_MILLIS - 1 - baseFaker.random().nextLong(MODEL_DATE_PAST_MILLIS)))),
+                Field.field("floor", () -> baseFaker.random().nextInt(32) + 1),
+                Field.field("room", () -> baseFaker.funnyName().name())
+        );
+    }
+
+    private static Schema<Object, ?> metadataSchema(BaseFaker baseFaker){
+        return Schema.of(
+                Field.field("signal", () -> baseFaker.random().nextInt(1)),
+                Field.compositeField("status", new Field[]{
+                        Field.field("battery", () -> baseFaker.random().nextDouble(0,1)),
+                        Field.field("network", () -> baseFaker.random().nextDouble(0,1))
+                })
+        );
+    }
+}
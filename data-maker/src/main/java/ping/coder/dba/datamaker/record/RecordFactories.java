@@ -16,6 +16,12 @@
 
 package ping.coder.dba.datamaker.record;
 
+import ping.coder.dba.datamaker.DataMaker;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ServiceLoader;
+
 /**
  * @Description @TODO
  * @Author Ping
@@ -26,4 +32,33 @@ public abstract class RecordFactories {
     public static DeviceRecordFactory.DeviceRecordFactoryBuilder newDeviceBuilder(){
         return DeviceRecordFactory.builder();
     }
+
+    /**
+     * Makes the factory of a name: the name of a {@link RecordFactoryProvider} found by the service loader,
+     * or the class name of a provider, or of a record factory with a public constructor taking the options
+     * or nothing.
+     */
+    public static RecordFactory<?> load(String name, DataMaker.Options options){
+        try {
+            for (RecordFactoryProvider provider : ServiceLoader.load(RecordFactoryProvider.class)) {
+                if(name.equals(provider.getName()))
+                    return provider.create(options);
+            }
+            Class<?> type = Class.forName(name);
+            if(RecordFactoryProvider.class.isAssignableFrom(type))
+                return ((RecordFactoryProvider) type.getConstructor().newInstance()).create(options);
+            if(!RecordFactory.class.isAssignableFrom(type))
+                throw new IllegalArgumentException(String.format("Error record factory class name is: %s, it isn't a %s or a %s",
+                        name, RecordFactory.class.getSimpleName(), RecordFactoryProvider.class.getSimpleName()));
+            try {
+                return (RecordFactory<?>) type.getConstructor(DataMaker.Options.class).newInstance(options);
+            } catch (NoSuchMethodException e) {
+                return (RecordFactory<?>) type.getConstructor().newInstance();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException(String.format("Error record factory class name is: %s", name), e);
+        }
+    }
 }
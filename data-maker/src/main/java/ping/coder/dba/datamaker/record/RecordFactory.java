@@ -24,4 +24,18 @@ package ping.coder.dba.datamaker.record;
 public interface RecordFactory<T> {
 
     T newRecord();
+
+    /**
+     * Creates a factory for another generating thread. It shares the immutable setup of this
+     * factory but owns its random state, so both can make records concurrently.
+     */
+    RecordFactory<T> fork();
+
+    /**
+     * Creates the factory of a generating thread by its index. A factory with a seeded random makes
+     * the same records for the same thread index in every run, the others just fork.
+     */
+    default RecordFactory<T> fork(int threadIndex) {
+        return fork();
+    }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import ping.coder.dba.datamaker.DataMaker;
+
+import java.io.IOException;
+
+/**
+ * @Description Makes the record factory of a name, so a new kind of record is added by a jar with its provider
+ * listed in META-INF/services/ping.coder.dba.datamaker.record.RecordFactoryProvider, without changing the
+ * data maker. See {@link RecordFactories#load(String, DataMaker.Options)}.
+ * @Author Ping
+ * @Date 2026/10/19 1:40
+ **/
+public interface RecordFactoryProvider {
+
+    /**
+     * The name the factory is chosen by in DATA_MAKER.RECORD_FACTORY.
+     */
+    String getName();
+
+    RecordFactory<?> create(DataMaker.Options options) throws IOException;
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @Description A declarative schema of records, compiled once into generators of primitive values, so
+ * making a record runs no reflection and no expression lookup. The schema is a JSON document with a list
+ * of fields, each with a name, a type and the settings of its type:
+ * <ul>
+ * <li>{@code long} or {@code int}: from min to max inclusive, by an optional {@link Distribution} spec.</li>
+ * <li>{@code double}: from min to max, rounded to precision decimals if it's set.</li>
+ * <li>{@code boolean}: true with a probability, 0.5 by default.</li>
+ * <li>{@code string}: prefix followed by a number from min to max, by an optional distribution.</li>
+ * <li>{@code enum}: one of the values, by an optional distribution.</li>
+ * <li>{@code timestamp}: epoch milliseconds of the wall clock.</li>
+ * <li>{@code sequence}: from start, one more for every record of a factory, unique over the forks and the
+ * workers. The sequence is taken once per record, every sequence field of it, nested ones too, adds its
+ * start to the same value.</li>
+ * <li>{@code object}: a nested record of its own fields.</li>
+ * </ul>
+ * Long, boolean, timestamp and sequence values are kept in a long array of the record, double values in
+ * a double array and strings and nested records in an object array, every generator fills its own slot.
+ * @Author Ping
+ * @Date 2026/10/19 1:10
+ **/
+public final class RecordSchema {
+
+    static final byte LONG = 0;
+    static final byte DOUBLE = 1;
+    static final byte BOOLEAN = 2;
+    static final byte REFERENCE = 3;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    /**
+     * Strings of a range up to this size are made once by the compiler.
+     */
+    private static final int MAX_STRING_TABLE = 1 << 16;
+
+    final SerializedString[] names;
+    final byte[] kinds;
+    final int[] slots;
+    private final List<String> fieldNames;
+    private final LongField[] longFields;
+    private final DoubleField[] doubleFields;
+    private final ReferenceField[] referenceFields;
+
+    private RecordSchema(String path, JsonNode fields) {
+        if(fields == null || !fields.isArray() || fields.size() == 0)
+            throw new IllegalArgumentException("Schema "+path+" should have a list of fields.");
+        int size = fields.size();
+        this.names = new SerializedString[size];
+        this.kinds = new byte[size];
+        this.slots = new int[size];
+        List<String> fieldNames = new ArrayList<>(size);
+        List<LongField> longFields = new ArrayList<>();
+        List<DoubleField> doubleFields = new ArrayList<>();
+        List<ReferenceField> referenceFields = new ArrayList<>();
+        Set<String> unique = new HashSet<>();
+        Iterator<JsonNode> iterator = fields.elements();
+        for (int i = 0; i < size; i++) {
+            JsonNode field = iterator.next();
+            String name = field.path("name").asText("");
+            if(name.isEmpty() || !unique.add(name))
+                throw new IllegalArgumentException("Field "+i+" of schema "+path+" should have a unique name, it was '"+name+"'");
+            String fieldPath = path.isEmpty() ? name : path + "." + name;
+            names[i] = new SerializedString(name);
+            fieldNames.add(name);
+            String type = field.path("type").asText("");
+            switch (type){
+                case "long":
+                case "int":
+                    kinds[i] = LONG;
+                    slots[i] = longFields.size();
+                    longFields.add(range(fieldPath, field));
+                    break;
+                case "timestamp":
+                    kinds[i] = LONG;
+                    slots[i] = longFields.size();
+                    longFields.add(new Timestamp());
+                    break;
+                case "sequence":
+                    kinds[i] = LONG;
+                    slots[i] = longFields.size();
+                    longFields.add(new Sequence(field.path("start").asLong(0)));
+                    break;
+                case "boolean":
+                    kinds[i] = BOOLEAN;
+                    slots[i] = longFields.size();
+                    longFields.add(new Flag(fieldPath, field.path("probability").asDouble(0.5)));
+                    break;
+                case "double":
+                    kinds[i] = DOUBLE;
+                    slots[i] = doubleFields.size();
+                    doubleFields.add(new Uniform(fieldPath, field));
+                    break;
+                case "string":
+                    kinds[i] = REFERENCE;
+                    slots[i] = referenceFields.size();
+                    referenceFields.add(text(fieldPath, field));
+                    break;
+                case "enum":
+                    kinds[i] = REFERENCE;
+                    slots[i] = referenceFields.size();
+                    referenceFields.add(choice(fieldPath, field));
+                    break;
+                case "object":
+                    kinds[i] = REFERENCE;
+                    slots[i] = referenceFields.size();
+                    referenceFields.add(new Nested(new RecordSchema(fieldPath, field.get("fields"))));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Field "+fieldPath+" has an unknown type '"+type
+                            +"', it should be long, int, double, boolean, string, enum, timestamp, sequence or object");
+            }
+        }
+        this.fieldNames = Collections.unmodifiableList(fieldNames);
+        this.longFields = longFields.toArray(new LongField[0]);
+        this.doubleFields = doubleFields.toArray(new DoubleField[0]);
+        this.referenceFields = referenceFields.toArray(new ReferenceField[0]);
+    }
+
+    public static RecordSchema parse(String json) {
+        JsonNode root;
+        try {
+            root = MAPPER.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Schema isn't a JSON document: "+e.getMessage(), e);
+        }
+        return new RecordSchema("", root.get("fields"));
+    }
+
+    public static RecordSchema read(Path path) throws IOException {
+        return parse(new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Names of the fields, in the order they are written.
+     */
+    public List<String> getFieldNames() {
+        return fieldNames;
+    }
+
+    SchemaRecord generate(SplitMix64Random random, long sequence) {
+        long[] longs = new long[longFields.length];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = longFields[i].next(random, sequence);
+        }
+        double[] doubles = new double[doubleFields.length];
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = doubleFields[i].next(random);
+        }
+        Object[] references = new Object[referenceFields.length];
+        for (int i = 0; i < references.length; i++) {
+            references[i] = referenceFields[i].next(random, sequence);
+        }
+        return new SchemaRecord(this, longs, doubles, references);
+    }
+
+    private static Distribution distribution(String path, JsonNode field, long size) {
+        if(size <= 0 || size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Field "+path+" should have from 1 to 2^31-1 values, it had "+size);
+        try {
+            Distribution distribution = Distribution.parse(field.path("distribution").asText(Distribution.UNIFORM), (int) size);
+            if(distribution.size() != size)
+                throw new IllegalArgumentException("There are "+distribution.size()+" weights for "+size+" values.");
+            return distribution;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Field "+path+": "+e.getMessage(), e);
+        }
+    }
+
+    private static LongField range(String path, JsonNode field) {
+        long min = field.path("min").asLong(0);
+        long max = field.path("max").asLong(min + 99);
+        return new Range(min, distribution(path, field, max - min + 1));
+    }
+
+    private static ReferenceField text(String path, JsonNode field) {
+        String prefix = field.path("prefix").asText("");
+        long min = field.path("min").asLong(0);
+        long max = field.path("max").asLong(min + 99);
+        Distribution distribution = distribution(path, field, max - min + 1);
+        if(distribution.size() <= MAX_STRING_TABLE){
+            String[] values = new String[distribution.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = prefix + (min + i);
+            }
+            return new Choice(values, distribution);
+        }
+        return new Text(prefix, min, distribution);
+    }
+
+    private static ReferenceField choice(String path, JsonNode field) {
+        JsonNode nodes = field.get("values");
+        if(nodes == null || !nodes.isArray() || nodes.size() == 0)
+            throw new IllegalArgumentException("Field "+path+" should have a list of values.");
+        String[] values = new String[nodes.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = nodes.get(i).asText();
+        }
+        return new Choice(values, distribution(path, field, values.length));
+    }
+
+    abstract static class LongField {
+        abstract long next(SplitMix64Random random, long sequence);
+    }
+
+    abstract static class DoubleField {
+        abstract double next(SplitMix64Random random);
+    }
+
+    abstract static class ReferenceField {
+        abstract Object next(SplitMix64Random random, long sequence);
+    }
+
+    private static final class Range extends LongField {
+        private final long min;
+        private final Distribution distribution;
+
+        private Range(long min, Distribution distribution) {
+            this.min = min;
+            this.distribution = distribution;
+        }
+
+        @Override
+        long next(SplitMix64Random random, long sequence) {
+            return min + distribution.sample(random);
+        }
+    }
+
+    private static final class Timestamp extends LongField {
+        @Override
+        long next(SplitMix64Random random, long sequence) {
+            return System.currentTimeMillis();
+        }
+    }
+
+    private static final class Sequence extends LongField {
+        private final long start;
+
+        private Sequence(long start) {
+            this.start = start;
+        }
+
+        @Override
+        long next(SplitMix64Random random, long sequence) {
+            return start + sequence;
+        }
+    }
+
+    private static final class Flag extends LongField {
+        private final double probability;
+
+        private Flag(String path, double probability) {
+            if(!(probability >= 0 && probability <= 1))
+                throw new IllegalArgumentException("Field "+path+" should have a probability from 0 to 1, it was "+probability);
+            this.probability = probability;
+        }
+
+        @Override
+        long next(SplitMix64Random random, long sequence) {
+            return random.nextDouble() < probability ? 1 : 0;
+        }
+    }
+
+    private static final class Uniform extends DoubleField {
+        private final double min;
+        private final double width;
+        private final double scale;
+
+        private Uniform(String path, JsonNode field) {
+            this.min = field.path("min").asDouble(0);
+            double max = field.path("max").asDouble(1);
+            if(!(max >= min))
+                throw new IllegalArgumentException("Field "+path+" should have a max from its min, it was "+max);
+            this.width = max - min;
+            this.scale = field.has("precision") ? Math.pow(10, field.get("precision").asInt()) : 0;
+        }
+
+        @Override
+        double next(SplitMix64Random random) {
+            double value = min + random.nextDouble() * width;
+            return scale > 0 ? Math.round(value * scale) / scale : value;
+        }
+    }
+
+    private static final class Choice extends ReferenceField {
+        private final String[] values;
+        private final Distribution distribution;
+
+        private Choice(String[] values, Distribution distribution) {
+            this.values = values;
+            this.distribution = distribution;
+        }
+
+        @Override
+        Object next(SplitMix64Random random, long sequence) {
+            return values[distribution.sample(random)];
+        }
+    }
+
+    private static final class Text extends ReferenceField {
+        private final String prefix;
+        private final long min;
+        private final Distribution distribution;
+
+        private Text(String prefix, long min, Distribution distribution) {
+            this.prefix = prefix;
+            this.min = min;
+            this.distribution = distribution;
+        }
+
+        @Override
+        Object next(SplitMix64Random random, long sequence) {
+            return prefix + (min + distribution.sample(random));
+        }
+    }
+
+    private static final class Nested extends ReferenceField {
+        private final RecordSchema schema;
+
+        private Nested(RecordSchema schema) {
+            this.schema = schema;
+        }
+
+        @Override
+        Object next(SplitMix64Random random, long sequence) {
+            return schema.generate(random, sequence);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+
+/**
+ * @Description A record made by a {@link SchemaRecordFactory}, its values stay in the primitive arrays of its
+ * {@link RecordSchema} and are written straight from there by the JSON or CBOR generator of the serializer.
+ * @Author Ping
+ * @Date 2026/10/19 1:30
+ **/
+public final class SchemaRecord extends JsonSerializable.Base {
+
+    private final RecordSchema schema;
+    private final long[] longs;
+    private final double[] doubles;
+    private final Object[] references;
+
+    SchemaRecord(RecordSchema schema, long[] longs, double[] doubles, Object[] references) {
+        this.schema = schema;
+        this.longs = longs;
+        this.doubles = doubles;
+        this.references = references;
+    }
+
+    public RecordSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * The value of a field, boxed: a Long, Double, Boolean, String or nested SchemaRecord.
+     */
+    public Object get(String name) {
+        int index = schema.getFieldNames().indexOf(name);
+        if(index < 0)
+            throw new IllegalArgumentException("Schema has no field "+name);
+        int slot = schema.slots[index];
+        switch (schema.kinds[index]){
+            case RecordSchema.LONG:
+                return longs[slot];
+            case RecordSchema.DOUBLE:
+                return doubles[slot];
+            case RecordSchema.BOOLEAN:
+                return longs[slot] != 0;
+            default:
+                return references[slot];
+        }
+    }
+
+    @Override
+    public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject(this, schema.names.length);
+        for (int i = 0; i < schema.names.length; i++) {
+            generator.writeFieldName(schema.names[i]);
+            int slot = schema.slots[i];
+            switch (schema.kinds[i]){
+                case RecordSchema.LONG:
+                    generator.writeNumber(longs[slot]);
+                    break;
+                case RecordSchema.DOUBLE:
+                    generator.writeNumber(doubles[slot]);
+                    break;
+                case RecordSchema.BOOLEAN:
+                    generator.writeBoolean(longs[slot] != 0);
+                    break;
+                default:
+                    Object reference = references[slot];
+                    if(reference instanceof SchemaRecord)
+                        ((SchemaRecord) reference).serialize(generator, provider);
+                    else
+                        generator.writeString((String) reference);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Schema records carry no type ids, a typed serialization writes them as plain objects.
+     */
+    @Override
+    public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer) throws IOException {
+        serialize(generator, provider);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < schema.names.length; i++) {
+            String name = schema.getFieldNames().get(i);
+            builder.append(i == 0 ? "" : ", ").append(name).append('=').append(get(name));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import ping.coder.dba.datamaker.DataMaker;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Description Makes records of any shape from a {@link RecordSchema}. The schema is compiled once and shared
+ * with the forks, every fork owns its random and its sequence. Like the device records, the random stream of
+ * a fork is derived from the seed, the worker index and the thread index, so the workers of a seeded run make
+ * different records and every worker makes the same ones again.
+ * @Author Ping
+ * @Date 2026/10/19 1:50
+ **/
+public class SchemaRecordFactory implements RecordFactory<SchemaRecord> {
+
+    public static final String NAME = "schema";
+    /**
+     * Bits of the sequence of a fork below its thread index.
+     */
+    private static final int SEQUENCE_BITS = 40;
+    /**
+     * Bits of the thread index below the worker index.
+     */
+    private static final int THREAD_BITS = 12;
+    /**
+     * Bits of the worker index, the sign bit is left out.
+     */
+    private static final int WORKER_BITS = 63 - SEQUENCE_BITS - THREAD_BITS;
+    public static final int MAX_WORKER_NUMBER = 1 << WORKER_BITS;
+
+    private final RecordSchema schema;
+    private final long seed;
+    private final int workerIndex;
+    private final int threadIndex;
+    private final AtomicInteger forks;
+    private final SplitMix64Random random;
+    private long sequence;
+
+    private SchemaRecordFactory(RecordSchema schema, long seed, int workerIndex, int threadIndex, AtomicInteger forks) {
+        this.schema = schema;
+        this.seed = seed;
+        this.workerIndex = workerIndex;
+        this.threadIndex = threadIndex;
+        this.forks = forks;
+        this.random = new SplitMix64Random(SplitMix64Random.derive(seed, workerIndex, threadIndex));
+    }
+
+    @Override
+    public SchemaRecord newRecord() {
+        return schema.generate(random, nextSequence());
+    }
+
+    /**
+     * The sequences of the workers and their forks don't overlap: the thread index is above the first 40 bits
+     * and the worker index above the next 12.
+     */
+    private long nextSequence() {
+        return ((long) workerIndex << (SEQUENCE_BITS + THREAD_BITS))
+                + ((long) (threadIndex & ((1 << THREAD_BITS) - 1)) << SEQUENCE_BITS) + sequence++;
+    }
+
+    @Override
+    public SchemaRecordFactory fork() {
+        return fork(forks.incrementAndGet());
+    }
+
+    @Override
+    public SchemaRecordFactory fork(int threadIndex) {
+        return new SchemaRecordFactory(schema, seed, workerIndex, threadIndex, forks);
+    }
+
+    public RecordSchema getSchema() {
+        return schema;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getWorkerIndex() {
+        return workerIndex;
+    }
+
+    public static SchemaRecordFactoryBuilder builder(){
+        return new SchemaRecordFactoryBuilder();
+    }
+
+    public static class SchemaRecordFactoryBuilder {
+        private RecordSchema schema;
+        private Long seed;
+        private int workerIndex;
+        private SchemaRecordFactoryBuilder(){
+        }
+        public SchemaRecordFactoryBuilder schema(RecordSchema schema){
+            this.schema = schema;
+            return this;
+        }
+        /**
+         * If it's not set, a random seed is taken, {@link SchemaRecordFactory#getSeed()} tells which one.
+         */
+        public SchemaRecordFactoryBuilder seed(long seed){
+            this.seed = seed;
+            return this;
+        }
+        /**
+         * Index of the worker, from 0 to {@link #MAX_WORKER_NUMBER} exclusive, 0 by default.
+         */
+        public SchemaRecordFactoryBuilder workerIndex(int workerIndex){
+            this.workerIndex = workerIndex;
+            return this;
+        }
+        public SchemaRecordFactory build(){
+            if(schema == null)
+                throw new IllegalArgumentException("Schema is needed.");
+            if(workerIndex < 0 || workerIndex >= MAX_WORKER_NUMBER)
+                throw new IllegalArgumentException("Worker index should be from 0 to "+(MAX_WORKER_NUMBER - 1)+", it was "+workerIndex);
+            if(seed == null)
+                seed(ThreadLocalRandom.current().nextLong());
+            return new SchemaRecordFactory(schema, seed, workerIndex, 0, new AtomicInteger());
+        }
+    }
+
+    /**
+     * Chosen by DATA_MAKER.RECORD_FACTORY=schema, the schema is read from DATA_MAKER.SCHEMA_FILE. Schema
+     * records are written as JSON or CBOR only, the Avro and Protobuf serializers know the device records.
+     */
+    public static class Provider implements RecordFactoryProvider {
+        @Override
+        public String getName() {
+            return NAME;
+        }
+
+        @Override
+        public RecordFactory<?> create(DataMaker.Options options) throws IOException {
+            if(options.getSchemaFile().isEmpty())
+                throw new IllegalArgumentException("Schema file is empty.");
+            if(RecordSerializers.AVRO.equals(options.getFormat()) || RecordSerializers.PROTOBUF.equals(options.getFormat()))
+                throw new IllegalArgumentException(String.format("Error record format is: %s, schema records should be %s or %s",
+                        options.getFormat(), RecordSerializers.JSON, RecordSerializers.CBOR));
+            SchemaRecordFactoryBuilder builder = builder().schema(RecordSchema.read(Paths.get(options.getSchemaFile())))
+                    .workerIndex(options.getWorkerIndex());
+            if(options.getSeed() != 0)
+                builder.seed(options.getSeed());
+            SchemaRecordFactory factory = builder.build();
+            System.out.println("Records of " + options.getSchemaFile() + " are made with seed " + factory.getSeed());
+            return factory;
+        }
+    }
+}
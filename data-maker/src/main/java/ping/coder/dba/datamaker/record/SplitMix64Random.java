@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import java.util.Random;
+
+/**
+ * @Description SplitMix64 generator: the state is one long advanced by a constant, and every value is a
+ * mix of the state, so it's cheaper than {@link Random} which updates its seed with a CAS, and its
+ * state can be read and restored. It extends {@link Random} to be handed to datafaker, but like
+ * {@link java.util.SplittableRandom} it's not thread-safe: every thread owns one, derived from a seed
+ * and its indexes by {@link #derive(long, long...)}.
+ * @Author Ping
+ * @Date 2026/10/18 19:40
+ **/
+public class SplitMix64Random extends Random {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private long state;
+
+    public SplitMix64Random(long seed) {
+        super(seed);
+        this.state = seed;
+    }
+
+    /**
+     * Seed of an independent stream for the keys, e.g. the worker index and the thread index. The same
+     * seed and keys always give the same stream, different keys give streams which don't overlap in practice.
+     */
+    public static long derive(long seed, long... keys) {
+        long derived = mix64(seed);
+        for (long key : keys)
+            derived = mix64(derived + GOLDEN_GAMMA * (key + 1));
+        return derived;
+    }
+
+    /**
+     * David Stafford's variant 13 of the MurmurHash3 finalizer, as in {@link java.util.SplittableRandom}.
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * The state to restore with {@link #setState(long)}, to replay the stream from this point.
+     */
+    public long getState() {
+        return state;
+    }
+
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Called once by the constructor of {@link Random}, the state is set by the constructor of this class.
+     */
+    @Override
+    public synchronized void setSeed(long seed) {
+        this.state = seed;
+    }
+
+    @Override
+    public long nextLong() {
+        return mix64(state += GOLDEN_GAMMA);
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * Lemire's multiply and shift, a rejection only happens for bounds close to 2^32.
+     */
+    @Override
+    public int nextInt(int bound) {
+        if(bound <= 0)
+            throw new IllegalArgumentException("bound must be positive");
+        long product = (nextLong() >>> 32) * bound;
+        int low = (int) product;
+        if(Integer.compareUnsigned(low, bound) < 0){
+            int threshold = Integer.remainderUnsigned(-bound, bound);
+            while (Integer.compareUnsigned(low, threshold) < 0){
+                product = (nextLong() >>> 32) * bound;
+                low = (int) product;
+            }
+        }
+        return (int) (product >>> 32);
+    }
+
+    @Override
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return nextLong() < 0;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.pubsub.LocalPublisher;
+import ping.coder.dba.datamaker.pubsub.PublisherWriter;
+import ping.coder.dba.datamaker.pubsub.RetryPolicy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 20:40
+ **/
+public class CloudRunMakerTest {
+
+    @Test
+    void testBurst() throws Exception {
+        LocalPublisher publisher = new LocalPublisher(0, 0, 0);
+        PublisherWriter writer = new PublisherWriter("local", "local", (projectId, topicId) -> publisher,
+                new JsonRecordSerializer(), Metrics.global(), RetryPolicy.NONE);
+        DataMaker.Options options = new DataMaker.Options();
+        options.setModelNumber(10);
+        options.setDeviceNumber(100);
+        options.setThreadNumber(3);
+        CloudRunMaker maker = new CloudRunMaker(null, writer, options, 0);
+        maker.start();
+        try {
+            String base = "http://localhost:" + maker.getPort();
+            JsonNode burst = new ObjectMapper().readTree(get(base + "/burst?count=5000&threads=2", 200));
+            Assertions.assertEquals(5000, burst.get("records").asLong());
+            Assertions.assertEquals(2, burst.get("threads").asInt());
+            Assertions.assertEquals(5000, publisher.getPublished());
+
+            burst = new ObjectMapper().readTree(get(base + "/burst?rate=200&duration=0.5", 200));
+            Assertions.assertEquals(100, burst.get("records").asLong(), 30);
+            Assertions.assertEquals(3, burst.get("threads").asInt());
+
+            Assertions.assertTrue(get(base + "/burst?rate=10", 400).contains("count or a duration"));
+            Assertions.assertTrue(get(base + "/burst?count=x", 400).contains("x"));
+            Assertions.assertTrue(get(base + "/burst?count=10&threads=100000", 400).contains("100000"));
+
+            // a running burst holds its threads, a concurrent one can't take more than are left
+            int max = maker.getMaxThreadNumber();
+            CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return get(base + "/burst?rate=100&duration=2&threads=" + max, 200);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (maker.getAvailableThreadNumber() > 0 && System.nanoTime() < deadline){
+                Thread.sleep(10);
+            }
+            Assertions.assertTrue(get(base + "/burst?count=10&threads=1", 429).contains("left by the running bursts"));
+            Assertions.assertEquals(max, new ObjectMapper().readTree(running.get(10, TimeUnit.SECONDS)).get("threads").asInt());
+            Assertions.assertEquals(max, maker.getAvailableThreadNumber());
+            Assertions.assertEquals(10, new ObjectMapper().readTree(get(base + "/burst?count=10&threads=1", 200)).get("records").asLong());
+            Assertions.assertTrue(get(base + "/metrics", 200).contains("data_maker_records_published_total"));
+        } finally {
+            maker.stop();
+        }
+    }
+
+    private static String get(String url, int status) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        Assertions.assertEquals(status, connection.getResponseCode());
+        try (InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            byte[] buffer = new byte[8192];
+            StringBuilder body = new StringBuilder();
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                body.append(new String(buffer, 0, read, "UTF-8"));
+            }
+            return body.toString();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 20:05
+ **/
+public class FileCoordinatorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testRebalance() throws Exception {
+        int[] first = new int[2];
+        int[] second = new int[2];
+        FileCoordinator a = new FileCoordinator(directory, "a", 300, (index, count) -> { first[0] = index; first[1] = count; });
+        FileCoordinator b = new FileCoordinator(directory, "b", 300, (index, count) -> { second[0] = index; second[1] = count; });
+        a.start();
+        Assertions.assertArrayEquals(new int[]{0, 1}, new int[]{a.getIndex(), a.getCount()});
+        b.start();
+        Assertions.assertArrayEquals(new int[]{1, 2}, new int[]{b.getIndex(), b.getCount()});
+        Assertions.assertEquals(Arrays.asList("a", "b"), a.members());
+        awaitCount(a, 2);
+        Assertions.assertArrayEquals(new int[]{0, 2}, first);
+
+        a.close();
+        Assertions.assertFalse(Files.exists(directory.resolve("a" + FileCoordinator.SUFFIX)));
+        awaitCount(b, 1);
+        Assertions.assertArrayEquals(new int[]{0, 1}, second);
+        b.close();
+    }
+
+    @Test
+    void testSeededMember() throws Exception {
+        DataMaker.Options options = new DataMaker.Options();
+        options.setModelNumber(5);
+        options.setDeviceNumber(100);
+        options.setSeed(42);
+        options.setCoordinatorDirectory(directory.toString());
+        options.setWorkerNumber(1);
+        options.setMemberId("worker-a");
+        DeviceRecord first = (DeviceRecord) new CloudRunMaker(null, new BlackholeWriter(), options, 0).recordFactory.newRecord();
+        DeviceRecord again = (DeviceRecord) new CloudRunMaker(null, new BlackholeWriter(), options, 0).recordFactory.newRecord();
+        Assertions.assertEquals(first.getDeviceId(), again.getDeviceId());
+        Assertions.assertEquals(first.getSensorData(), again.getSensorData());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> options.setMemberId(null));
+    }
+
+    private static void awaitCount(FileCoordinator coordinator, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coordinator.getCount() != count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals(count, coordinator.getCount());
+    }
+}
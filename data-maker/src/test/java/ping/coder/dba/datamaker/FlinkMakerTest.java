@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker;
+
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
+import org.apache.flink.api.common.eventtime.Watermark;
+import org.apache.flink.api.connector.source.ReaderOutput;
+import org.apache.flink.api.connector.source.SourceOutput;
+import org.apache.flink.core.io.InputStatus;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.sink.DiscardingSink;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 21:10
+ **/
+public class FlinkMakerTest {
+
+    @Test
+    void testRestore() throws Exception {
+        FlinkMaker maker = FlinkMaker.builder().seed(9).models(3).deviceNumber(100).recordsPerSplit(200).build();
+        List<DeviceRecord> expected = run(maker, Collections.singletonList(new FlinkMaker.Split(1, 2, 0, 0)), Long.MAX_VALUE, null);
+        Assertions.assertEquals(200, expected.size());
+        for (DeviceRecord record : expected) {
+            int number = deviceNumber(record);
+            Assertions.assertTrue(number >= 50 && number < 100, record.getDeviceId());
+        }
+
+        List<FlinkMaker.Split> snapshot = new ArrayList<>();
+        List<DeviceRecord> records = run(maker, Collections.singletonList(new FlinkMaker.Split(1, 2, 0, 0)), 120, snapshot);
+        Assertions.assertEquals(120, snapshot.get(0).getSequence());
+        FlinkMaker.SplitSerializer serializer = FlinkMaker.SplitSerializer.INSTANCE;
+        FlinkMaker.Split restored = serializer.deserialize(serializer.getVersion(), serializer.serialize(snapshot.get(0)));
+        records.addAll(run(maker, Collections.singletonList(restored), Long.MAX_VALUE, null));
+        Assertions.assertEquals(200, records.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assertions.assertEquals(expected.get(i).getDeviceId(), records.get(i).getDeviceId());
+            Assertions.assertEquals(expected.get(i).getSensorData(), records.get(i).getSensorData());
+        }
+    }
+
+    /**
+     * After scaling down, one subtask gets the splits of two and goes on with both partitions.
+     */
+    @Test
+    void testRescale() throws Exception {
+        FlinkMaker maker = FlinkMaker.builder().seed(9).models(3).deviceNumber(100).recordsPerSplit(200).build();
+        List<FlinkMaker.Split> snapshot = new ArrayList<>();
+        run(maker, Collections.singletonList(new FlinkMaker.Split(0, 2, 0, 0)), 50, snapshot);
+        run(maker, Collections.singletonList(new FlinkMaker.Split(1, 2, 0, 0)), 80, snapshot);
+        List<DeviceRecord> records = run(maker, snapshot, Long.MAX_VALUE, null);
+        Assertions.assertEquals(150 + 120, records.size());
+        List<DeviceRecord> second = run(maker, Collections.singletonList(new FlinkMaker.Split(1, 2, 0, 0)), Long.MAX_VALUE, null);
+        List<DeviceRecord> restoredSecond = new ArrayList<>();
+        for (DeviceRecord record : records) {
+            if(deviceNumber(record) >= 50)
+                restoredSecond.add(record);
+        }
+        Assertions.assertEquals(120, restoredSecond.size());
+        for (int i = 0; i < restoredSecond.size(); i++)
+            Assertions.assertEquals(second.get(80 + i).getSensorData(), restoredSecond.get(i).getSensorData());
+        FlinkMaker.SplitsSerializer serializer = FlinkMaker.SplitsSerializer.INSTANCE;
+        Assertions.assertEquals(Arrays.asList("0-of-2", "1-of-2"), Arrays.asList(
+                serializer.deserialize(1, serializer.serialize(snapshot)).stream().map(FlinkMaker.Split::splitId).toArray()));
+    }
+
+    @Test
+    void testMiniCluster() throws Exception {
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.createLocalEnvironment(2);
+        env.enableCheckpointing(100);
+        long generated = Metrics.global().getGenerated();
+        long start = System.nanoTime();
+        env.fromSource(FlinkMaker.builder().seed(3).models(2).deviceNumber(50).recordsPerSplit(200_000).build(),
+                        WatermarkStrategy.noWatermarks(), "data-maker")
+                .addSink(new DiscardingSink<>());
+        env.execute("data-maker");
+        long count = Metrics.global().getGenerated() - generated;
+        double millis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("MiniCluster made %d records in %.0f ms, %.0f rec/s%n", count, millis, count * 1000d / millis);
+        Assertions.assertEquals(400_000, count);
+    }
+
+    private static int deviceNumber(DeviceRecord record) {
+        return Integer.parseInt(record.getDeviceId().substring(record.getDeviceId().lastIndexOf('S') + 1));
+    }
+
+    /**
+     * Polls a reader of the splits until it ends or has emitted the limit, then adds its state to the snapshot.
+     */
+    private static List<DeviceRecord> run(FlinkMaker maker, List<FlinkMaker.Split> splits, long limit,
+                                          List<FlinkMaker.Split> snapshot) throws Exception {
+        List<DeviceRecord> records = new ArrayList<>();
+        FlinkMaker.Reader reader = new FlinkMaker.Reader(maker, new Metrics());
+        reader.addSplits(splits);
+        reader.notifyNoMoreSplits();
+        ReaderOutput<DeviceRecord> output = new ReaderOutput<DeviceRecord>() {
+            @Override
+            public void collect(DeviceRecord record) {
+                records.add(record);
+            }
+            @Override
+            public void collect(DeviceRecord record, long timestamp) {
+                records.add(record);
+            }
+            @Override
+            public void emitWatermark(Watermark watermark) {
+            }
+            @Override
+            public void markIdle() {
+            }
+            @Override
+            public void markActive() {
+            }
+            @Override
+            public SourceOutput<DeviceRecord> createOutputForSplit(String splitId) {
+                return this;
+            }
+            @Override
+            public void releaseOutputForSplit(String splitId) {
+            }
+        };
+        while (records.size() < limit && reader.pollNext(output) != InputStatus.END_OF_INPUT) {
+        }
+        if(snapshot != null)
+            snapshot.addAll(reader.snapshotState(1));
+        reader.close();
+        return records;
+    }
+}
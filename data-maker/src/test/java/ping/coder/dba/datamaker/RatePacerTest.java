@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 11:30
+ **/
+public class RatePacerTest {
+
+    @Test
+    void testHighRate() throws InterruptedException {
+        RatePacer pacer = new RatePacer(200_000, 200_000);
+        long start = System.nanoTime();
+        for (int i = 0; i < 100_000; i++) {
+            pacer.acquire();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(pacer);
+        Assertions.assertTrue(seconds >= 0.499, "100000 records at 200000 rec/s took "+seconds+"s");
+        Assertions.assertEquals(200_000, pacer.getAchievedRate(), 200_000 * 0.05);
+    }
+
+    @Test
+    void testFractionalRate() throws InterruptedException {
+        RatePacer pacer = new RatePacer(2.5, 1);
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            pacer.acquire();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Assertions.assertEquals(0.8, seconds, 0.05);
+        Assertions.assertEquals(2.5, pacer.getAchievedRate(), 0.05);
+    }
+
+    @Test
+    void testCatchUpWithBurst() throws InterruptedException {
+        RatePacer pacer = new RatePacer(1000, 50);
+        pacer.acquire();
+        Thread.sleep(200);
+        long start = System.nanoTime();
+        for (int i = 0; i < 50; i++) {
+            pacer.acquire();
+        }
+        // paced one by one, the 50 records would take 50ms
+        Assertions.assertTrue(System.nanoTime() - start < 40_000_000L, "burst wasn't released back to back");
+        start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            pacer.acquire();
+        }
+        Assertions.assertTrue(System.nanoTime() - start >= 80_000_000L, "records after the burst weren't paced");
+    }
+
+    @Test
+    void testSharedByThreads() throws InterruptedException {
+        RatePacer pacer = new RatePacer(10_000, 1);
+        Thread[] threads = new Thread[4];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int j = 0; j < 1000; j++) {
+                        pacer.acquire();
+                    }
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Assertions.assertEquals(4000, pacer.getAcquired());
+        Assertions.assertTrue(seconds >= 0.399, "4000 records at 10000 rec/s took "+seconds+"s");
+    }
+
+    @Test
+    void testLowRateWithBurst() {
+        for (int burst : new int[]{50_000, 100_000, Integer.MAX_VALUE}) {
+            RatePacer pacer = new RatePacer(0.001, burst);
+            long start = System.nanoTime();
+            Assertions.assertTrue(pacer.reserve() - start < 1_000_000_000L);
+            // the second slot is 1000 seconds later, not thrown out of range by the catch-up window
+            Assertions.assertEquals(1000e9, pacer.reserve() - start, 1e9, "burst " + burst);
+        }
+
+        RatePacer tiny = new RatePacer(1e-30, Integer.MAX_VALUE);
+        long start = System.nanoTime();
+        tiny.reserve();
+        Assertions.assertTrue(tiny.reserve() - start > 0);
+    }
+
+    @Test
+    void testBurstFollowsRate() {
+        RatePacer pacer = new RatePacer(10.5);
+        Assertions.assertEquals(11, pacer.getBurst());
+        pacer.setRate(2000);
+        Assertions.assertEquals(2000, pacer.getBurst());
+        pacer.setRate(0.5);
+        Assertions.assertEquals(1, pacer.getBurst());
+        RatePacer fixed = new RatePacer(10, 3);
+        fixed.setRate(2000);
+        Assertions.assertEquals(3, fixed.getBurst());
+    }
+
+    @Test
+    void testIllegalRate() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RatePacer(0, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RatePacer(Double.NaN, 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new RatePacer(10, 0));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 12:40
+ **/
+public class DeviceRecordEncoderTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testSameAsObjectMapper() throws Exception {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(100).build();
+        DeviceRecordEncoder encoder = new DeviceRecordEncoder(16);
+        for (int i = 0; i < 10000; i++) {
+            DeviceRecord record = factory.newRecord();
+            Assertions.assertArrayEquals(mapper.writeValueAsBytes(record), encoder.encode(record).toByteArray());
+        }
+    }
+
+    @Test
+    void testEscapingAndNulls() throws Exception {
+        DeviceRecord record = new DeviceRecord();
+        record.setDeviceId("D0-\"quoted\"\\back\\slash");
+        record.setDeviceType("Citroën 中文 🚗\t\n\u0001");
+        record.setTimestamp(new Date(-1234L));
+        record.setRetry(-3);
+        record.setSensorData("{\"temperature\": 1}");
+        DeviceRecordEncoder encoder = new DeviceRecordEncoder();
+        String expected = mapper.writeValueAsString(record);
+        Assertions.assertEquals(expected, new String(encoder.encode(record).toByteArray(), StandardCharsets.UTF_8));
+        Assertions.assertEquals(expected, encoder.toByteString().toStringUtf8());
+    }
+}
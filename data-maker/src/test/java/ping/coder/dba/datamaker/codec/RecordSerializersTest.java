@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import org.apache.avro.generic.GenericDatumReader;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.io.DecoderFactory;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.model.DeviceModel;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 14:02
+ **/
+public class RecordSerializersTest {
+
+    @Test
+    void testAvro() throws Exception {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(10).build();
+        RecordSerializer serializer = RecordSerializers.of(RecordSerializers.AVRO);
+        GenericDatumReader<GenericRecord> reader = new GenericDatumReader<>(AvroRecordSerializer.DEVICE_RECORD_SCHEMA);
+        for (int i = 0; i < 100; i++) {
+            DeviceRecord record = factory.newRecord();
+            GenericRecord decoded = reader.read(null, DecoderFactory.get().binaryDecoder(serializer.serialize(record), null));
+            Assertions.assertEquals(record.getDeviceId(), decoded.get("deviceId").toString());
+            Assertions.assertEquals(record.getDeviceType(), decoded.get("deviceType").toString());
+            Assertions.assertEquals(record.getTimestamp().getTime(), decoded.get("timestamp"));
+            Assertions.assertEquals(record.getRetry(), decoded.get("retry"));
+            Assertions.assertEquals(record.getDeviceData(), decoded.get("deviceData").toString());
+            Assertions.assertEquals(record.getSensorData(), decoded.get("sensorData").toString());
+            Assertions.assertEquals(record.getSensorMetadata(), decoded.get("sensorMetadata").toString());
+        }
+
+        DeviceModel model = factory.getModelList().get(0);
+        GenericRecord decoded = new GenericDatumReader<GenericRecord>(AvroRecordSerializer.DEVICE_MODEL_SCHEMA)
+                .read(null, DecoderFactory.get().binaryDecoder(serializer.serialize(model), null));
+        Assertions.assertEquals(model.getDeviceModelId(), decoded.get("deviceModelId").toString());
+        Assertions.assertEquals(model.getSensorMetadata(), decoded.get("sensorMetadata").toString());
+    }
+
+    @Test
+    void testProtobuf() throws Exception {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(10).build();
+        RecordSerializer serializer = RecordSerializers.of(RecordSerializers.PROTOBUF);
+        for (int i = 0; i < 100; i++) {
+            DeviceRecord record = factory.newRecord();
+            Map<Integer, Object> fields = new HashMap<>();
+            CodedInputStream input = CodedInputStream.newInstance(serializer.serialize(record));
+            int tag;
+            while ((tag = input.readTag()) != 0){
+                int field = WireFormat.getTagFieldNumber(tag);
+                if(WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_VARINT)
+                    fields.put(field, input.readInt64());
+                else
+                    fields.put(field, input.readStringRequireUtf8());
+            }
+            Assertions.assertEquals(record.getDeviceId(), fields.get(ProtobufRecordSerializer.RECORD_DEVICE_ID));
+            Assertions.assertEquals(record.getVersion(), fields.get(ProtobufRecordSerializer.RECORD_VERSION));
+            Assertions.assertEquals(record.getTimestamp().getTime(), fields.get(ProtobufRecordSerializer.RECORD_TIMESTAMP));
+            Assertions.assertEquals(record.getRetry() == 0 ? null : (long) record.getRetry(), fields.get(ProtobufRecordSerializer.RECORD_RETRY));
+            Assertions.assertEquals(record.getDeviceData(), fields.get(ProtobufRecordSerializer.RECORD_DEVICE_DATA));
+            Assertions.assertEquals(record.getSensorData(), fields.get(ProtobufRecordSerializer.RECORD_SENSOR_DATA));
+            Assertions.assertEquals(record.getSensorMetadata(), fields.get(ProtobufRecordSerializer.RECORD_SENSOR_METADATA));
+        }
+    }
+
+    @Test
+    void testCbor() throws Exception {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(10).build();
+        RecordSerializer serializer = RecordSerializers.of(RecordSerializers.CBOR);
+        ObjectMapper mapper = new ObjectMapper(new CBORFactory());
+        for (int i = 0; i < 100; i++) {
+            DeviceRecord record = factory.newRecord();
+            JsonNode decoded = mapper.readTree(serializer.serialize(record));
+            Assertions.assertEquals(8, decoded.size());
+            Assertions.assertEquals(record.getDeviceId(), decoded.get("deviceId").asText());
+            Assertions.assertEquals(record.getTimestamp().getTime(), decoded.get("timestamp").asLong());
+            Assertions.assertEquals(record.getRetry(), decoded.get("retry").asInt());
+            Assertions.assertEquals(record.getDeviceData(), decoded.get("deviceData").asText());
+            Assertions.assertEquals(record.getSensorMetadata(), decoded.get("sensorMetadata").asText());
+        }
+
+        DeviceModel model = factory.getModelList().get(0);
+        JsonNode decoded = mapper.readTree(serializer.serialize(model));
+        Assertions.assertEquals(AvroRecordSerializer.DEVICE_MODEL_SCHEMA.getFields().size(), decoded.size());
+        Assertions.assertFalse(decoded.has("index"));
+        Assertions.assertEquals(model.getDeviceData(), decoded.get("deviceData").asText());
+    }
+
+    @Test
+    void testMetered() throws Exception {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(10).build();
+        for (String format : RecordSerializers.FORMATS) {
+            MeteredRecordSerializer serializer = RecordSerializers.metered(RecordSerializers.of(format));
+            for (int i = 0; i < 10000; i++) {
+                serializer.serialize(factory.newRecord());
+            }
+            System.out.println(serializer);
+            Assertions.assertEquals(10000, serializer.getRecords());
+            Assertions.assertTrue(serializer.getBytesPerRecord() > 0);
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RecordSerializers.of("xml"));
+    }
+}
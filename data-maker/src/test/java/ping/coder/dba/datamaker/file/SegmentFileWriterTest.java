@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.file;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 15:40
+ **/
+public class SegmentFileWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testWriteFromThreads() throws Exception {
+        SegmentFileWriter writer = new SegmentFileWriter(directory, "device", 64 * 1024, 0, new JsonRecordSerializer());
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(10).build();
+        writer.open();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            DeviceRecordFactory threadFactory = factory.fork();
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 5000; j++) {
+                    writer.write(threadFactory.newRecord());
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        writer.flush();
+        writer.close();
+
+        List<Path> files = listFiles();
+        Assertions.assertTrue(files.size() > threads.length, "segments weren't rolled: "+files);
+        ObjectMapper mapper = new ObjectMapper();
+        Set<String> lanes = new HashSet<>();
+        long lines = 0;
+        for (Path file : files) {
+            Assertions.assertTrue(file.getFileName().toString().endsWith(SegmentFileWriter.SUFFIX), file.toString());
+            Assertions.assertTrue(Files.size(file) <= 64 * 1024);
+            lanes.add(file.getFileName().toString().split("-")[2]);
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                JsonNode node = mapper.readTree(line);
+                Assertions.assertTrue(node.get("deviceId").asText().startsWith("D0-"));
+                lines++;
+            }
+        }
+        Assertions.assertEquals(threads.length, lanes.size());
+        Assertions.assertEquals(threads.length * 5000, lines);
+    }
+
+    @Test
+    void testRollByTime() throws Exception {
+        SegmentFileWriter writer = new SegmentFileWriter(directory, "device", 1024 * 1024, 50, new JsonRecordSerializer());
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(10).build();
+        writer.open();
+        writer.write(factory.newRecord());
+        Thread.sleep(100);
+        writer.write(factory.newRecord());
+        writer.close();
+        List<Path> files = listFiles();
+        Assertions.assertEquals(2, files.size());
+        for (Path file : files) {
+            Assertions.assertEquals(1, Files.readAllLines(file, StandardCharsets.UTF_8).size());
+        }
+    }
+
+    @Test
+    void testRollIdleLane() throws Exception {
+        SegmentFileWriter writer = new SegmentFileWriter(directory, "device", 1024 * 1024, 50, new JsonRecordSerializer());
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(10).build();
+        writer.open();
+        try {
+            writer.write(factory.newRecord());
+            writer.write(factory.newRecord());
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (!listFiles().get(0).toString().endsWith(SegmentFileWriter.SUFFIX) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            // the lane wrote nothing since, its segment was rolled by the timer
+            List<Path> files = listFiles();
+            Assertions.assertEquals(1, files.size());
+            Assertions.assertTrue(files.get(0).toString().endsWith(SegmentFileWriter.SUFFIX), files.toString());
+            Assertions.assertEquals(2, Files.readAllLines(files.get(0), StandardCharsets.UTF_8).size());
+            writer.write(factory.newRecord());
+        } finally {
+            writer.close();
+        }
+        Assertions.assertEquals(2, listFiles().size());
+    }
+
+    @Test
+    void testJsonOnly() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new SegmentFileWriter(directory, "device", 1024, 0, RecordSerializers.of(RecordSerializers.AVRO)));
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> stream = Files.list(directory)) {
+            return stream.sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 18:40
+ **/
+public class LatencyHistogramTest {
+
+    @Test
+    void testBuckets() {
+        for (long value : new long[]{0, 1, 127, 128, 129, 1000, 123_456_789L, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.index(value);
+            Assertions.assertTrue(LatencyHistogram.highestValue(index) >= value);
+            Assertions.assertTrue(index == 0 || LatencyHistogram.highestValue(index - 1) < value);
+            Assertions.assertTrue(LatencyHistogram.highestValue(index) - value <= value / 64);
+        }
+    }
+
+    @Test
+    void testQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        for (int i = 0; i < 100_000; i++)
+            histogram.record(1_000_000L + random.nextInt(1_000_000));
+        Assertions.assertEquals(100_000, histogram.getCount());
+        Assertions.assertEquals(1_500_000, histogram.getValueAtQuantile(0.5), 1_500_000 * 0.02);
+        Assertions.assertEquals(1_990_000, histogram.getValueAtQuantile(0.99), 1_990_000 * 0.02);
+        Assertions.assertEquals(histogram.getMax(), histogram.getValueAtQuantile(1));
+        Assertions.assertEquals(1_500_000, histogram.getMean(), 10_000);
+        Assertions.assertEquals(0, new LatencyHistogram().getValueAtQuantile(0.99));
+    }
+
+    @Test
+    void testStripes() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            long offset = i;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 100_000; j++)
+                    histogram.record(1_000 + (j & 7) + offset);
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        Assertions.assertEquals(800_000, histogram.getCount());
+        Assertions.assertEquals(1_014, histogram.getMax());
+        Assertions.assertEquals(1_007, histogram.getMean(), 0.01);
+        Assertions.assertEquals(1_014, histogram.getValueAtQuantile(1));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.metrics;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 18:45
+ **/
+public class MetricsServerTest {
+
+    @Test
+    void testScrape() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.recordGenerated(1_000);
+        metrics.recordPublished(2_000_000);
+        metrics.recordFailed("UNAVAILABLE");
+        metrics.recordFailed("UNAVAILABLE");
+        try (MetricsServer server = new MetricsServer(metrics, 0)) {
+            server.start();
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + MetricsServer.PATH).openConnection();
+            Assertions.assertEquals(200, connection.getResponseCode());
+            Assertions.assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream input = connection.getInputStream()) {
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = input.read(buffer)) > 0)
+                    body.write(buffer, 0, read);
+            }
+            String text = new String(body.toByteArray(), StandardCharsets.UTF_8);
+            Assertions.assertTrue(text.contains("data_maker_records_generated_total 1\n"), text);
+            Assertions.assertTrue(text.contains("data_maker_records_published_total 1\n"), text);
+            Assertions.assertTrue(text.contains("data_maker_publish_failures_total{code=\"UNAVAILABLE\"} 2\n"), text);
+            Assertions.assertTrue(text.contains("data_maker_publish_latency_seconds_count 1\n"), text);
+            Assertions.assertTrue(text.contains("# TYPE data_maker_publish_latency_seconds summary\n"), text);
+        }
+    }
+}
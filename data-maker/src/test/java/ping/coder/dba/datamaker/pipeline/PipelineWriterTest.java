@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pipeline;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.BlackholeWriter;
+import ping.coder.dba.datamaker.Writer;
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.codec.SerializedRecord;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 17:45
+ **/
+public class PipelineWriterTest {
+
+    @Test
+    void testAllRecordsWritten() throws Exception {
+        BlackholeWriter blackhole = new BlackholeWriter(new JsonRecordSerializer());
+        PipelineWriter writer = new PipelineWriter(blackhole, new JsonRecordSerializer(), 2, 2, 1024, WaitStrategy.PARK, false);
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().workerId("0").models(2).deviceNumber(100).build();
+        writer.open();
+        for (int i = 0; i < 10000; i++)
+            writer.write(factory.newRecord());
+        writer.flush();
+        Assertions.assertEquals(10000, blackhole.getSerializer().getRecords());
+        Assertions.assertEquals(10000, blackhole.getSerializer().getForwarded());
+        Assertions.assertEquals(10000, writer.getSerializer().getRecords());
+        writer.close();
+        Assertions.assertEquals(0, writer.getShed());
+    }
+
+    @Test
+    void testShedLoad() throws Exception {
+        CountDownLatch stall = new CountDownLatch(1);
+        StalledWriter stalled = new StalledWriter(stall);
+        Metrics metrics = new Metrics();
+        PipelineWriter writer = new PipelineWriter(stalled, new JsonRecordSerializer(), 1, 1, 16, WaitStrategy.YIELD, WaitStrategy.PARK, true, metrics);
+        writer.open();
+        int written = 0;
+        for (; written < 1000; written++)
+            writer.write("record-" + written);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (writer.getWriteStage().getFull() == 0 && System.nanoTime() < deadline){
+            writer.write("record-" + written++);
+            Thread.sleep(1);
+        }
+        Assertions.assertTrue(writer.getShed() > 0);
+        Assertions.assertEquals(written, writer.getAccepted() + writer.getShed());
+        Assertions.assertTrue(writer.getSerializeStage().getFull() > 0);
+        Assertions.assertEquals("write", writer.getBottleneck());
+        Assertions.assertEquals(WaitStrategy.YIELD, writer.getSerializeStage().getWaitStrategy());
+        Assertions.assertEquals(WaitStrategy.PARK, writer.getWriteStage().getWaitStrategy());
+        Assertions.assertEquals(writer.getShed(), metrics.getShed());
+        Assertions.assertEquals("write", metrics.getBottleneck());
+        String text = metrics.toPrometheus();
+        Assertions.assertTrue(text.contains("data_maker_queue_depth{stage=\"serialize\"} " + writer.getSerializeStage().getDepth() + "\n"), text);
+        Assertions.assertTrue(text.contains("data_maker_records_shed_total " + writer.getShed() + "\n"), text);
+        Assertions.assertTrue(text.contains("data_maker_bottleneck{stage=\"write\"} 1\n"), text);
+        stall.countDown();
+        writer.flush();
+        Assertions.assertEquals(writer.getAccepted(), stalled.written.sum());
+        writer.close();
+    }
+
+    @Test
+    void testFailure() throws Exception {
+        PipelineWriter writer = new PipelineWriter(new StalledWriter(null), new JsonRecordSerializer(), 1, 1, 16, WaitStrategy.YIELD, false);
+        writer.open();
+        writer.write("fail");
+        Assertions.assertThrows(IllegalStateException.class, writer::flush);
+        Assertions.assertThrows(IllegalStateException.class, () -> writer.write("record"));
+        writer.close();
+    }
+
+    /**
+     * Sink which waits for the latch before every record and fails without a latch.
+     */
+    static class StalledWriter implements Writer {
+        private final CountDownLatch stall;
+        private final LongAdder written = new LongAdder();
+
+        StalledWriter(CountDownLatch stall) {
+            this.stall = stall;
+        }
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void write(Object record) {
+            Assertions.assertTrue(record instanceof SerializedRecord);
+            if(stall == null)
+                throw new IllegalArgumentException("Sink failed.");
+            try {
+                stall.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            written.increment();
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pipeline;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 17:40
+ **/
+public class RingBufferTest {
+
+    @Test
+    void testBounded() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(3);
+        Assertions.assertEquals(4, buffer.capacity());
+        for (int i = 0; i < 4; i++)
+            Assertions.assertTrue(buffer.offer(i));
+        Assertions.assertFalse(buffer.offer(4));
+        Assertions.assertEquals(4, buffer.size());
+        for (int i = 0; i < 4; i++)
+            Assertions.assertEquals(i, buffer.poll());
+        Assertions.assertNull(buffer.poll());
+        Assertions.assertTrue(buffer.offer(5));
+        Assertions.assertEquals(5, buffer.poll());
+    }
+
+    @Test
+    void testManyProducersManyConsumers() throws Exception {
+        int threads = 4;
+        int perProducer = 100_000;
+        RingBuffer<Integer> buffer = new RingBuffer<>(128);
+        LongAdder consumed = new LongAdder();
+        AtomicLong sum = new AtomicLong();
+        List<Thread> producers = new ArrayList<>();
+        List<Thread> consumers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            producers.add(new Thread(() -> {
+                for (int i = 1; i <= perProducer; i++) {
+                    int times = 0;
+                    while (!buffer.offer(i))
+                        WaitStrategy.YIELD.idle(++times);
+                }
+            }));
+            consumers.add(new Thread(() -> {
+                int times = 0;
+                while (consumed.sum() < (long) threads * perProducer) {
+                    Integer value = buffer.poll();
+                    if(value == null){
+                        WaitStrategy.YIELD.idle(++times);
+                        continue;
+                    }
+                    sum.addAndGet(value);
+                    consumed.increment();
+                }
+            }));
+        }
+        consumers.forEach(Thread::start);
+        producers.forEach(Thread::start);
+        for (Thread thread : producers)
+            thread.join();
+        for (Thread thread : consumers)
+            thread.join();
+        Assertions.assertEquals((long) threads * perProducer, consumed.sum());
+        Assertions.assertEquals((long) threads * perProducer * (perProducer + 1) / 2, sum.get());
+        Assertions.assertEquals(0, buffer.size());
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordEnvelope;
+import ping.coder.dba.datamaker.codec.SerializedRecord;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 23:45
+ **/
+public class EnvelopePublisherWriterTest {
+
+    @Test
+    void testPackAndDecode() throws Exception {
+        JsonRecordSerializer serializer = new JsonRecordSerializer();
+        List<byte[]> expected = new ArrayList<>();
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(7).models(20).deviceNumber(1000).build();
+        for (int i = 0; i < 1000; i++) {
+            expected.add(serializer.serialize(factory.newRecord()));
+        }
+        long rawBytes = expected.stream().mapToLong(record -> record.length).sum();
+        for (String codec : RecordEnvelope.CODECS) {
+            CapturingPublisher publisher = new CapturingPublisher();
+            Metrics metrics = new Metrics();
+            EnvelopePublisherWriter writer = new EnvelopePublisherWriter("project", "topic", (projectId, topicId) -> publisher,
+                    serializer, metrics, RetryPolicy.NONE, 100, 64 * 1024, codec);
+            writer.open();
+            for (byte[] record : expected) {
+                writer.write(new SerializedRecord(record, serializer.getFormat(), record));
+            }
+            writer.close();
+
+            Assertions.assertEquals(10, publisher.messages.size());
+            Assertions.assertEquals(1000, metrics.getPublished());
+            List<byte[]> decoded = new ArrayList<>();
+            long bytes = 0;
+            for (PubsubMessage message : publisher.messages) {
+                Assertions.assertEquals("100", message.getAttributesOrThrow(RecordEnvelope.ATTRIBUTE_COUNT));
+                Assertions.assertEquals(codec, message.getAttributesOrThrow(RecordEnvelope.ATTRIBUTE_CODEC));
+                Assertions.assertEquals("json", message.getAttributesOrThrow(RecordEnvelope.ATTRIBUTE_FORMAT));
+                decoded.addAll(EnvelopePublisherWriter.decode(message));
+                bytes += message.getData().size();
+            }
+            Assertions.assertEquals(expected.size(), decoded.size());
+            for (int i = 0; i < expected.size(); i++) {
+                Assertions.assertArrayEquals(expected.get(i), decoded.get(i));
+            }
+            System.out.println(codec + ": " + rawBytes + " bytes of records packed into " + bytes + " bytes");
+            if(!RecordEnvelope.CODEC_NONE.equals(codec))
+                Assertions.assertTrue(bytes * 3 < rawBytes, codec + " packed into " + bytes + " bytes");
+        }
+    }
+
+    @Test
+    void testMaxBytes() throws Exception {
+        CapturingPublisher publisher = new CapturingPublisher();
+        EnvelopePublisherWriter writer = new EnvelopePublisherWriter("project", "topic", (projectId, topicId) -> publisher,
+                new JsonRecordSerializer(), new Metrics(), RetryPolicy.NONE, 1000, 4096, RecordEnvelope.CODEC_NONE);
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(7).models(20).deviceNumber(1000).build();
+        writer.open();
+        for (int i = 0; i < 500; i++) {
+            writer.write(factory.newRecord());
+        }
+        writer.flush();
+        int flushed = publisher.messages.size();
+        writer.close();
+
+        Assertions.assertTrue(flushed > 1);
+        Assertions.assertEquals(flushed, publisher.messages.size());
+        Assertions.assertEquals(500, publisher.messages.stream()
+                .mapToInt(message -> Integer.parseInt(message.getAttributesOrThrow(RecordEnvelope.ATTRIBUTE_COUNT))).sum());
+        Assertions.assertTrue(publisher.messages.stream().allMatch(message -> message.getData().size() <= 4096));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new EnvelopePublisherWriter("project", "topic",
+                (projectId, topicId) -> publisher, new JsonRecordSerializer(), new Metrics(), RetryPolicy.NONE, 10, 4096, "lz4"));
+    }
+
+    /**
+     * Acknowledges every message at once and keeps it.
+     */
+    static class CapturingPublisher implements MessagePublisher {
+        private final List<PubsubMessage> messages = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ApiFuture<String> publish(PubsubMessage message) {
+            messages.add(message);
+            return ApiFutures.immediateFuture(Integer.toString(messages.size()));
+        }
+
+        @Override
+        public void publishAllOutstanding() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public boolean awaitTermination(long duration, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.protobuf.ByteString;
+import com.google.pubsub.v1.PubsubMessage;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 16:32
+ **/
+public class LocalPublisherTest {
+
+    private static final PubsubMessage MESSAGE = PubsubMessage.newBuilder().setData(ByteString.copyFromUtf8("{}")).build();
+
+    @Test
+    void testLatency() throws Exception {
+        LocalPublisher publisher = new LocalPublisher(TimeUnit.MILLISECONDS.toNanos(50), 0, 0);
+        long start = System.nanoTime();
+        ApiFuture<String> future = publisher.publish(MESSAGE);
+        Assertions.assertFalse(future.isDone());
+        Assertions.assertEquals("1", future.get());
+        Assertions.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        publisher.shutdown();
+        Assertions.assertTrue(publisher.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testErrorRate() throws Exception {
+        LocalPublisher publisher = new LocalPublisher(0, 0.1, 0);
+        int failed = 0;
+        for (int i = 0; i < 10000; i++) {
+            try {
+                publisher.publish(MESSAGE).get();
+            } catch (ExecutionException e) {
+                ApiException cause = (ApiException) e.getCause();
+                Assertions.assertEquals(StatusCode.Code.UNAVAILABLE, cause.getStatusCode().getCode());
+                Assertions.assertTrue(cause.isRetryable());
+                failed++;
+            }
+        }
+        Assertions.assertEquals(failed, publisher.getFailed());
+        Assertions.assertEquals(1000, failed, 150);
+    }
+
+    @Test
+    void testCapacity() throws Exception {
+        LocalPublisher publisher = new LocalPublisher(TimeUnit.MILLISECONDS.toNanos(100), 0, 10);
+        List<ApiFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 15; i++) {
+            futures.add(publisher.publish(MESSAGE));
+        }
+        Assertions.assertEquals(5, publisher.getRejected());
+        ExecutionException e = Assertions.assertThrows(ExecutionException.class, () -> futures.get(14).get());
+        Assertions.assertEquals(StatusCode.Code.RESOURCE_EXHAUSTED, ((ApiException) e.getCause()).getStatusCode().getCode());
+        futures.get(9).get();
+        futures.add(publisher.publish(MESSAGE));
+        publisher.shutdown();
+        Assertions.assertTrue(publisher.awaitTermination(1, TimeUnit.SECONDS));
+        Assertions.assertEquals(11, publisher.getPublished());
+    }
+}
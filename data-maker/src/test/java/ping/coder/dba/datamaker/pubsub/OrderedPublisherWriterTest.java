@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+import com.google.pubsub.v1.PubsubMessage;
+import io.grpc.Status;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 22:50
+ **/
+public class OrderedPublisherWriterTest {
+
+    @Test
+    void testOrderAfterFailures() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        List<LocalPublisher> publishers = new CopyOnWriteArrayList<>();
+        Metrics metrics = new Metrics();
+        OrderedPublisherWriter writer = new OrderedPublisherWriter("project", "topic", (projectId, topicId) -> {
+            LocalPublisher publisher = new LocalPublisher(200_000L, 0.1, 0).checkOrder(message -> {
+                try {
+                    return mapper.readTree(message.getData().toByteArray()).get("version").asLong();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            publishers.add(publisher);
+            return publisher;
+        }, new JsonRecordSerializer(), metrics, new RetryPolicy(20, 1, 5, 100_000), 4);
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(7).models(5).deviceNumber(50).build();
+        Map<String, Long> sequences = new HashMap<>();
+        int number = 20000;
+        writer.open();
+        for (int i = 0; i < number; i++) {
+            DeviceRecord record = factory.newRecord();
+            record.setVersion(Long.toString(sequences.merge(record.getDeviceId(), 1L, Long::sum)));
+            writer.write(record);
+        }
+        writer.close();
+
+        Assertions.assertEquals(4, publishers.size());
+        Assertions.assertEquals(0, writer.getLost());
+        Assertions.assertEquals(0, writer.getOutstanding());
+        Assertions.assertTrue(writer.getResumed() > 0);
+        Assertions.assertEquals(number, publishers.stream().mapToLong(LocalPublisher::getPublished).sum());
+        Assertions.assertEquals(0, publishers.stream().mapToLong(LocalPublisher::getOutOfOrder).sum());
+        Assertions.assertTrue(publishers.stream().mapToLong(LocalPublisher::getCancelled).sum() > 0);
+        Assertions.assertTrue(publishers.stream().allMatch(publisher -> publisher.getPublished() > 0));
+        Assertions.assertEquals(number, metrics.getPublished());
+    }
+
+    /**
+     * A publisher blocked by flow control waits for acknowledgements whose callbacks need the state of the key.
+     */
+    @Test
+    void testBlockingFlowControl() {
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            BlockingPublisher publisher = new BlockingPublisher(2);
+            OrderedPublisherWriter writer = new OrderedPublisherWriter("project", "topic", (projectId, topicId) -> publisher,
+                    new JsonRecordSerializer(), new Metrics(), RetryPolicy.DEFAULT, 1);
+            DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(7).models(1).deviceNumber(1).build();
+            writer.open();
+            for (int i = 0; i < 1000; i++)
+                writer.write(factory.newRecord());
+            writer.close();
+            Assertions.assertEquals(1000, publisher.acknowledged.get());
+            Assertions.assertEquals(0, writer.getOutstanding());
+        });
+    }
+
+    /**
+     * The records written to a paused device are held within the capacity of the retry queue.
+     */
+    @Test
+    void testHeldCapacity() throws Exception {
+        FailingPublisher publisher = new FailingPublisher();
+        OrderedPublisherWriter writer = new OrderedPublisherWriter("project", "topic", (projectId, topicId) -> publisher,
+                new JsonRecordSerializer(), new Metrics(), new RetryPolicy(5, 500, 500, 10), 1);
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(7).models(1).deviceNumber(1).build();
+        writer.open();
+        for (int i = 0; i < 101; i++)
+            writer.write(factory.newRecord());
+        Assertions.assertEquals(91, writer.getLost());
+        Assertions.assertEquals(10, writer.getOutstanding());
+        publisher.failing = false;
+        writer.close();
+        Assertions.assertEquals(10, publisher.published.get());
+        Assertions.assertEquals(91, writer.getLost());
+        Assertions.assertEquals(0, writer.getOutstanding());
+    }
+
+    @Test
+    void testWriteBeforeOpen() {
+        OrderedPublisherWriter writer = new OrderedPublisherWriter("project", "topic", LocalPublisher.factory(0, 0, 0),
+                new JsonRecordSerializer(), new Metrics(), RetryPolicy.DEFAULT, 2);
+        Assertions.assertThrows(IllegalStateException.class, () -> writer.write(DeviceRecordFactory.builder().models(1).build().newRecord()));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new OrderedPublisherWriter("project", "topic",
+                LocalPublisher.factory(0, 0, 0), new JsonRecordSerializer(), new Metrics(), RetryPolicy.DEFAULT, 0));
+    }
+
+    /**
+     * Fails every message with a retryable error until it's told to stop.
+     */
+    static class FailingPublisher implements MessagePublisher {
+        private final AtomicLong published = new AtomicLong();
+        private volatile boolean failing = true;
+
+        @Override
+        public ApiFuture<String> publish(PubsubMessage message) {
+            if(failing)
+                return ApiFutures.immediateFailedFuture(ApiExceptionFactory.createException("Unavailable", null,
+                        GrpcStatusCode.of(Status.Code.UNAVAILABLE), true));
+            return ApiFutures.immediateFuture(Long.toString(published.incrementAndGet()));
+        }
+
+        @Override
+        public void publishAllOutstanding() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public boolean awaitTermination(long duration, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    /**
+     * Blocks a publish while the outstanding messages are at the limit, like the flow control of the cloud
+     * publisher with the Block behavior. Messages are acknowledged by another thread, which runs the
+     * callbacks before it frees the capacity.
+     */
+    static class BlockingPublisher implements MessagePublisher {
+        private final Semaphore capacity;
+        private final ExecutorService acknowledger = Executors.newSingleThreadExecutor();
+        private final AtomicLong acknowledged = new AtomicLong();
+
+        BlockingPublisher(int capacity) {
+            this.capacity = new Semaphore(capacity);
+        }
+
+        @Override
+        public ApiFuture<String> publish(PubsubMessage message) {
+            capacity.acquireUninterruptibly();
+            SettableApiFuture<String> future = SettableApiFuture.create();
+            acknowledger.execute(() -> {
+                future.set(Long.toString(acknowledged.incrementAndGet()));
+                capacity.release();
+            });
+            return future;
+        }
+
+        @Override
+        public void publishAllOutstanding() {
+        }
+
+        @Override
+        public void shutdown() {
+            acknowledger.shutdown();
+        }
+
+        @Override
+        public boolean awaitTermination(long duration, TimeUnit unit) throws InterruptedException {
+            return acknowledger.awaitTermination(duration, unit);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.core.SettableApiFuture;
+import com.google.api.gax.batching.BatchingSettings;
+import com.google.api.gax.batching.FlowController;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiExceptionFactory;
+import com.google.pubsub.v1.PubsubMessage;
+import io.grpc.Status;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.DataMaker;
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 10:31
+ **/
+public class PublisherWriterTest {
+
+    @Test
+    void testLongLivedSession() throws Exception {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(10).build();
+
+        StandInPublisher.Factory perRecordFactory = new StandInPublisher.Factory();
+        PublisherWriter perRecordWriter = new PublisherWriter("project", "topic", perRecordFactory);
+        int perRecordNumber = 10;
+        for (int i = 0; i < perRecordNumber; i++) {
+            perRecordWriter.open();
+            perRecordWriter.write(factory.newRecord());
+            perRecordWriter.close();
+        }
+
+        StandInPublisher.Factory sessionFactory = new StandInPublisher.Factory();
+        PublisherWriter sessionWriter = new PublisherWriter("project", "topic", sessionFactory);
+        int sessionNumber = 20000;
+        sessionWriter.open();
+        for (int i = 0; i < sessionNumber; i++) {
+            sessionWriter.write(factory.newRecord());
+        }
+        sessionWriter.flush();
+        sessionWriter.close();
+
+        Assertions.assertEquals(perRecordNumber, perRecordFactory.sessions.get());
+        Assertions.assertEquals(perRecordNumber, perRecordFactory.published.get());
+        Assertions.assertEquals(perRecordNumber, perRecordFactory.batches.get());
+        Assertions.assertEquals(1, sessionFactory.sessions.get());
+        Assertions.assertEquals(sessionNumber, sessionFactory.published.get());
+        Assertions.assertTrue(sessionFactory.batches.get() <= sessionNumber / StandInPublisher.BATCH_SIZE + 1,
+                "batch number was "+sessionFactory.batches.get());
+    }
+
+    @Test
+    void testWriteBeforeOpen() {
+        PublisherWriter writer = new PublisherWriter("project", "topic", new StandInPublisher.Factory());
+        Assertions.assertThrows(IllegalStateException.class, () -> writer.write("record"));
+    }
+
+    @Test
+    void testBatchingSettings() {
+        DataMaker.Options options = new DataMaker.Options();
+        BatchingSettings throughput = PublisherWriter.batchingSettings(options);
+        Assertions.assertEquals(1000L, throughput.getElementCountThreshold());
+        Assertions.assertEquals(100_000L, throughput.getFlowControlSettings().getMaxOutstandingElementCount());
+        Assertions.assertEquals(FlowController.LimitExceededBehavior.Block, throughput.getFlowControlSettings().getLimitExceededBehavior());
+
+        options.setPublishPreset(DataMaker.Options.PRESET_DEFAULT);
+        options.setBatchDelayMillis(5);
+        BatchingSettings library = PublisherWriter.batchingSettings(options);
+        Assertions.assertEquals(100L, library.getElementCountThreshold());
+        Assertions.assertEquals(5L, library.getDelayThreshold().toMillis());
+        Assertions.assertNull(library.getFlowControlSettings().getMaxOutstandingElementCount());
+        Assertions.assertEquals(FlowController.LimitExceededBehavior.Ignore, library.getFlowControlSettings().getLimitExceededBehavior());
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> options.setBatchElementCount(1001));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> options.setBatchRequestBytes(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> options.setLimitExceededBehavior("wait"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> options.setPublishPreset("fast"));
+    }
+
+    @Test
+    void testRetry() throws Exception {
+        LocalPublisher local = new LocalPublisher(0, 0.3, 0);
+        AtomicLong publishedRetries = new AtomicLong();
+        ObjectMapper mapper = new ObjectMapper();
+        MessagePublisher counting = new MessagePublisher() {
+            @Override
+            public ApiFuture<String> publish(PubsubMessage message) {
+                ApiFuture<String> future = local.publish(message);
+                future.addListener(() -> {
+                    try {
+                        future.get();
+                        publishedRetries.addAndGet(mapper.readTree(message.getData().toByteArray()).get("retry").asLong());
+                    } catch (Exception e) {
+                        // failed attempts are counted by the retried records
+                    }
+                }, Runnable::run);
+                return future;
+            }
+
+            @Override
+            public void publishAllOutstanding() {
+            }
+
+            @Override
+            public void shutdown() {
+                local.shutdown();
+            }
+
+            @Override
+            public boolean awaitTermination(long duration, TimeUnit unit) throws InterruptedException {
+                return local.awaitTermination(duration, unit);
+            }
+        };
+        Metrics metrics = new Metrics();
+        PublisherWriter writer = new PublisherWriter("project", "topic", (projectId, topicId) -> counting,
+                new JsonRecordSerializer(), metrics, new RetryPolicy(10, 1, 5, 1000));
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().workerId("0").models(2).deviceNumber(100).build();
+        List<DeviceRecord> records = new ArrayList<>();
+        writer.open();
+        for (int i = 0; i < 1000; i++) {
+            DeviceRecord record = factory.newRecord();
+            records.add(record);
+            writer.write(record);
+        }
+        writer.close();
+        Assertions.assertEquals(0, writer.getLost());
+        Assertions.assertEquals(0, writer.getOutstanding());
+        Assertions.assertEquals(1000, local.getPublished());
+        Assertions.assertEquals(local.getFailed(), writer.getRetried());
+        Assertions.assertTrue(writer.getRetried() > 0);
+        Assertions.assertEquals(writer.getRetried(), publishedRetries.get());
+        Assertions.assertTrue(records.stream().allMatch(record -> record.getRetry() == 0), "a written record was changed");
+        Assertions.assertEquals(1000, metrics.getPublished());
+        Assertions.assertEquals(local.getFailed(), metrics.getFailures().get("UNAVAILABLE"));
+    }
+
+    @Test
+    void testNonRetryable() throws Exception {
+        Metrics metrics = new Metrics();
+        PublisherWriter writer = new PublisherWriter("project", "topic", (projectId, topicId) -> new RejectingPublisher(),
+                new JsonRecordSerializer(), metrics, RetryPolicy.DEFAULT);
+        writer.open();
+        for (int i = 0; i < 10; i++)
+            writer.write("record-" + i);
+        writer.close();
+        Assertions.assertEquals(0, writer.getRetried());
+        Assertions.assertEquals(10, writer.getLost());
+        Assertions.assertEquals(10, metrics.getFailures().get("INVALID_ARGUMENT"));
+    }
+
+    /**
+     * Fails every message with an error which isn't retryable.
+     */
+    static class RejectingPublisher implements MessagePublisher {
+        @Override
+        public ApiFuture<String> publish(PubsubMessage message) {
+            return ApiFutures.immediateFailedFuture(ApiExceptionFactory.createException("Rejected", null,
+                    GrpcStatusCode.of(Status.Code.INVALID_ARGUMENT), false));
+        }
+
+        @Override
+        public void publishAllOutstanding() {
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public boolean awaitTermination(long duration, TimeUnit unit) {
+            return true;
+        }
+    }
+
+    /**
+     * Local stand-in of the Pub/Sub publisher, it counts the publishers created and acknowledges the
+     * messages in batches.
+     */
+    static class StandInPublisher implements MessagePublisher {
+        static final int BATCH_SIZE = 100;
+
+        private final Factory factory;
+        private final List<SettableApiFuture<String>> batch = new ArrayList<>(BATCH_SIZE);
+
+        StandInPublisher(Factory factory) {
+            this.factory = factory;
+        }
+
+        @Override
+        public synchronized ApiFuture<String> publish(PubsubMessage message) {
+            SettableApiFuture<String> future = SettableApiFuture.create();
+            batch.add(future);
+            if(batch.size() >= BATCH_SIZE)
+                publishAllOutstanding();
+            return future;
+        }
+
+        @Override
+        public synchronized void publishAllOutstanding() {
+            if(batch.isEmpty())
+                return;
+            factory.batches.incrementAndGet();
+            for (SettableApiFuture<String> future : batch) {
+                future.set(String.valueOf(factory.published.incrementAndGet()));
+            }
+            batch.clear();
+        }
+
+        @Override
+        public void shutdown() {
+            publishAllOutstanding();
+        }
+
+        @Override
+        public boolean awaitTermination(long duration, TimeUnit unit) {
+            return true;
+        }
+
+        static class Factory implements MessagePublisher.Factory {
+            final AtomicLong sessions = new AtomicLong();
+            final AtomicLong batches = new AtomicLong();
+            final AtomicLong published = new AtomicLong();
+
+            @Override
+            public MessagePublisher create(String projectId, String topicId) {
+                sessions.incrementAndGet();
+                return new StandInPublisher(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.pubsub;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.metrics.Metrics;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+import ping.coder.dba.datamaker.record.DeviceRecordFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 21:55
+ **/
+public class RoutingWriterTest {
+
+    @Test
+    void testRouteByDeviceType() throws Exception {
+        Map<String, LocalPublisher> publishers = new ConcurrentHashMap<>();
+        Metrics metrics = new Metrics();
+        RoutingWriter writer = RoutingWriter.builder()
+                .projectId("project")
+                .topicFormat("devices-%s")
+                .firehoseTopic("firehose")
+                .publisherFactory((projectId, topicId) -> publishers.computeIfAbsent(topicId, topic -> new LocalPublisher(0, 0, 0)))
+                .serializer(new JsonRecordSerializer())
+                .metrics(metrics)
+                .retryPolicy(RetryPolicy.NONE)
+                .build();
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(7).models(50).deviceNumber(1000).build();
+        Map<String, Long> expected = new TreeMap<>();
+        writer.open();
+        for (int i = 0; i < 10000; i++) {
+            DeviceRecord record = factory.newRecord();
+            expected.merge(writer.topicName(record.getDeviceType()), 1L, Long::sum);
+            writer.write(record);
+        }
+        writer.close();
+
+        Assertions.assertTrue(expected.size() > 1, "topics were "+expected);
+        Assertions.assertEquals(expected.size() + 1, publishers.size());
+        Assertions.assertEquals(10000, publishers.get("firehose").getPublished());
+        for (Map.Entry<String, Long> entry : expected.entrySet()) {
+            Assertions.assertTrue(entry.getKey().matches("devices-[a-z0-9._~+-]+"), entry.getKey());
+            Assertions.assertEquals(entry.getValue().longValue(), publishers.get(entry.getKey()).getPublished());
+            Assertions.assertEquals(entry.getValue().longValue(), metrics.getDestinations().get(entry.getKey()).getPublished());
+        }
+        Assertions.assertEquals(20000, metrics.getPublished());
+        Assertions.assertEquals(10000, metrics.getSerialized());
+        String prometheus = metrics.toPrometheus();
+        Assertions.assertTrue(prometheus.contains("data_maker_destination_records_published_total{destination=\"firehose\"} 10000"), prometheus);
+        Assertions.assertTrue(prometheus.contains("data_maker_destination_publish_latency_seconds_count{destination=\"firehose\"} 10000"), prometheus);
+    }
+
+    @Test
+    void testRouteByHash() throws Exception {
+        Map<String, LocalPublisher> publishers = new ConcurrentHashMap<>();
+        RoutingWriter writer = RoutingWriter.builder()
+                .projectId("project")
+                .route(RoutingWriter.BY_HASH)
+                .topicFormat("shard-%s")
+                .topicNumber(3)
+                .publisherFactory((projectId, topicId) -> publishers.computeIfAbsent(topicId, topic -> new LocalPublisher(0, 0, 0)))
+                .serializer(new JsonRecordSerializer())
+                .metrics(new Metrics())
+                .build();
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(7).models(5).deviceNumber(1000).build();
+        writer.open();
+        for (int i = 0; i < 6000; i++) {
+            DeviceRecord record = factory.newRecord();
+            writer.write(record);
+        }
+        writer.close();
+
+        Assertions.assertEquals(3, publishers.size());
+        for (int i = 0; i < 3; i++) {
+            long published = publishers.get("shard-" + i).getPublished();
+            Assertions.assertTrue(published > 1000 && published < 3000, "shard-"+i+" published "+published);
+        }
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RoutingWriter.builder().route("random"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RoutingWriter.builder().topicFormat("devices"));
+    }
+}
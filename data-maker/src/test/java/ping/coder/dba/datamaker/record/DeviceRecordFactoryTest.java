@@ -17,12 +17,15 @@
 package ping.coder.dba.datamaker.record;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import ping.coder.dba.datamaker.model.DeviceRecord;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 
 
 /**
@@ -54,4 +57,172 @@ public class DeviceRecordFactoryTest {
         Assertions.assertTrue(idSet.size() >= 100, "id size was "+idSet.size());
     }
 
-}
\ No newline at end of file
+    @Test
+    void testFork() throws InterruptedException {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().models(10).build();
+        DeviceRecordFactory forked = factory.fork();
+        Assertions.assertNotSame(factory, forked);
+        Assertions.assertSame(factory.getModelList(), forked.getModelList());
+
+        Thread[] threads = new Thread[4];
+        HashSet<String> idSet = new HashSet<>();
+        for (int i = 0; i < threads.length; i++) {
+            DeviceRecordFactory threadFactory = factory.fork();
+            threads[i] = new Thread(() -> {
+                HashSet<String> threadIdSet = new HashSet<>();
+                for (int j = 0; j < 1000; j++) {
+                    threadIdSet.add(threadFactory.newRecord().getDeviceId());
+                }
+                synchronized (idSet){
+                    idSet.addAll(threadIdSet);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertTrue(idSet.size() >= 100, "id size was "+idSet.size());
+    }
+
+    @Test
+    void testSeed() {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().workerId("3").seed(42).models(10).build();
+        DeviceRecordFactory again = DeviceRecordFactory.builder().workerId("3").seed(42).models(10).build();
+        DeviceRecordFactory otherWorker = DeviceRecordFactory.builder().workerId("4").seed(42).models(10).build();
+        Assertions.assertEquals(factory.getModelList().get(0).getDeviceData(), again.getModelList().get(0).getDeviceData());
+        Assertions.assertEquals(factory.getModelList().get(9).getSensorMetadata(), otherWorker.getModelList().get(9).getSensorMetadata());
+
+        DeviceRecordFactory thread2 = factory.fork(2);
+        DeviceRecordFactory thread2Again = again.fork(1).fork(2);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(shape(factory.newRecord()), shape(again.newRecord()));
+            Assertions.assertEquals(shape(thread2.newRecord()), shape(thread2Again.newRecord()));
+        }
+        Assertions.assertNotEquals(shape(factory.newRecord()), shape(otherWorker.newRecord()));
+        Assertions.assertNotEquals(shape(factory.newRecord()), shape(factory.fork(1).newRecord()));
+
+        long state = factory.getRandom().getState();
+        String next = shape(factory.newRecord());
+        factory.getRandom().setState(state);
+        Assertions.assertEquals(next, shape(factory.newRecord()));
+    }
+
+    @Test
+    void testStateful() throws Exception {
+        long packed = DeviceTelemetry.pack(-300, 100, 0, 399, 10000);
+        Assertions.assertEquals(-300, DeviceTelemetry.temperature(packed));
+        Assertions.assertEquals(100, DeviceTelemetry.humidity(packed));
+        Assertions.assertEquals(0, DeviceTelemetry.occupancy(packed));
+        Assertions.assertEquals(399, DeviceTelemetry.speed(packed));
+        Assertions.assertEquals(10000, DeviceTelemetry.battery(packed));
+
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(7).models(2).deviceNumber(10).stateful(true).build();
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, JsonNode> last = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            DeviceRecord record = factory.newRecord();
+            Assertions.assertTrue(record.getSensorData().matches(
+                    "\\{\"temperature\": -?\\d+, \"humidity\": \\d+, \"occupancy\": \\d+, \"occupied\": [01], \"speed\": \\d+, \"battery\": \\d+}"),
+                    record.getSensorData());
+            JsonNode sensor = mapper.readTree(record.getSensorData());
+            JsonNode previous = last.put(record.getDeviceId(), sensor);
+            if(previous == null)
+                continue;
+            Assertions.assertTrue(Math.abs(sensor.get("temperature").asInt() - previous.get("temperature").asInt()) <= 1);
+            Assertions.assertTrue(Math.abs(sensor.get("humidity").asInt() - previous.get("humidity").asInt()) <= 2);
+            Assertions.assertTrue(Math.abs(sensor.get("speed").asInt() - previous.get("speed").asInt()) <= 20);
+            Assertions.assertTrue(sensor.get("battery").asInt() <= previous.get("battery").asInt() || sensor.get("battery").asInt() == 100);
+        }
+        Assertions.assertEquals(20, last.size());
+
+        // 200 million devices of the population would take 1.6GB of state, a partition of 20000 of them 160KB
+        DeviceRecordFactory partitioned = DeviceRecordFactory.builder().seed(7).models(2).deviceNumber(100_000_000)
+                .partition(3, 10_000).stateful(true).build();
+        last.clear();
+        for (int i = 0; i < 100_000; i++) {
+            DeviceRecord record = partitioned.newRecord();
+            if(i == 50_000)
+                partitioned.getKeyspace().assign(4, 10_000);
+            JsonNode sensor = mapper.readTree(record.getSensorData());
+            JsonNode previous = last.put(record.getDeviceId(), sensor);
+            if(previous != null)
+                Assertions.assertTrue(Math.abs(sensor.get("speed").asInt() - previous.get("speed").asInt()) <= 20);
+        }
+        Assertions.assertTrue(last.keySet().stream().anyMatch(id -> id.matches(".*-S0003\\d{4}")));
+        Assertions.assertTrue(last.keySet().stream().anyMatch(id -> id.matches(".*-S0004\\d{4}")));
+    }
+
+    @Test
+    void testEventTime() {
+        DeviceRecordFactory ordered = DeviceRecordFactory.builder().seed(3).models(2).deviceNumber(10).build();
+        Map<String, Long> latest = new HashMap<>();
+        for (int i = 0; i < 10000; i++) {
+            DeviceRecord record = ordered.newRecord();
+            Long previous = latest.put(record.getDeviceId(), record.getTimestamp().getTime());
+            Assertions.assertTrue(previous == null || previous <= record.getTimestamp().getTime());
+        }
+
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(3).models(2).deviceNumber(10)
+                .outOfOrder(0.1, 1000).late(0.05, 60_000).duplicates(0.02).build();
+        latest.clear();
+        int outOfOrder = 0;
+        int late = 0;
+        int duplicates = 0;
+        DeviceRecord previousRecord = null;
+        for (int i = 0; i < 100_000; i++) {
+            DeviceRecord record = factory.newRecord();
+            if(record.getRetry() > 0){
+                Assertions.assertEquals(shape(previousRecord), shape(record));
+                Assertions.assertEquals(previousRecord.getTimestamp(), record.getTimestamp());
+                Assertions.assertEquals(previousRecord.getRetry() + 1, record.getRetry());
+                duplicates++;
+            } else {
+                long time = record.getTimestamp().getTime();
+                Long max = latest.get(record.getDeviceId());
+                if(max != null && time < max){
+                    long behind = max - time;
+                    if(behind >= 60_000)
+                        late++;
+                    else if(behind <= 1000)
+                        outOfOrder++;
+                    else
+                        Assertions.fail("record was "+behind+" ms behind");
+                } else {
+                    latest.put(record.getDeviceId(), time);
+                }
+            }
+            previousRecord = record;
+        }
+        Assertions.assertEquals(2000, duplicates, 300);
+        Assertions.assertEquals(4900, late, 500);
+        Assertions.assertEquals(9800, outOfOrder, 800);
+    }
+
+    /**
+     * Everything of the record but the timestamp, which is relative to the clock.
+     */
+    private static String shape(DeviceRecord record) {
+        return record.getDeviceId() + record.getDeviceType() + record.getVersion() + record.getDeviceData()
+                + record.getSensorMetadata() + record.getSensorData();
+    }
+
+    @Test
+    void testRecordShape() {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().workerId("07").models(10).deviceNumber(1_000_000_000).build();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < 10000; i++) {
+            DeviceRecord r = factory.newRecord();
+            Assertions.assertTrue(r.getDeviceId().matches("D07-M\\d{8}-S\\d{8,10}"), r.getDeviceId());
+            Assertions.assertTrue(r.getSensorData().matches(
+                    "\\{\"temperature\": -?\\d+, \"humidity\": \\d+, \"occupancy\": \\d+, \"occupied\": 0, \"speed\": \\d+}"),
+                    r.getSensorData());
+            Assertions.assertTrue(r.getTimestamp().getTime() < now + 1000 && r.getTimestamp().getTime() > now - 5 * 3600 * 1000,
+                    r.getTimestamp().toString());
+        }
+
+        DeviceRecordFactory formatted = DeviceRecordFactory.builder().models(1).deviceNumberFormat("N%04d").build();
+        Assertions.assertTrue(formatted.newRecord().getDeviceId().matches("D0-M00000001-N\\d{4}"));
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/19 0:40
+ **/
+public class DistributionTest {
+
+    @Test
+    void testShapes() {
+        SplitMix64Random random = new SplitMix64Random(11);
+        int samples = 1_000_000;
+
+        double[] weights = {5, 3, 0, 2};
+        long[] counts = counts(Distribution.parse("weights:5,3,0,2", 1), random, samples);
+        for (int i = 0; i < weights.length; i++) {
+            Assertions.assertEquals(weights[i] / 10, counts[i] / (double) samples, 0.003, "weight " + i);
+        }
+
+        Distribution zipf = Distribution.parse("zipf:1.2", 1000);
+        counts = counts(zipf, random, samples);
+        double harmonic = 0;
+        for (int i = 0; i < 1000; i++) {
+            harmonic += Math.pow(i + 1, -1.2);
+        }
+        for (int rank : new int[]{0, 1, 9, 99}) {
+            double expected = Math.pow(rank + 1, -1.2) / harmonic;
+            Assertions.assertEquals(expected, counts[rank] / (double) samples, expected * 0.05 + 0.0005, "rank " + rank);
+        }
+
+        counts = counts(Distribution.parse("hotspot:0.2:0.8", 1000), random, samples);
+        long hot = 0;
+        for (int i = 0; i < 200; i++) {
+            hot += counts[i];
+        }
+        Assertions.assertEquals(0.8, hot / (double) samples, 0.003);
+
+        counts = counts(Distribution.parse("uniform", 10), random, samples);
+        for (long count : counts) {
+            Assertions.assertEquals(0.1, count / (double) samples, 0.003);
+        }
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> zipf.slice(900, 200));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Distribution.parse("weights:1,2", 1).slice(1, 2));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Distribution.parse("zipf", 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Distribution.parse("hotspot:1.5:0.8", 10));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Distribution.parse("normal", 10));
+    }
+
+    @Test
+    void testSlices() {
+        SplitMix64Random random = new SplitMix64Random(13);
+        int samples = 1_000_000;
+        String[] specs = {"zipf:1.2", "hotspot:0.2:0.8", "weights:" + String.join(",", Collections.nCopies(500, "1,4"))};
+        for (String spec : specs) {
+            Distribution whole = Distribution.parse(spec, 1000);
+            long[] expected = counts(whole, random, samples);
+            // three workers: each slice gets its quota of the samples, as the rate quotas of the partitions do
+            for (int[] range : new int[][]{{0, 333}, {333, 333}, {666, 334}}) {
+                Distribution slice = whole.slice(range[0], range[1]);
+                Assertions.assertEquals(range[1], slice.size());
+                long total = 0;
+                for (int i = 0; i < range[1]; i++) {
+                    total += expected[range[0] + i];
+                }
+                long[] counts = counts(slice, random, (int) total);
+                for (int i = 0; i < range[1]; i += 37) {
+                    long want = expected[range[0] + i];
+                    Assertions.assertEquals(want, counts[i], 5 * Math.sqrt(want) + 5, spec + " key " + (range[0] + i));
+                }
+            }
+            Assertions.assertSame(whole, whole.slice(0, 1000));
+        }
+        Distribution twice = Distribution.zipf(1000, 1.1).slice(100, 500).slice(50, 10);
+        Distribution once = Distribution.zipf(1000, 1.1).slice(150, 10);
+        long[] twiceCounts = counts(twice, random, samples);
+        long[] onceCounts = counts(once, random, samples);
+        for (int i = 0; i < 10; i++) {
+            Assertions.assertEquals(onceCounts[i], twiceCounts[i], 5 * Math.sqrt(onceCounts[i]));
+        }
+    }
+
+    @Test
+    void testPartitionedFactory() {
+        Map<Integer, Integer> hot = new HashMap<>();
+        for (int worker = 0; worker < 4; worker++) {
+            DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(3).models(1).deviceNumber(1000)
+                    .partition(worker, 4).deviceDistribution("hotspot:0.1:0.9").build();
+            Keyspace.Partition partition = factory.getKeyspace().getPartition();
+            for (int i = 0; i < 10_000 * partition.getSize() / 1000; i++) {
+                int number = Integer.parseInt(factory.newRecord().getDeviceId().replaceAll(".*-S", ""));
+                Assertions.assertTrue(number >= partition.getStart() && number < partition.getStart() + partition.getSize());
+                if(number < 100)
+                    hot.merge(worker, 1, Integer::sum);
+            }
+        }
+        // the 100 hot devices all belong to the first worker, the others only make cold devices
+        Assertions.assertEquals(1, hot.size());
+        Assertions.assertNotNull(hot.get(0));
+        DeviceRecordFactory weighted = DeviceRecordFactory.builder().seed(3).models(1).deviceNumber(4).partition(1, 2)
+                .deviceDistribution("weights:1,1,0,1").build();
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(weighted.newRecord().getDeviceId().endsWith("S00000003"));
+        }
+    }
+
+    @Test
+    void testSkewedFactory() {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().seed(3).models(4).deviceNumber(1_000_000)
+                .modelDistribution("weights:7,1,1,1").deviceDistribution("zipf:1.1").build();
+        Map<String, Integer> devices = new HashMap<>();
+        Map<String, Integer> types = new HashMap<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < 200_000; i++) {
+            DeviceRecord record = factory.newRecord();
+            devices.merge(record.getDeviceId(), 1, Integer::sum);
+            types.merge(record.getModel().getDeviceModelId(), 1, Integer::sum);
+        }
+        System.out.println("200000 skewed records in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        int top = devices.values().stream().mapToInt(Integer::intValue).max().getAsInt();
+        Assertions.assertTrue(top > 10_000, "the hottest device had " + top + " records");
+        String firstModel = factory.getModelList().get(0).getDeviceModelId();
+        Assertions.assertEquals(0.7, types.get(firstModel) / 200_000.0, 0.01);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DeviceRecordFactory.builder().models(3)
+                .modelDistribution("weights:1,2").build());
+    }
+
+    private static long[] counts(Distribution distribution, SplitMix64Random random, int samples) {
+        long[] counts = new long[distribution.size()];
+        for (int i = 0; i < samples; i++) {
+            counts[distribution.sample(random)]++;
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.model.DeviceRecord;
+
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 19:50
+ **/
+public class KeyspaceTest {
+
+    @Test
+    void testPartition() {
+        Keyspace keyspace = new Keyspace(1000, 0, 7);
+        int next = 0;
+        double quotas = 0;
+        for (int i = 0; i < 7; i++) {
+            keyspace.assign(i, 7);
+            Keyspace.Partition partition = keyspace.getPartition();
+            Assertions.assertEquals(next, partition.getStart());
+            Assertions.assertTrue(partition.getSize() == 142 || partition.getSize() == 143, partition.toString());
+            next += partition.getSize();
+            quotas += partition.quota(700);
+        }
+        Assertions.assertEquals(1000, next);
+        Assertions.assertEquals(700, quotas, 1e-9);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> keyspace.assign(7, 7));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> keyspace.assign(0, 1001));
+    }
+
+    @Test
+    void testFactory() {
+        Set<String> ids = new HashSet<>();
+        for (int worker = 0; worker < 3; worker++) {
+            DeviceRecordFactory factory = DeviceRecordFactory.builder().workerId(Integer.toString(worker)).models(1)
+                    .deviceNumber(30).partition(worker, 3).seed(5).build();
+            Set<String> workerIds = new HashSet<>();
+            for (int i = 0; i < 1000; i++) {
+                DeviceRecord record = factory.newRecord();
+                int number = Integer.parseInt(record.getDeviceId().substring(record.getDeviceId().lastIndexOf('S') + 1));
+                Assertions.assertTrue(number >= worker * 10 && number < worker * 10 + 10, record.getDeviceId());
+                workerIds.add(record.getDeviceId());
+            }
+            Assertions.assertEquals(10, workerIds.size());
+            ids.addAll(workerIds);
+        }
+        Assertions.assertEquals(30, ids.size());
+        Assertions.assertTrue(ids.contains("D0-M00000001-S00000029"));
+    }
+}
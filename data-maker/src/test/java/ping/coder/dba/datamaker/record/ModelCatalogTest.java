@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ping.coder.dba.datamaker.model.DeviceModel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.TimeZone;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/18 18:40
+ **/
+public class ModelCatalogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testGenerate() {
+        List<DeviceModel> models = ModelCatalog.generate(7, 300);
+        List<DeviceModel> fewer = ModelCatalog.generate(7, 10);
+        Assertions.assertEquals(300, models.size());
+        Assertions.assertEquals("M00000001", models.get(0).getDeviceModelId());
+        Assertions.assertEquals("M00000300", models.get(299).getDeviceModelId());
+        for (int i = 0; i < fewer.size(); i++) {
+            assertSame(models.get(i), fewer.get(i));
+        }
+        Assertions.assertNotEquals(models.get(0).getDeviceData(), ModelCatalog.generate(8, 1).get(0).getDeviceData());
+
+        TimeZone timeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Shanghai"));
+            Assertions.assertEquals(models.get(0).getDeviceData(), ModelCatalog.generate(7, 1).get(0).getDeviceData());
+        } finally {
+            TimeZone.setDefault(timeZone);
+        }
+    }
+
+    @Test
+    void testLoad() throws IOException {
+        List<DeviceModel> saved = ModelCatalog.load(directory, 7, 300);
+        Path path = ModelCatalog.path(directory, 7, 300);
+        Assertions.assertTrue(Files.exists(path));
+        List<DeviceModel> loaded = ModelCatalog.load(directory, 7, 300);
+        for (int i = 0; i < saved.size(); i++) {
+            assertSame(saved.get(i), loaded.get(i));
+        }
+        Assertions.assertThrows(IOException.class, () -> ModelCatalog.read(path, 8, 300));
+        Assertions.assertThrows(IOException.class, () -> ModelCatalog.read(path, 7, 299));
+
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length / 2] ^= 1;
+        Files.write(path, bytes);
+        Assertions.assertThrows(IOException.class, () -> ModelCatalog.read(path, 7, 300));
+    }
+
+    @Test
+    void testFactory() {
+        DeviceRecordFactory factory = DeviceRecordFactory.builder().catalogDirectory(directory).catalogVersion(3).models(20).build();
+        DeviceRecordFactory other = DeviceRecordFactory.builder().catalogVersion(3).models(20).seed(11).build();
+        for (int i = 0; i < 20; i++) {
+            assertSame(factory.getModelList().get(i), other.getModelList().get(i));
+        }
+    }
+
+    private static void assertSame(DeviceModel expected, DeviceModel actual) {
+        Assertions.assertEquals(expected.getDeviceModelId(), actual.getDeviceModelId());
+        Assertions.assertEquals(expected.getDeviceType(), actual.getDeviceType());
+        Assertions.assertEquals(expected.getVersion(), actual.getVersion());
+        Assertions.assertEquals(expected.getDeviceData(), actual.getDeviceData());
+        Assertions.assertEquals(expected.getSensorMetadata(), actual.getSensorMetadata());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 Ping He
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package ping.coder.dba.datamaker.record;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import ping.coder.dba.datamaker.DataMaker;
+import ping.coder.dba.datamaker.codec.JsonRecordSerializer;
+import ping.coder.dba.datamaker.codec.RecordSerializers;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Set;
+
+
+/**
+ * @Description @TODO
+ * @Author Ping
+ * @Date 2026/10/19 2:10
+ **/
+public class SchemaRecordFactoryTest {
+
+    @Test
+    void testCompiledSchema() throws Exception {
+        RecordSchema schema;
+        try (InputStream input = getClass().getResourceAsStream("/schema/sensor_reading.json")) {
+            Path file = Files.createTempFile("schema", ".json");
+            Files.copy(input, file, StandardCopyOption.REPLACE_EXISTING);
+            schema = RecordSchema.read(file);
+            Files.delete(file);
+        }
+        SchemaRecordFactory factory = SchemaRecordFactory.builder().schema(schema).seed(9).build();
+        JsonRecordSerializer serializer = new JsonRecordSerializer();
+        ObjectMapper mapper = new ObjectMapper();
+        SchemaRecordFactory forked = factory.fork(1);
+        Set<Long> ids = new HashSet<>();
+        int offline = 0;
+        int number = 100_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < number; i++) {
+            SchemaRecord record = i % 2 == 0 ? factory.newRecord() : forked.newRecord();
+            JsonNode json = mapper.readTree(serializer.serialize(record));
+            Assertions.assertEquals(schema.getFieldNames().size(), json.size());
+            Assertions.assertTrue(ids.add(json.get("id").asLong()));
+            Assertions.assertTrue(json.get("sensorId").asText().matches("S\\d{1,6}"));
+            double temperature = json.get("temperature").asDouble();
+            Assertions.assertTrue(temperature >= -30 && temperature <= 50 && Math.round(temperature * 10) == temperature * 10);
+            int humidity = json.get("humidity").asInt();
+            Assertions.assertTrue(humidity >= 0 && humidity <= 100);
+            Assertions.assertTrue(json.get("occupied").isBoolean());
+            Assertions.assertTrue(json.get("location").get("site").asText().startsWith("site-"));
+            Assertions.assertEquals(record.get("humidity"), (long) humidity);
+            if("offline".equals(json.get("status").asText()))
+                offline++;
+        }
+        System.out.println(number + " schema records made and serialized in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        Assertions.assertEquals(0.01, offline / (double) number, 0.003);
+
+        SchemaRecordFactory same = SchemaRecordFactory.builder().schema(schema).seed(9).build();
+        SchemaRecord first = SchemaRecordFactory.builder().schema(schema).seed(9).build().newRecord();
+        SchemaRecord again = same.newRecord();
+        for (String name : new String[]{"id", "sensorId", "status", "temperature", "humidity", "occupied"}) {
+            Assertions.assertEquals(first.get(name), again.get(name), name);
+        }
+
+        SchemaRecordFactory worker = SchemaRecordFactory.builder().schema(schema).seed(9).workerIndex(1).build();
+        SchemaRecord other = worker.newRecord();
+        Assertions.assertNotEquals(first.get("temperature"), other.get("temperature"));
+        Assertions.assertNotEquals(first.get("id"), other.get("id"));
+        Assertions.assertFalse(ids.contains((Long) other.get("id")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SchemaRecordFactory.builder().schema(schema)
+                .workerIndex(SchemaRecordFactory.MAX_WORKER_NUMBER).build());
+
+        RecordSchema sequences = RecordSchema.parse("{\"fields\": [{\"name\": \"a\", \"type\": \"sequence\"}, {\"name\": \"b\", \"type\": \"sequence\", \"start\": 100},"
+                + " {\"name\": \"c\", \"type\": \"object\", \"fields\": [{\"name\": \"d\", \"type\": \"sequence\"}]}]}");
+        SchemaRecordFactory counting = SchemaRecordFactory.builder().schema(sequences).seed(9).build();
+        for (long i = 0; i < 3; i++) {
+            SchemaRecord record = counting.newRecord();
+            Assertions.assertEquals(i, record.get("a"));
+            Assertions.assertEquals(100 + i, record.get("b"));
+            Assertions.assertEquals(i, ((SchemaRecord) record.get("c")).get("d"));
+        }
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RecordSchema.parse("{\"fields\": [{\"name\": \"a\", \"type\": \"uuid\"}]}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RecordSchema.parse("{\"fields\": [{\"name\": \"a\", \"type\": \"int\", \"min\": 5, \"max\": 1}]}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RecordSchema.parse("{\"fields\": [{\"name\": \"a\", \"type\": \"enum\", \"values\": [\"x\"], \"distribution\": \"weights:1,2\"}]}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RecordSchema.parse("{\"fields\": [{\"name\": \"a\", \"type\": \"long\"}, {\"name\": \"a\", \"type\": \"long\"}]}"));
+    }
+
+    @Test
+    void testLoad() throws Exception {
+        Path file = Files.createTempFile("schema", ".json");
+        Files.write(file, "{\"fields\": [{\"name\": \"count\", \"type\": \"int\", \"min\": 1, \"max\": 3}]}".getBytes("UTF-8"));
+        DataMaker.Options options = new DataMaker.Options();
+        options.setSchemaFile(file.toString());
+        try {
+            Assertions.assertTrue(RecordFactories.load(SchemaRecordFactory.NAME, options) instanceof SchemaRecordFactory);
+            Assertions.assertTrue(RecordFactories.load(SchemaRecordFactory.Provider.class.getName(), options) instanceof SchemaRecordFactory);
+            options.setFormat(RecordSerializers.AVRO);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> RecordFactories.load(SchemaRecordFactory.NAME, options));
+            options.setFormat(RecordSerializers.CBOR);
+            Assertions.assertTrue(RecordFactories.load(SchemaRecordFactory.NAME, options) instanceof SchemaRecordFactory);
+        } finally {
+            Files.delete(file);
+        }
+        Assertions.assertTrue(RecordFactories.load(CountingFactory.class.getName(), options) instanceof CountingFactory);
+        Assertions.assertEquals(1L, RecordFactories.load(CountingFactory.class.getName(), options).newRecord());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RecordFactories.load("ping.coder.Missing", options));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RecordFactories.load(String.class.getName(), options));
+    }
+
+    public static class CountingFactory implements RecordFactory<Long> {
+        private long count;
+
+        @Override
+        public Long newRecord() {
+            return ++count;
+        }
+
+        @Override
+        public RecordFactory<Long> fork() {
+            return new CountingFactory();
+        }
+    }
+}